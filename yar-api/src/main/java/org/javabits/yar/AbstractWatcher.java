@@ -17,6 +17,8 @@
 package org.javabits.yar;
 
 import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * TODO comment
@@ -24,7 +26,7 @@ import javax.annotation.Nullable;
  *
  * @author Romain Gilles
  */
-public abstract class AbstractWatcher<T> implements Watcher<T> {
+public abstract class AbstractWatcher<T> implements BatchWatcher<T> {
     @Nullable
     @Override
     final public Supplier<T> add(Supplier<T> element) {
@@ -40,6 +42,18 @@ public abstract class AbstractWatcher<T> implements Watcher<T> {
 
     protected abstract void track(Supplier<T> element);
 
+    /**
+     * Adds the elements one by one, it can be overridden to handle them as a whole.
+     */
+    @Override
+    public List<Supplier<T>> addAll(List<Supplier<T>> elements) {
+        List<Supplier<T>> trackedElements = new ArrayList<>(elements.size());
+        for (Supplier<T> element : elements) {
+            trackedElements.add(add(element));
+        }
+        return trackedElements;
+    }
+
     @Override
     final public void remove(Supplier<T> element) {
         if (isTracked(element)) {
@@ -47,6 +61,16 @@ public abstract class AbstractWatcher<T> implements Watcher<T> {
         }
     }
 
+    /**
+     * Removes the elements one by one, it can be overridden to handle them as a whole.
+     */
+    @Override
+    public void removeAll(List<Supplier<T>> elements) {
+        for (Supplier<T> element : elements) {
+            remove(element);
+        }
+    }
+
     protected abstract boolean isTracked(Supplier<T> element);
 
     protected abstract void doRemove(Supplier<T> element);
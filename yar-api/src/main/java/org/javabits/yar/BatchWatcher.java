@@ -0,0 +1,48 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar;
+
+import java.util.List;
+
+/**
+ * Optional extension of the {@link Watcher} that receives several suppliers in one call.
+ * The registry uses it to replay the existing suppliers to a new watcher, and to deliver
+ * the bursts of supplier events coalesced by the registry. A watcher that does not
+ * implement this interface receives the same suppliers one by one.
+ * <p>The suppliers are given in the order of the registry events, and the calls to a
+ * watcher follow the same rules than the {@link Watcher} element calls.</p>
+ *
+ * @author Romain Gilles
+ */
+public interface BatchWatcher<T> extends Watcher<T> {
+
+    /**
+     * Batch version of {@link #add(Supplier)}.
+     *
+     * @param elements the added suppliers.
+     * @return the tracked suppliers, positionally: the returned list has the size of the given one
+     * and holds {@code null} for each supplier that is not tracked.
+     */
+    List<Supplier<T>> addAll(List<Supplier<T>> elements);
+
+    /**
+     * Batch version of {@link #remove(Supplier)}.
+     *
+     * @param elements the removed suppliers, as they were returned by the add calls.
+     */
+    void removeAll(List<Supplier<T>> elements);
+}
@@ -34,25 +34,78 @@ public final class IdMatchers {
         return newIdMatcher(id);
     }
 
+    /**
+     * Returns a matcher that only matches the ids equal to the given one.
+     * The registry indexes such matchers by their id, so a watcher registered with it
+     * is only visited for the suppliers it matches.
+     */
     public static <T> IdMatcher<T> newIdMatcher(final Id<T> id) {
-        requireNonNull(id, "id");
-        return new IdMatcher<T>() {
-
-            @Override
-            public boolean matches(Id<T> otherId) {
-                return id.equals(otherId);
-            }
-
-            @Override
-            public Id<T> id() {
-                return id;
-            }
-
-            @Override
-            public String toString() {
-                return getClass().getSimpleName() + '{' +
-                        "id=" + id + '}';
-            }
-        };
+        return new IdEqualityMatcher<>(requireNonNull(id, "id"));
+    }
+
+    /**
+     * Returns a matcher that matches all the ids of the type of the given id whatever their
+     * qualifier. The registry indexes such matchers by their type.
+     */
+    public static <T> IdMatcher<T> newTypeMatcher(final Id<T> id) {
+        return new TypeMatcher<>(requireNonNull(id, "id"));
+    }
+
+    /**
+     * Matcher of the ids equal to its template id.
+     *
+     * @see #newIdMatcher(Id)
+     */
+    public static final class IdEqualityMatcher<T> implements IdMatcher<T> {
+        private final Id<T> id;
+
+        private IdEqualityMatcher(Id<T> id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean matches(Id<T> otherId) {
+            return id.equals(otherId);
+        }
+
+        @Override
+        public Id<T> id() {
+            return id;
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + '{' +
+                    "id=" + id + '}';
+        }
+    }
+
+    /**
+     * Matcher of the ids whose type is equal to the type of its template id.
+     *
+     * @see #newTypeMatcher(Id)
+     */
+    public static final class TypeMatcher<T> implements IdMatcher<T> {
+        private final Id<T> id;
+
+        private TypeMatcher(Id<T> id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean matches(Id<T> otherId) {
+            return id.type().equals(otherId.type());
+        }
+
+        @Override
+        public Id<T> id() {
+            return id;
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + '{' +
+                    "type=" + id.type() + '}';
+        }
     }
 }
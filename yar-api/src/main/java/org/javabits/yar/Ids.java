@@ -34,14 +34,68 @@ import static org.javabits.yar.Annotations.checkRuntimeRetention;
  *     Ids.newId(aMethod.getGenericParameterTypes()[0], MyAnnotation.class);
  *     Ids.newId(aMethod.getGenericParameterTypes()[0], Names.named("my-name"));
  * </pre>
+ * <h3>Interning</h3>
+ * If the {@value #INTERNING_PROPERTY} system property is set to {@code true} then the {@code newId} methods
+ * return one canonical {@code Id} per type and qualifier. Therefore the ids used as keys by the registry
+ * containers and the matchers are compared by reference, and the lookups by {@code Class} do not allocate
+ * any {@code Id}. The canonical ids are weakly referenced and do not prevent their types to be unloaded.
+ * Ids can also be interned explicitly through {@link #intern(Id)}.
  *
  * @author Romain Gilles
  */
 public final class Ids {
+    /**
+     * System property that enables the interning of the ids returned by the {@code newId} methods.
+     */
+    public static final String INTERNING_PROPERTY = "yar.ids.interning";
+    private static final boolean INTERNING = Boolean.getBoolean(INTERNING_PROPERTY);
+    private static final WeakInterner<IdImpl<?>> INTERNER = new WeakInterner<>();
+    // canonical unqualified id of each class, it lives as long as its class
+    private static final ClassValue<IdImpl<?>> CLASS_IDS = new ClassValue<IdImpl<?>>() {
+        @Override
+        protected IdImpl<?> computeValue(Class<?> type) {
+            return internIdImpl((IdImpl<?>) IdImpl.newId(type));
+        }
+    };
+
     private Ids() {
         throw new AssertionError("Not for you!");
     }
 
+    /**
+     * Returns the canonical instance of the given {@link Id}. Two equal ids are interned to
+     * the same instance. The {@code Id} implementations not provided by this class are returned as is.
+     *
+     * @param id  the {@code Id} to intern.
+     * @param <T> the type of the id.
+     * @return the canonical {@code Id} equal to the given one.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Id<T> intern(final Id<T> id) {
+        requireNonNull(id, "id");
+        if (!(id instanceof IdImpl)) {
+            return id;
+        }
+        IdImpl<T> idImpl = (IdImpl<T>) id;
+        if (idImpl.canonical) {
+            return idImpl;
+        }
+        if (idImpl.type instanceof Class && idImpl.annotationStrategy == IdImpl.AbstractAnnotationStrategy.NULL_STRATEGY) {
+            return (Id<T>) CLASS_IDS.get((Class<?>) idImpl.type);
+        }
+        return (Id<T>) internIdImpl(idImpl);
+    }
+
+    private static IdImpl<?> internIdImpl(IdImpl<?> id) {
+        IdImpl<?> canonical = INTERNER.intern(id);
+        canonical.canonical = true;
+        return canonical;
+    }
+
+    private static Id<?> internIfEnabled(Id<?> id) {
+        return INTERNING ? intern(id) : id;
+    }
+
     /**
      * Returns a new {@link Id} for the given type.
      *
@@ -89,7 +143,10 @@ public final class Ids {
      * @return an new {@code Id} based on the given type.
      */
     public static Id<?> newId(final Type type) {
-        return IdImpl.newId(type);
+        if (INTERNING && type instanceof Class) {
+            return CLASS_IDS.get((Class<?>) type);
+        }
+        return internIfEnabled(IdImpl.newId(type));
     }
 
     /**
@@ -101,7 +158,7 @@ public final class Ids {
      * @return an new {@code Id} based on the given type and annotation type.
      */
     public static Id<?> newId(final Type type, final Class<? extends Annotation> annotationClass) {
-        return IdImpl.newId(type, annotationClass);
+        return internIfEnabled(IdImpl.newId(type, annotationClass));
     }
 
     /**
@@ -113,7 +170,7 @@ public final class Ids {
      * @return an new {@code Id} based on the given type and annotation.
      */
     public static Id<?> newId(final Type type, final Annotation annotation) {
-        return IdImpl.newId(type, annotation);
+        return internIfEnabled(IdImpl.newId(type, annotation));
     }
 
     static final class IdImpl<T> implements Id<T> {
@@ -121,6 +178,8 @@ public final class Ids {
         private final Type type;
         private final AnnotationStrategy annotationStrategy;
         private final int hashCode;
+        // set once the id is interned, a stale read only disables the equals shortcut
+        private boolean canonical;
 
         private IdImpl(Type type, AnnotationStrategy annotationStrategy) {
             this.type = requireNonNull(type, "type");
@@ -161,6 +220,8 @@ public final class Ids {
             if (o == null || getClass() != o.getClass()) return false;
 
             IdImpl id = (IdImpl) o;
+            // two distinct canonical ids cannot be equal
+            if (canonical && id.canonical || hashCode != id.hashCode) return false;
 
             return annotationStrategy.equals(id.annotationStrategy) && type.equals(id.type);
         }
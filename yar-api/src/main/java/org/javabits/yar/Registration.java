@@ -16,6 +16,9 @@
 
 package org.javabits.yar;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 /**
  * TODO comment
  * Date: 2/11/13
@@ -25,4 +28,20 @@ package org.javabits.yar;
  */
 public interface Registration<T> {
     Id<T> id();
+
+    /**
+     * Returns a stage completed when all the watcher notifications triggered by the last update of
+     * this registration have been executed: its addition by {@code put}, and then its removal by
+     * {@code remove}. Unlike {@link RegistryHook#hasPendingListenerUpdateTasks()}, it does not depend
+     * on the updates of the other registrations. A failing watcher does not fail the stage, it
+     * completes exceptionally only if the notifications cannot be dispatched, for example when a
+     * bounded listener queue rejects them. The update itself is kept by the registry.
+     * <p>The default implementation returns a completed stage, it is used by the registrations
+     * that do not track their propagation.</p>
+     *
+     * @return the propagation stage of the last update of this registration.
+     */
+    default CompletionStage<Void> propagation() {
+        return CompletableFuture.completedFuture(null);
+    }
 }
@@ -20,10 +20,14 @@ package org.javabits.yar;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * It represent a storage to share capabilities with other component.
@@ -76,6 +80,19 @@ public interface Registry {
      */
     Set<Type> types();
 
+    /**
+     * Returns an immutable and consistent view of the content of this registry at a certain point of time.
+     * <p>Contrary to the lookup methods of the registry, the successive lookups performed on the returned
+     * snapshot are not impacted by the concurrent registry mutations. Therefore it is the preferred way to
+     * perform a lot of lookups in a row, for example to wire a component at startup.</p>
+     * <p>Warning: as for the {@link #ids()} method you must get the snapshot, use it and discard it.
+     * Keeping a long reference to it can introduce memory leak.</p>
+     *
+     * @return a snapshot of the current content of this registry.
+     * @see RegistrySnapshot
+     */
+    RegistrySnapshot snapshot();
+
     /**
      * Returns <tt>true</tt> if this registry contains a mapping for the specified
      * id. More formally, returns <tt>true</tt> if and only if
@@ -93,6 +110,39 @@ public interface Registry {
         return get(id) != null;
     }
 
+    /**
+     * Returns the version of this registry content. The version increases after each
+     * registration or removal of a supplier whatever its type.
+     * <p>Together with {@link #version(Type)} it allows the callers to cache the result of
+     * the lookups and to revalidate them at low cost: a result computed after reading a version
+     * is up to date as long as the version is unchanged.</p>
+     * <p>A negative version means that the implementation does not track the versions, the
+     * lookups must then not be cached. The default implementation returns {@code -1}.</p>
+     *
+     * @return the version of this registry, or a negative value if not supported.
+     * @see #version(Type)
+     */
+    default long version() {
+        return -1;
+    }
+
+    /**
+     * Returns the version of the suppliers mapped to the given type. The version increases after
+     * each registration or removal of a supplier of this type and never takes back a previous value,
+     * even if the type is removed and registered again. It may also increase on the mutations of
+     * other types, therefore an unchanged version guarantees that the result of
+     * {@link #getAll(Type)} and of the lookups by {@link Id} on this type are unchanged.
+     * <p>The default implementation returns {@code -1}, see {@link #version()}.</p>
+     *
+     * @param type not {@code null} type whose version is to be returned.
+     * @return the version of the type, or a negative value if not supported.
+     * @throws NullPointerException if the given type parameter is {@code null}.
+     * @see #version()
+     */
+    default long version(Type type) {
+        return -1;
+    }
+
     /**
      * Returns the first {@link Supplier} to which the specified type is mapped
      * or {@code null} if the map contains no mapping for this type.
@@ -202,6 +252,67 @@ public interface Registry {
      */
     <T> List<Supplier<T>> getAll(Type type);
 
+    /**
+     * Performs the given action on each {@link Supplier} to which the specified type is mapped,
+     * in the order returned by {@link #getAll(Type)}.
+     * <p>Unlike {@link #getAll(Type)} the suppliers are visited in place: implementations are
+     * expected to not allocate any intermediate collection. Therefore it is the method of choice
+     * on the hot paths. The action must not block as it may be executed while the registry
+     * content is iterated.</p>
+     * <p>The default implementation iterates over {@link #getAll(Type)}.</p>
+     *
+     * @param type   not {@code null} type whose associated {@link Supplier}s are to be visited.
+     * @param action the action to perform on each {@link Supplier}.
+     * @throws NullPointerException if the given type or action is {@code null}.
+     * @see #getAll(Type)
+     */
+    default void forEach(Type type, Consumer<? super Supplier<?>> action) {
+        for (Supplier<?> supplier : this.<Object>getAll(type)) {
+            action.accept(supplier);
+        }
+    }
+
+    /**
+     * Performs the given action on each {@link Supplier} to which the specified {@link Id} is mapped,
+     * in the order returned by {@link #getAll(Id)}. See {@link #forEach(Type, Consumer)}.
+     * <p>The default implementation iterates over {@link #getAll(Id)}.</p>
+     *
+     * @param id     not {@code null} {@link Id} whose associated {@link Supplier}s are to be visited.
+     * @param action the action to perform on each {@link Supplier}.
+     * @param <T>    the matching type between the {@link Id} parameter and the visited {@link Supplier}s
+     * @throws NullPointerException if the given {@link Id} or action is {@code null}.
+     * @see #getAll(Id)
+     */
+    default <T> void forEach(Id<T> id, Consumer<? super Supplier<T>> action) {
+        for (Supplier<T> supplier : getAll(id)) {
+            action.accept(supplier);
+        }
+    }
+
+    /**
+     * Returns the number of {@link Supplier}s to which the specified type is mapped.
+     * It is equivalent to {@code getAll(type).size()} without the allocation of the list.
+     *
+     * @param type not {@code null} type whose associated {@link Supplier}s are to be counted.
+     * @return the number of {@link Supplier}s mapped to the given type.
+     * @throws NullPointerException if the given type parameter is {@code null}.
+     */
+    default int size(Type type) {
+        return getAll(type).size();
+    }
+
+    /**
+     * Returns the number of {@link Supplier}s to which the specified {@link Id} is mapped.
+     * It is equivalent to {@code getAll(id).size()} without the allocation of the list.
+     *
+     * @param id not {@code null} {@link Id} whose associated {@link Supplier}s are to be counted.
+     * @return the number of {@link Supplier}s mapped to the given {@link Id}.
+     * @throws NullPointerException if the given {@link Id} parameter is {@code null}.
+     */
+    default int size(Id<?> id) {
+        return getAll(id).size();
+    }
+
     /**
      * Associates the specified supplier with the specified id in this registry.
      * If the map previously contained a mapping for the id, the new supplier is
@@ -222,6 +333,44 @@ public interface Registry {
      */
     <T> Registration<T> put(Id<T> id, java.util.function.Supplier<? extends T> supplier);
 
+    /**
+     * Asynchronous version of {@link #put(Id, java.util.function.Supplier)}. The returned future
+     * is completed with the registration handle when the supplier is registered.
+     * <p>Implementations are free to return before the registration is done. Therefore a caller can
+     * issue a lot of registrations in a row and wait once for all of them instead of waiting for each
+     * one. The registrations issued by a same thread are executed in order for a given type.</p>
+     * <p>The default implementation executes the registration synchronously.</p>
+     *
+     * @param id       id with which the specified supplier is to be associated.
+     * @param supplier supplier to be associated with the specified id
+     * @return a future completed with the registration handle or with the registration failure.
+     * @see #put(Id, java.util.function.Supplier)
+     */
+    default <T> CompletableFuture<Registration<T>> putAsync(Id<T> id, java.util.function.Supplier<? extends T> supplier) {
+        return CompletableFuture.supplyAsync(() -> put(id, supplier), Runnable::run);
+    }
+
+    /**
+     * Bulk associates each supplier of the given map with its id in this registry.
+     * It is equivalent to call {@link #put(Id, java.util.function.Supplier)} for each entry
+     * but implementations are free to commit all the entries as a single registry action
+     * and to notify the watchers once for the whole batch.
+     *
+     * @param suppliers the suppliers to register indexed by their id.
+     * @return the registration handles in the iteration order of the given map.
+     * @throws NullPointerException if the map, one of its keys or one of its values is {@code null}
+     * @see #put(Id, java.util.function.Supplier)
+     * @see #removeAll(Collection)
+     */
+    @SuppressWarnings("unchecked")
+    default List<Registration<?>> putAll(Map<? extends Id<?>, ? extends java.util.function.Supplier<?>> suppliers) {
+        List<Registration<?>> registrations = new ArrayList<>(suppliers.size());
+        for (Map.Entry<? extends Id<?>, ? extends java.util.function.Supplier<?>> entry : suppliers.entrySet()) {
+            registrations.add(put((Id<Object>) entry.getKey(), (java.util.function.Supplier<Object>) entry.getValue()));
+        }
+        return registrations;
+    }
+
     /**
      * Removes the supplier referenced by the specified
      * {@code Registration} object.
@@ -230,6 +379,18 @@ public interface Registry {
      */
     void remove(Registration<?> registration);
 
+    /**
+     * Asynchronous version of {@link #remove(Registration)}.
+     * <p>The default implementation executes the removal synchronously.</p>
+     *
+     * @param registration A reference to the supplier to be released.
+     * @return a future completed when the supplier is removed.
+     * @see #putAsync(Id, java.util.function.Supplier)
+     */
+    default CompletableFuture<Void> removeAsync(Registration<?> registration) {
+        return CompletableFuture.runAsync(() -> remove(registration), Runnable::run);
+    }
+
     /**
      * Bulk remove the suppliers referenced by the specified list of
      * {@code Registration} objects.
@@ -238,6 +399,18 @@ public interface Registry {
      */
     void removeAll(Collection<? extends Registration<?>> registrations);
 
+    /**
+     * Asynchronous version of {@link #removeAll(Collection)}.
+     * <p>The default implementation executes the removal synchronously.</p>
+     *
+     * @param registrations A list of references to the suppliers to be released.
+     * @return a future completed when all the suppliers are removed.
+     * @see #putAsync(Id, java.util.function.Supplier)
+     */
+    default CompletableFuture<Void> removeAllAsync(Collection<? extends Registration<?>> registrations) {
+        return CompletableFuture.runAsync(() -> removeAll(registrations), Runnable::run);
+    }
+
     /**
      * Registers a listener / watcher for suppliers life-cycle events (add / remove).
      * The registry will notify the listener when a supplier is added of removed
@@ -257,6 +430,46 @@ public interface Registry {
      */
     <T> Registration<T> addWatcher(IdMatcher<T> idMatcher, Watcher<T> watcher);
 
+    /**
+     * Asynchronous version of {@link #addWatcher(IdMatcher, Watcher)}. The returned future
+     * is completed with the registration handle when the watcher is registered.
+     * <p>The same weak reference policy applies: the caller must keep a strong reference to the
+     * watcher to avoid premature garbage collection.</p>
+     * <p>The default implementation executes the registration synchronously.</p>
+     *
+     * @param idMatcher the matcher that matches supplier ids the listener
+     *                  should be notified of.
+     * @param watcher   the watcher for suppliers whose associated ids are
+     *                  matched by idMatcher
+     * @param <T>       the supplied type
+     * @return a future completed with the registration handle or with the registration failure.
+     * @see #addWatcher(IdMatcher, Watcher)
+     */
+    default <T> CompletableFuture<Registration<T>> addWatcherAsync(IdMatcher<T> idMatcher, Watcher<T> watcher) {
+        return CompletableFuture.supplyAsync(() -> addWatcher(idMatcher, watcher), Runnable::run);
+    }
+
+    /**
+     * Bulk registers the given watchers. It is equivalent to call {@link #addWatcher(IdMatcher, Watcher)}
+     * for each entry but implementations are free to commit all the entries as a single registry action.
+     * <p>The same weak reference policy applies: the caller must keep a strong reference to the watchers
+     * to avoid premature garbage collection.</p>
+     *
+     * @param watchers the watchers to register indexed by their id matcher. The type parameter of each
+     *                 matcher must match the type parameter of its associated watcher.
+     * @return the registration handles in the iteration order of the given map.
+     * @see #addWatcher(IdMatcher, Watcher)
+     * @see #removeAllWatchers(Collection)
+     */
+    @SuppressWarnings("unchecked")
+    default List<Registration<?>> addWatchers(Map<? extends IdMatcher<?>, ? extends Watcher<?>> watchers) {
+        List<Registration<?>> registrations = new ArrayList<>(watchers.size());
+        for (Map.Entry<? extends IdMatcher<?>, ? extends Watcher<?>> entry : watchers.entrySet()) {
+            registrations.add(addWatcher((IdMatcher<Object>) entry.getKey(), (Watcher<Object>) entry.getValue()));
+        }
+        return registrations;
+    }
+
     /**
      * Removes the {@link Watcher} instance referenced by the specified
      * {@code Registration} object.
@@ -1,7 +1,11 @@
 package org.javabits.yar;
 
+import java.lang.InterruptedException;
 import java.lang.reflect.Type;
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class provides methods for frameworks that need specific actions on the registry
@@ -34,6 +38,17 @@ public interface RegistryHook {
 
     void invalidateAll(Collection<Type> types);
 
+    /**
+     * Asynchronous version of {@link #invalidateAll(Collection)}.
+     * <p>The default implementation executes the invalidation synchronously.</p>
+     *
+     * @param types the types whose the corresponding entries will be removed.
+     * @return a future completed when all the given types are invalidated.
+     */
+    default CompletableFuture<Void> invalidateAllAsync(Collection<Type> types) {
+        return CompletableFuture.runAsync(() -> invalidateAll(types), Runnable::run);
+    }
+
     void addTypeListener(TypeListener typeListener);
 
     void removeTypeListener(TypeListener typeListener);
@@ -44,6 +59,7 @@ public interface RegistryHook {
      * It can be used at startup time when the system is not under evy stress.
      *
      * @return {@code true} if at this point of time there is no pending task.
+     * @see Registration#propagation() to wait for the notifications of a given registration only.
      */
     boolean hasPendingListenerUpdateTasks();
 
@@ -59,6 +75,24 @@ public interface RegistryHook {
      */
     void addEndOfListenerUpdateTasksListener(EndOfListenerUpdateTasksListener listener);
 
+    /**
+     * Waits until there is no pending {@code Watcher} / {@code SupplierListener} update task.
+     * It is intended for the test harnesses and the startup code, the registry may be busy
+     * again as soon as this method returns.
+     * <p>The default implementation waits for the {@link #addEndOfListenerUpdateTasksListener(EndOfListenerUpdateTasksListener)
+     * end of the pending tasks}.</p>
+     *
+     * @param timeout the maximum time to wait.
+     * @param unit    the time unit of the timeout argument.
+     * @return {@code false} if the timeout elapsed while some tasks were still pending.
+     * @throws InterruptedException if the current thread is interrupted while waiting.
+     */
+    default boolean awaitListenerQuiescence(long timeout, TimeUnit unit) throws InterruptedException {
+        CountDownLatch quiescent = new CountDownLatch(1);
+        addEndOfListenerUpdateTasksListener(quiescent::countDown);
+        return quiescent.await(timeout, unit);
+    }
+
     interface EndOfListenerUpdateTasksListener {
 
         void completed();
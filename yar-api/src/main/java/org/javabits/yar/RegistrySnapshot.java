@@ -0,0 +1,97 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable point-in-time view of the suppliers contained by a {@link Registry}.
+ * <p>A snapshot is consistent: it reflects the registry state between two mutations and
+ * is never updated afterward. Any supplier added or removed after the snapshot was taken
+ * is not reported to it. The lookup methods follow the same semantic as their
+ * {@link Registry} counterparts.</p>
+ * <p>The intent of a snapshot is to let a component perform a lot of lookups, e.g. to wire
+ * itself at startup, without paying the price of the synchronization with the writers on each
+ * call. As for {@link Registry#ids()}, you must get it, use it and discard it. Keeping a long
+ * reference to it prevents the garbage collection of the removed suppliers.</p>
+ *
+ * @author Romain Gilles
+ * @see Registry#snapshot()
+ */
+@Immutable
+public interface RegistrySnapshot {
+
+    /**
+     * Returns all the {@link Id}s contained by this snapshot.
+     *
+     * @return all the ids contained by this snapshot.
+     * @see Registry#ids()
+     */
+    Set<Id<?>> ids();
+
+    /**
+     * Returns all the {@link Type}s of the suppliers contained by this snapshot.
+     *
+     * @return all the types contained by this snapshot.
+     * @see Registry#types()
+     */
+    Set<Type> types();
+
+    /**
+     * @see Registry#contains(Id)
+     */
+    default boolean contains(Id<?> id) {
+        return get(id) != null;
+    }
+
+    /**
+     * @see Registry#get(Class)
+     */
+    @Nullable
+    <T> Supplier<T> get(Class<T> type);
+
+    /**
+     * @see Registry#getAll(Class)
+     */
+    <T> List<Supplier<T>> getAll(Class<T> type);
+
+    /**
+     * @see Registry#get(Id)
+     */
+    @Nullable
+    <T> Supplier<T> get(Id<T> id);
+
+    /**
+     * @see Registry#getAll(Id)
+     */
+    <T> List<Supplier<T>> getAll(Id<T> id);
+
+    /**
+     * @see Registry#get(Type)
+     */
+    @Nullable
+    <T> Supplier<T> get(Type type);
+
+    /**
+     * @see Registry#getAll(Type)
+     */
+    <T> List<Supplier<T>> getAll(Type type);
+}
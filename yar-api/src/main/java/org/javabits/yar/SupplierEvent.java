@@ -33,13 +33,31 @@ public class SupplierEvent extends EventObject {
         ADD, REMOVE
     }
 
+    /**
+     * The sequence of the events that are not ordered.
+     */
+    public static final long NO_SEQUENCE = -1L;
+
     private final Type type;
     private final Supplier<?> supplier;
+    private final long sequence;
 
     public SupplierEvent(Type type, Supplier<?> supplier) {
+        this(type, supplier, NO_SEQUENCE);
+    }
+
+    /**
+     * Creates an event ordered by the given sequence. The sequences of the events of an id increase
+     * with the registry mutations, therefore a listener receiving the events in any order can discard
+     * an event older than the last one it applied for the same supplier.
+     *
+     * @param sequence the positive sequence of the event or {@link #NO_SEQUENCE}.
+     */
+    public SupplierEvent(Type type, Supplier<?> supplier, long sequence) {
         super(supplier);
         this.type = type;
         this.supplier = supplier;
+        this.sequence = sequence;
     }
 
     public Type type() {
@@ -49,4 +67,20 @@ public class SupplierEvent extends EventObject {
     public Supplier<?> supplier() {
         return supplier;
     }
+
+    /**
+     * Returns the sequence of this event, or {@link #NO_SEQUENCE} if it is not ordered.
+     */
+    public long sequence() {
+        return sequence;
+    }
+
+    @Override
+    public String toString() {
+        return "SupplierEvent{" +
+                "type=" + type +
+                ", supplier=" + supplier +
+                ", sequence=" + sequence +
+                '}';
+    }
 }
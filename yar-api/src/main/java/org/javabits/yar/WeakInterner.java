@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Concurrent interning table that weakly references its canonical instances.
+ * A canonical instance is garbage collected as soon as it is no longer used
+ * outside of the table, e.g. when the class of its type is unloaded.
+ * <p>The API module has no runtime dependency so this is a minimal equivalent of
+ * the Guava weak interner.</p>
+ *
+ * @param <E> the type of the interned elements
+ * @author Romain Gilles
+ */
+final class WeakInterner<E> {
+    private final ConcurrentMap<Object, WeakEntry<E>> entries = new ConcurrentHashMap<>();
+    private final ReferenceQueue<E> referenceQueue = new ReferenceQueue<>();
+
+    /**
+     * Returns the canonical instance equal to the given sample. The sample itself becomes
+     * the canonical instance if there is no equal element in the table.
+     */
+    E intern(E sample) {
+        requireNonNull(sample, "sample");
+        expungeStaleEntries();
+        WeakEntry<E> entry = entries.get(new Lookup<>(sample));
+        E canonical = entry != null ? entry.get() : null;
+        if (canonical != null) {
+            return canonical;
+        }
+        WeakEntry<E> newEntry = new WeakEntry<>(sample, referenceQueue);
+        for (; ; ) {
+            WeakEntry<E> existingEntry = entries.putIfAbsent(newEntry, newEntry);
+            if (existingEntry == null) {
+                return sample;
+            }
+            canonical = existingEntry.get();
+            if (canonical != null) {
+                return canonical;
+            }
+            // collected but not yet expunged
+            entries.remove(existingEntry, existingEntry);
+        }
+    }
+
+    int size() {
+        expungeStaleEntries();
+        return entries.size();
+    }
+
+    private void expungeStaleEntries() {
+        for (Object reference = referenceQueue.poll(); reference != null; reference = referenceQueue.poll()) {
+            entries.remove(reference, reference);
+        }
+    }
+
+    private static final class WeakEntry<E> extends WeakReference<E> {
+        private final int hash;
+
+        WeakEntry(E referent, ReferenceQueue<E> referenceQueue) {
+            super(referent, referenceQueue);
+            hash = referent.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            E referent = get();
+            if (referent == null) return false;
+            if (o instanceof WeakEntry) {
+                return referent.equals(((WeakEntry<?>) o).get());
+            }
+            return o instanceof Lookup && referent.equals(((Lookup<?>) o).sample);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // lookup key that avoids to allocate a weak reference to probe the table
+    private static final class Lookup<E> {
+        private final E sample;
+
+        Lookup(E sample) {
+            this.sample = sample;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof WeakEntry && sample.equals(((WeakEntry<?>) o).get());
+        }
+
+        @Override
+        public int hashCode() {
+            return sample.hashCode();
+        }
+    }
+}
@@ -117,6 +117,33 @@ public class IdsTest {
         assertThat(Ids.newId(MyInterface.class).toString(), containsString(MyInterface.class.getSimpleName()));
     }
 
+    @Test
+    public void testIntern() {
+        Id<?> interned = Ids.intern(Ids.newId(type, getAnnotation()));
+        assertThat(Ids.intern(Ids.newId(type, getAnnotation())), is(sameInstance((Object) interned)));
+        assertThat(Ids.intern(interned), is(sameInstance((Object) interned)));
+        assertThat((Id) Ids.newId(type, getAnnotation()), is((Id) interned));
+        assertThat((Id) interned, is((Id) Ids.newId(type, getAnnotation())));
+        assertThat((Id) interned, is(not((Id) Ids.intern(Ids.newId(type)))));
+    }
+
+    @Test
+    public void testInternClass() {
+        Id<MyInterface> interned = Ids.intern(Ids.newId(MyInterface.class));
+        assertThat(Ids.intern(Ids.newId(MyInterface.class)), is(sameInstance(interned)));
+        assertThat(Ids.intern(Ids.newId((Type) MyInterface.class)), is(sameInstance((Object) interned)));
+        assertThat(Ids.intern(Ids.newId(MyInterface.class, MyAnnotation.class)), is(not(sameInstance(interned))));
+    }
+
+    @Test
+    public void testWeakInterner() {
+        WeakInterner<String> interner = new WeakInterner<>();
+        String canonical = new String("test");
+        assertThat(interner.intern(canonical), is(sameInstance(canonical)));
+        assertThat(interner.intern(new String("test")), is(sameInstance(canonical)));
+        assertThat(interner.size(), is(1));
+    }
+
     static interface MyInterface {
     }
 
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar;
+
+import com.google.inject.name.Names;
+import com.google.inject.util.Types;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the {@link Id} creation, equality and hash code, with and without interning. The
+ * {@code *Interning} benchmarks run with the {@value Ids#INTERNING_PROPERTY} system property set,
+ * where the {@code newId} methods return the canonical ids.
+ *
+ * @author Romain Gilles
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdsBenchmark {
+    private static final String INTERNING = "-D" + Ids.INTERNING_PROPERTY + "=true";
+
+    private Type type;
+    private Annotation annotation;
+    private Id<?> id;
+    private Id<?> equalId;
+    private Id<?> otherId;
+    private Id<?> internedId;
+    private Id<?> internedEqualId;
+    private Id<?> internedOtherId;
+
+    @Setup
+    public void setUp() {
+        type = Types.mapOf(String.class, Types.listOf(Integer.class));
+        annotation = Names.named("benchmark");
+        id = Ids.newId(type, annotation);
+        equalId = Ids.newId(Types.mapOf(String.class, Types.listOf(Integer.class)), Names.named("benchmark"));
+        otherId = Ids.newId(Types.mapOf(String.class, Types.listOf(Long.class)), Names.named("benchmark"));
+        internedId = Ids.intern(id);
+        internedEqualId = Ids.intern(equalId);
+        internedOtherId = Ids.intern(otherId);
+    }
+
+    @Benchmark
+    public Id<String> newClassId() {
+        return Ids.newId(String.class);
+    }
+
+    @Benchmark
+    public Id<?> newAnnotatedTypeId() {
+        return Ids.newId(type, annotation);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = INTERNING)
+    public Id<String> newClassIdInterning() {
+        return Ids.newId(String.class);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = INTERNING)
+    public Id<?> newAnnotatedTypeIdInterning() {
+        return Ids.newId(type, annotation);
+    }
+
+    @Benchmark
+    public Id<?> intern() {
+        return Ids.intern(equalId);
+    }
+
+    @Benchmark
+    public boolean equalsEqual() {
+        return id.equals(equalId);
+    }
+
+    @Benchmark
+    public boolean equalsOther() {
+        return id.equals(otherId);
+    }
+
+    @Benchmark
+    public boolean equalsEqualInterned() {
+        return internedId.equals(internedEqualId);
+    }
+
+    @Benchmark
+    public boolean equalsOtherInterned() {
+        return internedId.equals(internedOtherId);
+    }
+
+    @Benchmark
+    public int hashCodeId() {
+        return id.hashCode();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar.guice;
+
+import com.google.common.collect.ImmutableList;
+import org.javabits.yar.BlockingSupplier;
+import org.javabits.yar.Id;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.javabits.yar.guice.BlockingSupplierRegistryImpl.newLoadingCacheBlockingSupplierRegistry;
+import static org.javabits.yar.guice.ExecutionStrategy.Type.SERIALIZED;
+import static org.javabits.yar.guice.RegistryFixtures.newIds;
+import static org.javabits.yar.guice.RegistryFixtures.newSupplier;
+
+/**
+ * Throughput of the {@link BlockingSupplier} reads once the supplier is available: {@code get},
+ * {@code getSync} and {@code getAsync} on a held blocking supplier, and a lookup of the blocking
+ * supplier followed by {@code getSync} where the {@code SHARED} factory reuses the supplier of an id
+ * instead of creating a new one, and its watcher, on each lookup.
+ *
+ * @author Romain Gilles
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockingSupplierBenchmark {
+    private static final String DEFAULT = "DEFAULT";
+    private static final String SHARED = "SHARED";
+
+    @Param({DEFAULT, SHARED})
+    public String factory;
+
+    @Param({"1", "100"})
+    public int typeCount;
+
+    @Param({"1", "10"})
+    public int registrationsPerType;
+
+    private BlockingSupplierRegistryImpl registry;
+    private List<Id<Object>> ids;
+    private List<BlockingSupplier<Object>> suppliers;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        BlockingSupplierFactory blockingSupplierFactory = SHARED.equals(factory)
+                ? new SharedBlockingSupplierFactory() : new DefaultBlockingSupplierFactory();
+        registry = newLoadingCacheBlockingSupplierRegistry(AbstractExecutionStrategy.newExecutionStrategy(SERIALIZED)
+                , 10, TimeUnit.SECONDS, blockingSupplierFactory);
+        ids = newIds(typeCount);
+        ImmutableList.Builder<BlockingSupplier<Object>> suppliersBuilder = ImmutableList.builder();
+        for (Id<Object> id : ids) {
+            for (int i = 0; i < registrationsPerType; i++) {
+                registry.put(id, newSupplier());
+            }
+            BlockingSupplier<Object> supplier = registry.get(id);
+            // wait for the supplier to be notified of the registrations
+            supplier.getSync();
+            suppliersBuilder.add(supplier);
+        }
+        suppliers = suppliersBuilder.build();
+    }
+
+    @Benchmark
+    public Object get() {
+        return randomSupplier().get();
+    }
+
+    @Benchmark
+    public Object getSync() throws InterruptedException {
+        return randomSupplier().getSync();
+    }
+
+    @Benchmark
+    public Object getAsync() {
+        return randomSupplier().getAsync().join();
+    }
+
+    @Benchmark
+    public Object lookupAndGetSync() throws InterruptedException {
+        return registry.get(ids.get(ThreadLocalRandom.current().nextInt(ids.size()))).getSync();
+    }
+
+    private BlockingSupplier<Object> randomSupplier() {
+        return suppliers.get(ThreadLocalRandom.current().nextInt(suppliers.size()));
+    }
+}
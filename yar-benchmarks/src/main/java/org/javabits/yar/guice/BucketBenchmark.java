@@ -0,0 +1,129 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar.guice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Cost of the updates and of the iteration of a single crowded type, from tens to hundred of thousands
+ * of registrations. The {@code COPY_ON_WRITE} container is the baseline of a bucket backed by a copy on
+ * write list, as the {@code CACHE} container used to be: each update copies the whole bucket.
+ *
+ * @author Romain Gilles
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BucketBenchmark {
+    static final String COPY_ON_WRITE = "COPY_ON_WRITE";
+    private static final Type TYPE = Object.class;
+
+    @Param({RegistryFixtures.CACHE, RegistryFixtures.MULTIMAP, COPY_ON_WRITE})
+    public String container;
+
+    @Param({"10", "1000", "100000"})
+    public int registrationsPerType;
+
+    private List<Object> values;
+    private Predicate<Object> put;
+    private Predicate<Object> remove;
+    private Consumer<Consumer<Object>> forEach;
+    private int count;
+    private final Consumer<Object> counter = value -> count++;
+
+    @Setup
+    public void setUp() {
+        switch (container) {
+            case RegistryFixtures.CACHE:
+                setUp(CacheContainer.newConcurrentContainer());
+                break;
+            case RegistryFixtures.MULTIMAP:
+                setUp(ListMultimapContainer.newSynchronizedContainer());
+                break;
+            case COPY_ON_WRITE:
+                List<Object> bucket = new CopyOnWriteArrayList<>();
+                put = bucket::add;
+                remove = bucket::remove;
+                forEach = bucket::forEach;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown container: " + container);
+        }
+        values = new ArrayList<>(registrationsPerType);
+        for (int i = 0; i < registrationsPerType; i++) {
+            Object value = new Object();
+            values.add(value);
+            put.test(value);
+        }
+    }
+
+    private void setUp(Container<Type, Object> bucket) {
+        put = value -> bucket.put(TYPE, value);
+        remove = value -> bucket.remove(TYPE, value);
+        forEach = action -> bucket.forEach(TYPE, (value, consumer) -> consumer.accept(value), action);
+    }
+
+    /**
+     * Registration immediately followed by its removal: the last value of the bucket is removed.
+     */
+    @Benchmark
+    public boolean putRemove() {
+        Object value = new Object();
+        put.test(value);
+        return remove.test(value);
+    }
+
+    /**
+     * Removal of a value picked at random in the bucket, and its registration again at the end.
+     */
+    @Benchmark
+    public boolean removePut() {
+        int index = ThreadLocalRandom.current().nextInt(values.size());
+        Object value = values.get(index);
+        remove.test(value);
+        return put.test(value);
+    }
+
+    @Benchmark
+    public int forEach() {
+        count = 0;
+        forEach.accept(counter);
+        return count;
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar.guice;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.util.Types;
+import org.javabits.yar.Id;
+import org.javabits.yar.IdMatchers;
+import org.javabits.yar.Ids;
+import org.javabits.yar.Supplier;
+import org.javabits.yar.Watcher;
+
+import java.lang.reflect.Type;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+import static org.javabits.yar.guice.GuiceWatchableRegistrationContainer.newLoadingCacheGuiceWatchableRegistrationContainer;
+import static org.javabits.yar.guice.GuiceWatchableRegistrationContainer.newMultimapGuiceWatchableRegistrationContainer;
+
+/**
+ * Shared fixtures of the registry benchmarks: the generation of distinct registry types and the
+ * creation of the registries regarding the container and execution strategy parameters.
+ *
+ * @author Romain Gilles
+ */
+final class RegistryFixtures {
+    static final String CACHE = "CACHE";
+    static final String MULTIMAP = "MULTIMAP";
+
+    private static final long AWAIT_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+    // single type parameter raw types used to spread the generated types over several erasures
+    private static final Class<?>[] RAW_TYPES = {List.class, Set.class, Iterable.class, Queue.class
+            , Deque.class, Optional.class, java.util.function.Supplier.class, Consumer.class, Predicate.class
+            , UnaryOperator.class, Callable.class, Future.class, Comparator.class, Iterator.class
+            , ThreadLocal.class, Class.class};
+
+    private RegistryFixtures() {
+        throw new AssertionError("Not for you!");
+    }
+
+    /**
+     * Returns the {@code index}th generated type. Two distinct indexes give two distinct types.
+     * The raw type cycles over a fixed set of classes and the type argument encodes the remaining
+     * bits of the index as nested {@code List} (one) and {@code Set} (zero) of {@code String}.
+     */
+    static Type newType(int index) {
+        Type argument = String.class;
+        for (int bits = index / RAW_TYPES.length; bits > 0; bits >>>= 1) {
+            argument = (bits & 1) == 1 ? Types.listOf(argument) : Types.setOf(argument);
+        }
+        return Types.newParameterizedType(RAW_TYPES[index % RAW_TYPES.length], argument);
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<Id<Object>> newIds(int count) {
+        ImmutableList.Builder<Id<Object>> ids = ImmutableList.builder();
+        for (int i = 0; i < count; i++) {
+            ids.add((Id<Object>) Ids.newId(newType(i)));
+        }
+        return ids.build();
+    }
+
+    static ExecutionStrategy newExecutionStrategy(String strategy, boolean batched) {
+        return AbstractExecutionStrategy.newExecutionStrategy(ExecutionStrategy.Type.valueOf(strategy), batched);
+    }
+
+    static GuiceWatchableRegistrationContainer newContainer(String container, ExecutionStrategy executionStrategy) {
+        switch (container) {
+            case CACHE:
+                return newLoadingCacheGuiceWatchableRegistrationContainer(executionStrategy);
+            case MULTIMAP:
+                return newMultimapGuiceWatchableRegistrationContainer(executionStrategy);
+            default:
+                throw new IllegalArgumentException("Unknown container: " + container);
+        }
+    }
+
+    static SimpleRegistry newRegistry(String container, String strategy, boolean batched) {
+        return new SimpleRegistry(newContainer(container, newExecutionStrategy(strategy, batched)));
+    }
+
+    /**
+     * Registers {@code registrationsPerType} suppliers under each of the given ids.
+     */
+    static void populate(SimpleRegistry registry, List<Id<Object>> ids, int registrationsPerType) {
+        for (Id<Object> id : ids) {
+            for (int i = 0; i < registrationsPerType; i++) {
+                registry.put(id, newSupplier());
+            }
+        }
+    }
+
+    /**
+     * Adds {@code watchersPerType} counting watchers on each of the given ids. The returned list
+     * must be held by the caller: the registry only keeps weak references to the watchers.
+     */
+    static List<CountingWatcher> watch(SimpleRegistry registry, List<Id<Object>> ids, int watchersPerType, CountingWatcher.Counters counters) {
+        ImmutableList.Builder<CountingWatcher> watchers = ImmutableList.builder();
+        for (Id<Object> id : ids) {
+            for (int i = 0; i < watchersPerType; i++) {
+                CountingWatcher watcher = new CountingWatcher(counters);
+                registry.addWatcher(IdMatchers.newIdMatcher(id), watcher);
+                watchers.add(watcher);
+            }
+        }
+        return watchers.build();
+    }
+
+    static java.util.function.Supplier<Object> newSupplier() {
+        final Object value = new Object();
+        return () -> value;
+    }
+
+    /**
+     * Busy waits until the counter reaches the expected value.
+     *
+     * @throws IllegalStateException if the value is not reached within 30 seconds.
+     */
+    static void await(AtomicLong counter, long expected) {
+        long deadline = System.nanoTime() + AWAIT_TIMEOUT_NANOS;
+        while (counter.get() < expected) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new IllegalStateException("Counter stuck at " + counter.get() + ", expected: " + expected);
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Waits until the registry has no more pending listener update tasks.
+     *
+     * @throws IllegalStateException if the tasks are not completed within 30 seconds.
+     */
+    static void awaitListenerUpdates(SimpleRegistry registry) {
+        try {
+            if (!registry.awaitListenerQuiescence(AWAIT_TIMEOUT_NANOS, TimeUnit.NANOSECONDS)) {
+                throw new IllegalStateException("Listener update tasks still pending");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the listener update tasks", e);
+        }
+    }
+
+    /**
+     * Watcher counting the supplier events it receives into shared counters.
+     */
+    static final class CountingWatcher implements Watcher<Object> {
+        private final Counters counters;
+
+        CountingWatcher(Counters counters) {
+            this.counters = counters;
+        }
+
+        @Override
+        public Supplier<Object> add(Supplier<Object> element) {
+            counters.added.incrementAndGet();
+            return element;
+        }
+
+        @Override
+        public void remove(Supplier<Object> element) {
+            counters.removed.incrementAndGet();
+        }
+
+        static final class Counters {
+            final AtomicLong added = new AtomicLong();
+            final AtomicLong removed = new AtomicLong();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar.guice;
+
+import com.google.common.collect.ImmutableList;
+import org.javabits.yar.Id;
+import org.javabits.yar.Registration;
+import org.javabits.yar.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.javabits.yar.guice.RegistryFixtures.newIds;
+import static org.javabits.yar.guice.RegistryFixtures.newRegistry;
+import static org.javabits.yar.guice.RegistryFixtures.newSupplier;
+import static org.javabits.yar.guice.RegistryFixtures.populate;
+import static org.javabits.yar.guice.RegistryFixtures.watch;
+
+/**
+ * Throughput of the registry lookups: {@link SimpleRegistry#get(Id)} and
+ * {@link SimpleRegistry#getAll(java.lang.reflect.Type)} on a populated registry. The {@code contended}
+ * group measures the same lookups while a writer thread keeps registering and removing suppliers
+ * on the looked up types.
+ * <p>The {@code forEach} and {@code size} benchmarks cover the allocation free read API, run them
+ * with {@code -prof gc} to check their {@code gc.alloc.rate.norm}. The {@code cached} benchmarks go
+ * through a {@link CachedLookup}.</p>
+ *
+ * @author Romain Gilles
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegistryLookupBenchmark {
+
+    @Param({RegistryFixtures.CACHE, RegistryFixtures.MULTIMAP})
+    public String container;
+
+    @Param({"1", "100", "1000"})
+    public int typeCount;
+
+    @Param({"1", "10"})
+    public int registrationsPerType;
+
+    @Param({"0", "10"})
+    public int watchersPerType;
+
+    private SimpleRegistry registry;
+    private List<Id<Object>> ids;
+    // strong references on the weakly referenced watchers
+    private List<RegistryFixtures.CountingWatcher> watchers;
+    private Consumer<Supplier<?>> consumer;
+    private List<CachedLookup<List<Supplier<Object>>>> cachedLookups;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        consumer = blackhole::consume;
+        registry = newRegistry(container, "SERIALIZED", false);
+        ids = newIds(typeCount);
+        populate(registry, ids, registrationsPerType);
+        watchers = watch(registry, ids, watchersPerType, new RegistryFixtures.CountingWatcher.Counters());
+        ImmutableList.Builder<CachedLookup<List<Supplier<Object>>>> cachedLookupsBuilder = ImmutableList.builder();
+        for (Id<Object> id : ids) {
+            cachedLookupsBuilder.add(CachedLookup.getAll(registry, id.type()));
+        }
+        cachedLookups = cachedLookupsBuilder.build();
+    }
+
+    @Benchmark
+    public Supplier<Object> get() {
+        return registry.get(randomId());
+    }
+
+    @Benchmark
+    public List<Supplier<Object>> getAll() {
+        return registry.getAll(randomId().type());
+    }
+
+    @Benchmark
+    public List<Supplier<Object>> cachedGetAll() {
+        return cachedLookups.get(ThreadLocalRandom.current().nextInt(cachedLookups.size())).get();
+    }
+
+    @Benchmark
+    @Group("contendedCached")
+    @GroupThreads(3)
+    public List<Supplier<Object>> contendedCachedGetAll() {
+        return cachedGetAll();
+    }
+
+    @Benchmark
+    @Group("contendedCached")
+    @GroupThreads(1)
+    public void contendedCachedPutRemove() {
+        contendedPutRemove();
+    }
+
+    @Benchmark
+    public void forEachType() {
+        registry.forEach(randomId().type(), consumer);
+    }
+
+    @Benchmark
+    public void forEachId() {
+        registry.forEach(randomId(), consumer);
+    }
+
+    @Benchmark
+    public int sizeType() {
+        return registry.size(randomId().type());
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public Supplier<Object> contendedGet() {
+        return registry.get(randomId());
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void contendedPutRemove() {
+        Registration<Object> registration = registry.put(randomId(), newSupplier());
+        registry.remove(registration);
+    }
+
+    private Id<Object> randomId() {
+        return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar.guice;
+
+import com.google.common.collect.ImmutableMap;
+import org.javabits.yar.Id;
+import org.javabits.yar.Registration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.javabits.yar.guice.RegistryFixtures.awaitListenerUpdates;
+import static org.javabits.yar.guice.RegistryFixtures.newIds;
+import static org.javabits.yar.guice.RegistryFixtures.newRegistry;
+import static org.javabits.yar.guice.RegistryFixtures.newSupplier;
+import static org.javabits.yar.guice.RegistryFixtures.populate;
+import static org.javabits.yar.guice.RegistryFixtures.watch;
+
+/**
+ * Throughput of the registry updates: a supplier registration immediately followed by its removal,
+ * one by one or as a batch of one supplier per type. The watcher notifications are dispatched by
+ * the execution strategy under test and are not waited for, see {@link WatcherFanOutBenchmark}
+ * for the notification latency.
+ *
+ * @author Romain Gilles
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegistryMutationBenchmark {
+
+    @Param({RegistryFixtures.CACHE, RegistryFixtures.MULTIMAP})
+    public String container;
+
+    @Param({"SERIALIZED", "PARALLEL", "KEYED", "VIRTUAL"})
+    public String strategy;
+
+    @Param({"10", "1000"})
+    public int typeCount;
+
+    @Param({"1", "10"})
+    public int registrationsPerType;
+
+    @Param({"0", "10"})
+    public int watchersPerType;
+
+    private SimpleRegistry registry;
+    private List<Id<Object>> ids;
+    private Map<Id<Object>, Supplier<Object>> batch;
+    // strong references on the weakly referenced watchers
+    private List<RegistryFixtures.CountingWatcher> watchers;
+
+    @Setup
+    public void setUp() {
+        registry = newRegistry(container, strategy, false);
+        ids = newIds(typeCount);
+        populate(registry, ids, registrationsPerType);
+        watchers = watch(registry, ids, watchersPerType, new RegistryFixtures.CountingWatcher.Counters());
+        ImmutableMap.Builder<Id<Object>, Supplier<Object>> batchBuilder = ImmutableMap.builder();
+        for (Id<Object> id : ids) {
+            batchBuilder.put(id, newSupplier());
+        }
+        batch = batchBuilder.build();
+    }
+
+    @Benchmark
+    public void putRemove() {
+        Id<Object> id = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+        Registration<Object> registration = registry.put(id, newSupplier());
+        registry.remove(registration);
+    }
+
+    @Benchmark
+    public void putAllRemoveAll() {
+        List<Registration<?>> registrations = registry.putAll(batch);
+        registry.removeAll(registrations);
+    }
+
+    // do not let the listener backlog of an iteration slow down the next one
+    @TearDown(Level.Iteration)
+    public void drainListenerUpdates() {
+        awaitListenerUpdates(registry);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar.guice;
+
+import com.google.common.collect.ImmutableList;
+import org.javabits.yar.Id;
+import org.javabits.yar.IdMatchers;
+import org.javabits.yar.Registration;
+import org.javabits.yar.Supplier;
+import org.javabits.yar.Watcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.javabits.yar.guice.RegistryFixtures.CACHE;
+import static org.javabits.yar.guice.RegistryFixtures.newIds;
+import static org.javabits.yar.guice.RegistryFixtures.newRegistry;
+import static org.javabits.yar.guice.RegistryFixtures.newSupplier;
+
+/**
+ * Boot of many components waiting on an unresolved dependency: each watcher blocks in
+ * {@code add()} until the dependency is resolved. Measures the time from the supplier registration
+ * until all the watchers are waiting, the dependency is resolved and all the watchers are done, plus
+ * the removal of the supplier. Every waiting watcher holds a thread of the listener strategy, the
+ * peak number of live threads of the trial is printed at its end.
+ * <p>Only the strategies running the watchers concurrently are compared ({@code VIRTUAL} and
+ * {@code PARALLEL}): {@code SERIALIZED} runs one watcher at a time, its watchers never wait
+ * together and the next one would wait for a dependency that is never resolved.</p>
+ *
+ * @author Romain Gilles
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class WaitingWatchersBenchmark {
+
+    @Param({"PARALLEL", "VIRTUAL"})
+    public String strategy;
+
+    @Param({"1000", "10000"})
+    public int waiters;
+
+    private SimpleRegistry registry;
+    private Id<Object> id;
+    // strong references on the weakly referenced watchers
+    private List<WaitingWatcher> watchers;
+    private volatile CountDownLatch waiting;
+    private volatile CountDownLatch dependency;
+    private volatile CountDownLatch done;
+    private volatile CountDownLatch removed;
+
+    @Setup
+    public void setUp() {
+        registry = newRegistry(CACHE, strategy, false);
+        id = newIds(1).get(0);
+        ImmutableList.Builder<WaitingWatcher> watchersBuilder = ImmutableList.builder();
+        for (int i = 0; i < waiters; i++) {
+            WaitingWatcher watcher = new WaitingWatcher();
+            registry.addWatcher(IdMatchers.newIdMatcher(id), watcher);
+            watchersBuilder.add(watcher);
+        }
+        watchers = watchersBuilder.build();
+        ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() {
+        waiting = new CountDownLatch(waiters);
+        dependency = new CountDownLatch(1);
+        done = new CountDownLatch(waiters);
+        removed = new CountDownLatch(waiters);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        System.out.println("Peak live threads: " + threads.getPeakThreadCount());
+    }
+
+    @Benchmark
+    public void resolveWaitingWatchers() throws InterruptedException {
+        Registration<Object> registration = registry.put(id, newSupplier());
+        await(waiting);
+        dependency.countDown();
+        await(done);
+        registry.remove(registration);
+        await(removed);
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedException {
+        if (!latch.await(30, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Watchers still pending: " + latch.getCount());
+        }
+    }
+
+    private final class WaitingWatcher implements Watcher<Object> {
+        @Override
+        public Supplier<Object> add(Supplier<Object> element) {
+            waiting.countDown();
+            try {
+                dependency.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+            return element;
+        }
+
+        @Override
+        public void remove(Supplier<Object> element) {
+            removed.countDown();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar.guice;
+
+import org.javabits.yar.Id;
+import org.javabits.yar.Registration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.javabits.yar.guice.RegistryFixtures.await;
+import static org.javabits.yar.guice.RegistryFixtures.newIds;
+import static org.javabits.yar.guice.RegistryFixtures.newRegistry;
+import static org.javabits.yar.guice.RegistryFixtures.newSupplier;
+import static org.javabits.yar.guice.RegistryFixtures.populate;
+import static org.javabits.yar.guice.RegistryFixtures.watch;
+
+/**
+ * Latency of the watcher fan-out: the time from a supplier registration until all the watchers of
+ * its type are notified, plus the same for its removal. Compares the execution strategies
+ * ({@code VIRTUAL}, {@code PARALLEL}, {@code SERIALIZED} and {@code KEYED}) in direct and batched
+ * listener update modes.
+ *
+ * @author Romain Gilles
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class WatcherFanOutBenchmark {
+
+    @Param({RegistryFixtures.CACHE, RegistryFixtures.MULTIMAP})
+    public String container;
+
+    @Param({"SERIALIZED", "PARALLEL", "KEYED", "VIRTUAL"})
+    public String strategy;
+
+    @Param({"false", "true"})
+    public boolean batched;
+
+    @Param({"1", "100"})
+    public int typeCount;
+
+    @Param({"1", "10"})
+    public int registrationsPerType;
+
+    @Param({"1", "10", "100"})
+    public int watchersPerType;
+
+    private SimpleRegistry registry;
+    private List<Id<Object>> ids;
+    private RegistryFixtures.CountingWatcher.Counters counters;
+    // strong references on the weakly referenced watchers
+    private List<RegistryFixtures.CountingWatcher> watchers;
+
+    @Setup
+    public void setUp() {
+        registry = newRegistry(container, strategy, batched);
+        ids = newIds(typeCount);
+        populate(registry, ids, registrationsPerType);
+        counters = new RegistryFixtures.CountingWatcher.Counters();
+        watchers = watch(registry, ids, watchersPerType, counters);
+        // the new watchers are notified of the already registered suppliers
+        await(counters.added, (long) typeCount * registrationsPerType * watchersPerType);
+    }
+
+    @Benchmark
+    public void putRemoveRoundTrip() {
+        Id<Object> id = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+        long added = counters.added.get() + watchersPerType;
+        long removed = counters.removed.get() + watchersPerType;
+        Registration<Object> registration = registry.put(id, newSupplier());
+        await(counters.added, added);
+        registry.remove(registration);
+        await(counters.removed, removed);
+    }
+}
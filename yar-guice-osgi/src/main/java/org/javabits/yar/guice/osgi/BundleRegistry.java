@@ -10,13 +10,16 @@ import javax.annotation.Nullable;
 import java.lang.InterruptedException;
 import java.lang.reflect.Type;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -107,6 +110,11 @@ class BundleRegistry implements BlockingSupplierRegistry, RegistryHook, OSGiRegi
         return delegate.ids();
     }
 
+    @Override
+    public RegistrySnapshot snapshot() {
+        return new BundleRegistrySnapshot(delegate.snapshot());
+    }
+
     @Override
     public <T> List<Supplier<T>> getAll(Class<T> type) {
         return transformToBundleSuppliers(delegate.getAll(type));
@@ -122,6 +130,38 @@ class BundleRegistry implements BlockingSupplierRegistry, RegistryHook, OSGiRegi
         return transformToBundleSuppliers(delegate.getAll(type));
     }
 
+    @Override
+    public void forEach(Type type, Consumer<? super Supplier<?>> action) {
+        checkNotNull(action, "action");
+        delegate.forEach(type, supplier -> action.accept(new BundleSupplierWrapper<>(supplier)));
+    }
+
+    @Override
+    public <T> void forEach(Id<T> id, Consumer<? super Supplier<T>> action) {
+        checkNotNull(action, "action");
+        delegate.forEach(id, supplier -> action.accept(new BundleSupplierWrapper<>(supplier)));
+    }
+
+    @Override
+    public long version() {
+        return delegate.version();
+    }
+
+    @Override
+    public long version(Type type) {
+        return delegate.version(type);
+    }
+
+    @Override
+    public int size(Type type) {
+        return delegate.size(type);
+    }
+
+    @Override
+    public int size(Id<?> id) {
+        return delegate.size(id);
+    }
+
     @Override
     public <T> Registration<T> put(Id<T> id, java.util.function.Supplier<? extends T> supplier) {
         if (!mutable.get()) {
@@ -132,6 +172,29 @@ class BundleRegistry implements BlockingSupplierRegistry, RegistryHook, OSGiRegi
         return registration;
     }
 
+    @Override
+    public <T> CompletableFuture<Registration<T>> putAsync(Id<T> id, java.util.function.Supplier<? extends T> supplier) {
+        if (!mutable.get()) {
+            return CompletableFuture.completedFuture(newNullRegistration(id));
+        }
+        return delegate.putAsync(id, newGuavaWrapper(supplier)).thenApply(registration -> {
+            trackRegistration(id, "Supplier", registration, supplierRegistrations);
+            return registration;
+        });
+    }
+
+    @Override
+    public List<Registration<?>> putAll(Map<? extends Id<?>, ? extends java.util.function.Supplier<?>> suppliers) {
+        if (!mutable.get()) {
+            return newNullRegistrations(suppliers.keySet());
+        }
+        Map<Id<?>, java.util.function.Supplier<?>> wrappedSuppliers = new LinkedHashMap<>();
+        suppliers.forEach((id, supplier) -> wrappedSuppliers.put(id, newGuavaWrapper(supplier)));
+        List<Registration<?>> registrations = delegate.putAll(wrappedSuppliers);
+        registrations.forEach(registration -> trackRegistration(registration.id(), "Supplier", registration, supplierRegistrations));
+        return registrations;
+    }
+
     @Override
     public void remove(Registration<?> registration) {
         if (!mutable.get()) {
@@ -141,6 +204,15 @@ class BundleRegistry implements BlockingSupplierRegistry, RegistryHook, OSGiRegi
         delegate.remove(registration);
     }
 
+    @Override
+    public CompletableFuture<Void> removeAsync(Registration<?> registration) {
+        if (!mutable.get()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        supplierRegistrations.remove(registration);
+        return delegate.removeAsync(registration);
+    }
+
     @Override
     public void removeAll(Collection<? extends Registration<?>> registrations) {
         if (!mutable.get()) {
@@ -150,6 +222,15 @@ class BundleRegistry implements BlockingSupplierRegistry, RegistryHook, OSGiRegi
         delegate.removeAll(registrations);
     }
 
+    @Override
+    public CompletableFuture<Void> removeAllAsync(Collection<? extends Registration<?>> registrations) {
+        if (!mutable.get()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        registrations.forEach(supplierRegistrations::remove);
+        return delegate.removeAllAsync(registrations);
+    }
+
     @Override
     public <T> Registration<T> addWatcher(IdMatcher<T> watchedKey, Watcher<T> watcher) {
         if (!mutable.get()) {
@@ -160,7 +241,28 @@ class BundleRegistry implements BlockingSupplierRegistry, RegistryHook, OSGiRegi
         return registration;
     }
 
-    private <T> void trackRegistration(final Id<T> id, final String registrationType, Registration<T> registration, final ConcurrentMap<Registration<?>, Id<?>> registrations) {
+    @Override
+    public <T> CompletableFuture<Registration<T>> addWatcherAsync(IdMatcher<T> watchedKey, Watcher<T> watcher) {
+        if (!mutable.get()) {
+            return CompletableFuture.completedFuture(newNullRegistration(watchedKey.id()));
+        }
+        return delegate.addWatcherAsync(watchedKey, watcher).thenApply(registration -> {
+            trackRegistration(watchedKey.id(), "Watcher", registration, watcherRegistrations);
+            return registration;
+        });
+    }
+
+    @Override
+    public List<Registration<?>> addWatchers(Map<? extends IdMatcher<?>, ? extends Watcher<?>> watchers) {
+        if (!mutable.get()) {
+            return newNullRegistrations(Lists.transform(Lists.newArrayList(watchers.keySet()), IdMatcher::id));
+        }
+        List<Registration<?>> registrations = delegate.addWatchers(watchers);
+        registrations.forEach(registration -> trackRegistration(registration.id(), "Watcher", registration, watcherRegistrations));
+        return registrations;
+    }
+
+    private void trackRegistration(final Id<?> id, final String registrationType, Registration<?> registration, final ConcurrentMap<Registration<?>, Id<?>> registrations) {
         LOG.log(Level.FINER, () -> registrationType + " Registration: " + id);
         registrations.put(registration, id);
     }
@@ -206,6 +308,12 @@ class BundleRegistry implements BlockingSupplierRegistry, RegistryHook, OSGiRegi
         return () -> id;
     }
 
+    private static List<Registration<?>> newNullRegistrations(Collection<? extends Id<?>> ids) {
+        List<Registration<?>> registrations = Lists.newArrayListWithCapacity(ids.size());
+        ids.forEach(id -> registrations.add(newNullRegistration(id)));
+        return registrations;
+    }
+
     @Override
     public void invalidate(Type type) {
         if (!mutable.get()) {
@@ -222,6 +330,14 @@ class BundleRegistry implements BlockingSupplierRegistry, RegistryHook, OSGiRegi
         registryHook.invalidateAll(types);
     }
 
+    @Override
+    public CompletableFuture<Void> invalidateAllAsync(Collection<Type> types) {
+        if (!mutable.get()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return registryHook.invalidateAllAsync(types);
+    }
+
     @Override
     public void addTypeListener(TypeListener typeListener) {
         if (!mutable.get()) {
@@ -248,6 +364,11 @@ class BundleRegistry implements BlockingSupplierRegistry, RegistryHook, OSGiRegi
         registryHook.addEndOfListenerUpdateTasksListener(listener);
     }
 
+    @Override
+    public boolean awaitListenerQuiescence(long timeout, TimeUnit unit) throws InterruptedException {
+        return registryHook.awaitListenerQuiescence(timeout, unit);
+    }
+
     private <T> OSGiSupplier<T> newDecorator(BlockingSupplier<T> blockingSupplier) {
         return blockingSupplier == null ? null : new BlockingSupplierDecorator<>(blockingSupplier);
     }
@@ -341,6 +462,65 @@ class BundleRegistry implements BlockingSupplierRegistry, RegistryHook, OSGiRegi
         }
     }
 
+    /**
+     * This class wraps the suppliers returned by the underlying snapshot
+     * the same way the registry lookup methods do.
+     */
+    private final class BundleRegistrySnapshot implements RegistrySnapshot {
+        private final RegistrySnapshot delegate;
+
+        private BundleRegistrySnapshot(RegistrySnapshot delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Set<Id<?>> ids() {
+            return delegate.ids();
+        }
+
+        @Override
+        public Set<Type> types() {
+            return delegate.types();
+        }
+
+        @Nullable
+        @Override
+        public <T> Supplier<T> get(Class<T> type) {
+            return newBundleSupplier(delegate.get(type));
+        }
+
+        @Override
+        public <T> List<Supplier<T>> getAll(Class<T> type) {
+            return transformToBundleSuppliers(delegate.getAll(type));
+        }
+
+        @Nullable
+        @Override
+        public <T> Supplier<T> get(Id<T> id) {
+            return newBundleSupplier(delegate.get(id));
+        }
+
+        @Override
+        public <T> List<Supplier<T>> getAll(Id<T> id) {
+            return transformToBundleSuppliers(delegate.getAll(id));
+        }
+
+        @Nullable
+        @Override
+        public <T> Supplier<T> get(Type type) {
+            return newBundleSupplier(delegate.get(type));
+        }
+
+        @Override
+        public <T> List<Supplier<T>> getAll(Type type) {
+            return transformToBundleSuppliers(delegate.getAll(type));
+        }
+
+        private <T> Supplier<T> newBundleSupplier(@Nullable Supplier<T> supplier) {
+            return supplier == null ? null : new BundleSupplierWrapper<>(supplier);
+        }
+    }
+
     private static final class OSGiSupplierWrapper<T> implements java.util.function.Supplier<T>, org.javabits.yar.guice.SupplierWrapper<T> {
         private final java.util.function.Supplier<T> delegate;
         private final Bundle bundle;
@@ -19,11 +19,16 @@ package org.javabits.yar.guice.osgi.internal;
 import org.javabits.yar.BlockingSupplierRegistry;
 import org.javabits.yar.Registry;
 import org.javabits.yar.RegistryHook;
+import org.javabits.yar.guice.BackpressurePolicy;
 import org.javabits.yar.guice.BlockingSupplierFactory;
 import org.javabits.yar.guice.NoWaitBlockingSupplierFactory;
+import org.javabits.yar.guice.RegistryMetrics;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static java.lang.Boolean.parseBoolean;
@@ -58,6 +63,12 @@ public class Activator implements BundleActivator {
      * If {@code true} then parallel mode is activated otherwise the serialized mode is used.
      */
     public static final String YAR_PARALLEL_EXECUTION_MODE = "yar.parallel.execution";
+    /**
+     * property use to select the execution strategy for watchers / listeners update by name: {@code SERIALIZED},
+     * {@code PARALLEL}, {@code KEYED} (parallel across the listeners, ordered per listener) or {@code VIRTUAL}.
+     * If provided it takes precedence over the {@link #YAR_PARALLEL_EXECUTION_MODE} property.
+     */
+    public static final String YAR_EXECUTION_STRATEGY = "yar.execution.strategy";
     /**
      * Default timeout value of 5 min if no external property is provided by the framework.
      * As specified in OSGi Blueprint container part.
@@ -70,6 +81,62 @@ public class Activator implements BundleActivator {
      */
     public static final String YAR_NO_WAIT = "yar.no.wait";
 
+    /**
+     * property use to define the number of lanes used to execute the registry mutations. The mutations are routed to
+     * a lane regarding the erased type of their id, so bundles working on unrelated types are not serialized behind
+     * a single handler thread. If no value is provided then only one lane is used.
+     */
+    public static final String YAR_ACTION_HANDLER_LANES = "yar.action.handler.lanes";
+
+    /**
+     * property use to enable the group commit of the registry mutations. It defines the maximum number of actions
+     * committed together by an action handler. If no value is provided then the actions are executed one by one.
+     */
+    public static final String YAR_ACTION_GROUP_COMMIT_SIZE = "yar.action.group.commit.size";
+
+    /**
+     * property use to run the registry threads (action handlers and watchers / listeners updates) on virtual threads.
+     * If {@code true} it takes precedence over the {@link #YAR_PARALLEL_EXECUTION_MODE} property. Platform threads are
+     * used if the JVM does not support virtual threads.
+     */
+    public static final String YAR_VIRTUAL_THREADS = "yar.virtual.threads";
+
+    /**
+     * property use to share the blocking suppliers between the lookups of a same id. If {@code true} all the lookups
+     * of an id return the same supplier as long as it is used, instead of adding a new listener on each lookup.
+     */
+    public static final String YAR_SHARED_BLOCKING_SUPPLIERS = "yar.shared.blocking.suppliers";
+
+    /**
+     * property use to submit the watchers / listeners updates of a registry mutation as a single job to the execution
+     * strategy instead of one job per listener. If {@code true} the batched mode is activated.
+     */
+    public static final String YAR_BATCHED_LISTENER_UPDATE = "yar.batched.listener.update";
+
+    /**
+     * property use to bound the number of pending registry actions per action handler lane. If no value is provided
+     * then the queues are unbounded.
+     */
+    public static final String YAR_ACTION_QUEUE_CAPACITY = "yar.action.queue.capacity";
+
+    /**
+     * property use to bound the number of queued watchers / listeners updates of the serialized execution strategy.
+     * If no value is provided then the queue is unbounded.
+     */
+    public static final String YAR_LISTENER_QUEUE_CAPACITY = "yar.listener.queue.capacity";
+
+    /**
+     * property use to define what happens when the action queue or the listener queue is full: {@code BLOCK} (default),
+     * {@code CALLER_RUNS} or {@code REJECT}.
+     */
+    public static final String YAR_BACKPRESSURE_POLICY = "yar.backpressure.policy";
+
+    /**
+     * property use to move the pending watchers / listeners updates of the serialized execution strategy to a new
+     * thread when an update overruns the registry timeout. If {@code true} the recovery is activated.
+     */
+    public static final String YAR_STUCK_LISTENER_RECOVERY = "yar.stuck.listener.recovery";
+
     private static final String[] REGISTRY_INTERFACES = new String[]{Registry.class.getName()
             , BlockingSupplierRegistry.class.getName(), RegistryHook.class.getName()};
 
@@ -78,14 +145,61 @@ public class Activator implements BundleActivator {
         BlockingSupplierRegistry registry = newRegistry(bundleContext);
         bundleContext.addBundleListener(new BundleTypeCleaner((RegistryHook) registry));
         bundleContext.registerService(REGISTRY_INTERFACES, registry, null);
+        registerMetrics(registry);
+    }
+
+    private void registerMetrics(BlockingSupplierRegistry registry) {
+        try {
+            RegistryMetrics.of(registry).register();
+        } catch (RuntimeException e) {
+            // the metrics are not mandatory, e.g. another registry may already publish its metrics
+            LOG.log(Level.WARNING, "Cannot publish the registry metrics under: " + RegistryMetrics.OBJECT_NAME, e);
+        }
     }
 
     private BlockingSupplierRegistry newRegistry(BundleContext bundleContext) {
         Builder builder = builder();
         builder.timeout(getExecutionTimeout(bundleContext))
                 .timeUnit(Registry.DEFAULT_TIME_UNIT)
-                .listenerUpdateExecutionStrategy(getExecutionStrategy(bundleContext))
                 .blockingSupplierStrategy(getBlockingSupplierStrategy(bundleContext));
+        String virtualThreads = bundleContext.getProperty(YAR_VIRTUAL_THREADS);
+        if (virtualThreads != null && parseBoolean(virtualThreads)) {
+            builder.virtualThreads();
+        } else {
+            builder.listenerUpdateExecutionStrategy(getExecutionStrategy(bundleContext));
+        }
+        String batchedListenerUpdate = bundleContext.getProperty(YAR_BATCHED_LISTENER_UPDATE);
+        if (batchedListenerUpdate != null && parseBoolean(batchedListenerUpdate)) {
+            builder.batchedListenerUpdate();
+        }
+        String actionHandlerLanes = bundleContext.getProperty(YAR_ACTION_HANDLER_LANES);
+        if (actionHandlerLanes != null) {
+            builder.actionHandlerLanes(Integer.parseInt(actionHandlerLanes));
+        }
+        String actionGroupCommitSize = bundleContext.getProperty(YAR_ACTION_GROUP_COMMIT_SIZE);
+        if (actionGroupCommitSize != null) {
+            builder.groupCommit(Integer.parseInt(actionGroupCommitSize));
+        }
+        String sharedBlockingSuppliers = bundleContext.getProperty(YAR_SHARED_BLOCKING_SUPPLIERS);
+        if (sharedBlockingSuppliers != null && parseBoolean(sharedBlockingSuppliers)) {
+            builder.sharedBlockingSuppliers();
+        }
+        String actionQueueCapacity = bundleContext.getProperty(YAR_ACTION_QUEUE_CAPACITY);
+        if (actionQueueCapacity != null) {
+            builder.actionQueueCapacity(Integer.parseInt(actionQueueCapacity));
+        }
+        String listenerQueueCapacity = bundleContext.getProperty(YAR_LISTENER_QUEUE_CAPACITY);
+        if (listenerQueueCapacity != null) {
+            builder.listenerQueueCapacity(Integer.parseInt(listenerQueueCapacity));
+        }
+        String backpressurePolicy = bundleContext.getProperty(YAR_BACKPRESSURE_POLICY);
+        if (backpressurePolicy != null) {
+            builder.backpressurePolicy(BackpressurePolicy.valueOf(backpressurePolicy.trim().toUpperCase(Locale.ROOT)));
+        }
+        String stuckListenerRecovery = bundleContext.getProperty(YAR_STUCK_LISTENER_RECOVERY);
+        if (stuckListenerRecovery != null && parseBoolean(stuckListenerRecovery)) {
+            builder.stuckListenerRecovery();
+        }
         LOG.info("Create Yar OSGi registry: " + builder);
         return builder.build();
     }
@@ -99,6 +213,10 @@ public class Activator implements BundleActivator {
     }
 
     private Type getExecutionStrategy(BundleContext bundleContext) {
+        String executionStrategy = bundleContext.getProperty(YAR_EXECUTION_STRATEGY);
+        if (executionStrategy != null) {
+            return Type.valueOf(executionStrategy.trim().toUpperCase(Locale.ROOT));
+        }
         String synchronously = bundleContext.getProperty(YAR_PARALLEL_EXECUTION_MODE);
         if (synchronously != null && parseBoolean(synchronously)) {
             return Type.PARALLEL;
@@ -119,6 +237,7 @@ public class Activator implements BundleActivator {
 
     @Override
     public void stop(BundleContext bundleContext) throws Exception {
-        //nothing to do let the framework un-register the registry.
+        //let the framework un-register the registry.
+        RegistryMetrics.unregister(ManagementFactory.getPlatformMBeanServer());
     }
 }
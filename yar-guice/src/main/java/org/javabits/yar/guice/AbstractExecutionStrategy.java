@@ -18,65 +18,239 @@ package org.javabits.yar.guice;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Throwables;
-import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.MoreExecutors;
+import org.javabits.yar.RegistryException;
 import org.javabits.yar.RegistryHook;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static org.javabits.yar.guice.RegistryActionPipeline.UNBOUNDED;
 
 /**
+ * Base class of the execution strategies.
+ * <p>The listener tasks are executed under the watch of a shared watchdog: each task must complete
+ * within the timeout given to {@link #execute(List, long, TimeUnit)}. A task that overruns its
+ * deadline is reported with the matcher of its watcher and its elapsed time. A pooled worker
+ * thread publishes its running tasks in a slot reused for all of them, so the tracking does not
+ * allocate per task. With one thread per task ({@link Type#VIRTUAL}) the slot lives as long as its
+ * task: it is created with the task and dropped as soon as the task completes.</p>
+ * <p>All the strategies are watched from their first task on, even those without a worker of their
+ * own like {@link Type#SAME_THREAD}: an overrun is reported whatever the thread that runs the task.
+ * Only a strategy owning its worker can recover from it, see {@link #onOverrun(Thread)}.</p>
  * Date: 10/24/13
  * @author Romain Gilles
  */
 public abstract class AbstractExecutionStrategy implements ExecutionStrategy {
     private static final Logger LOG = Logger.getLogger(ExecutionStrategy.class.getName());
+    static final long WATCHDOG_PERIOD_MILLIS = 100;
 
-    private final Map<CompletableFuture<Void>, Callable<Void>> pendingTasks = Maps.newConcurrentMap();
+    private final Quiescence quiescence = new Quiescence();
+    private final LongAccumulator pendingTasksHighWaterMark = new LongAccumulator(Math::max, 0);
+    private final Set<RunningTask> runningTasks = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<RunningTask> runningTask = ThreadLocal.withInitial(this::newRunningTask);
+    private final AtomicBoolean watched = new AtomicBoolean();
+    private final LongAdder overrunTasks = new LongAdder();
+    private final LongAdder failedTasks = new LongAdder();
+    private final LatencyHistogram taskLatency = new LatencyHistogram();
+    // the registry always provides the same timeout, the last one applies to all the running tasks
+    private volatile long taskTimeoutNanos = Long.MAX_VALUE;
 
     abstract Executor executor();
 
-    public boolean hasPendingTasks() {
-        return !pendingTasks.isEmpty();
+    /**
+     * Returns the number of listener tasks that have overrun their deadline.
+     */
+    long overrunTasks() {
+        return overrunTasks.sum();
     }
 
-    public void addEndOfListenerUpdateTasksListener(final RegistryHook.EndOfListenerUpdateTasksListener pendingTaskLister) {
-        final Map<CompletableFuture<Void>, Callable<Void>> pendingTaskSnapshot = new ConcurrentHashMap<>(pendingTasks);
-        if (pendingTaskSnapshot.isEmpty()) {
-            pendingTaskLister.completed();
-            return;
+    /**
+     * Returns the number of listener tasks that have failed.
+     */
+    long failedTasks() {
+        return failedTasks.sum();
+    }
+
+    /**
+     * Returns the number of threads whose running task is tracked.
+     */
+    @VisibleForTesting
+    int trackedThreads() {
+        return runningTasks.size();
+    }
+
+    /**
+     * Returns the execution time distribution of the listener tasks.
+     */
+    LatencySnapshot taskLatency() {
+        return taskLatency.snapshot();
+    }
+
+    /**
+     * Returns the number of listener tasks submitted and not yet completed.
+     */
+    int pendingTasks() {
+        return quiescence.pendingTasks();
+    }
+
+    void setTaskTimeout(long timeout, TimeUnit unit) {
+        long timeoutNanos = unit.toNanos(timeout);
+        if (timeoutNanos > 0 && timeoutNanos != taskTimeoutNanos) {
+            taskTimeoutNanos = timeoutNanos;
+        }
+    }
+
+    /**
+     * Calls the given task on the current thread under the watch of the watchdog.
+     */
+    void callTracked(Callable<Void> task) throws Exception {
+        boolean threadPerTask = threadPerTask();
+        RunningTask current = threadPerTask ? newRunningTask() : runningTask.get();
+        Callable<Void> previousTask = current.start(task);
+        try {
+            task.call();
+        } catch (Exception | Error e) {
+            failedTasks.increment();
+            throw e;
+        } finally {
+            taskLatency.record(System.nanoTime() - current.startNanos);
+            if (threadPerTask) {
+                // the thread ends with the task, its slot would never be reused
+                runningTasks.remove(current);
+            } else {
+                current.stop(previousTask);
+            }
+        }
+    }
+
+    /**
+     * Returns {@code true} if each task is executed by its own thread. Returns {@code false} by default.
+     */
+    boolean threadPerTask() {
+        return false;
+    }
+
+    /**
+     * Called by the watchdog when the given worker thread overruns the deadline of its task.
+     * Does nothing by default: the overrun is only reported. A strategy that owns its worker
+     * threads can override it to stop waiting for the stuck one.
+     */
+    void onOverrun(Thread worker) {
+    }
+
+    private RunningTask newRunningTask() {
+        if (watched.compareAndSet(false, true)) {
+            Watchdog.watch(this);
         }
-        for (final CompletableFuture<Void> future : pendingTaskSnapshot.keySet()) {
-            future.thenAcceptAsync(aVoid -> {
-                pendingTaskSnapshot.remove(future);
-                if (pendingTaskSnapshot.isEmpty())
-                    pendingTaskLister.completed();
-            }, executor());
+        RunningTask task = new RunningTask(Thread.currentThread());
+        runningTasks.add(task);
+        return task;
+    }
+
+    void checkDeadlines() {
+        long now = System.nanoTime();
+        long timeoutNanos = taskTimeoutNanos;
+        for (RunningTask running : runningTasks) {
+            if (!running.thread.isAlive()) {
+                runningTasks.remove(running);
+                continue;
+            }
+            Callable<Void> task = running.task;
+            if (task == null || running.overrun) {
+                continue;
+            }
+            long elapsedNanos = now - running.startNanos;
+            if (elapsedNanos > timeoutNanos) {
+                running.overrun = true;
+                overrunTasks.increment();
+                LOG.warning(String.format("Listener task overruns its deadline of %d ms on thread [%s], elapsed %d ms, watcher matcher: %s, task: %s"
+                        , TimeUnit.NANOSECONDS.toMillis(timeoutNanos), running.thread.getName(), TimeUnit.NANOSECONDS.toMillis(elapsedNanos)
+                        , task instanceof WatcherTask ? ((WatcherTask) task).matcher() : "n/a", task));
+                onOverrun(running.thread);
+            }
         }
     }
 
+    /**
+     * Returns the highest number of pending listener tasks observed on submission.
+     */
+    long pendingTasksHighWaterMark() {
+        return pendingTasksHighWaterMark.get();
+    }
+
+    void recordPendingTasks(int pendingTaskCount) {
+        pendingTasksHighWaterMark.accumulate(pendingTaskCount);
+    }
+
+    public boolean hasPendingTasks() {
+        return quiescence.pendingTasks() != 0;
+    }
+
+    /**
+     * The listener is called by the thread that completes the last pending task, or immediately
+     * if there is none. Its registration does not depend on the number of pending tasks.
+     */
+    public void addEndOfListenerUpdateTasksListener(final RegistryHook.EndOfListenerUpdateTasksListener pendingTaskLister) {
+        quiescence.whenQuiescent().thenRun(pendingTaskLister::completed);
+    }
+
+    @Override
+    public CompletionStage<Void> whenQuiescent() {
+        return quiescence.whenQuiescent().minimalCompletionStage();
+    }
+
+    @Override
+    public boolean awaitQuiescence(long timeout, TimeUnit unit) throws InterruptedException {
+        return quiescence.awaitQuiescence(timeout, unit);
+    }
+
+    void tasksSubmitted(int count) {
+        recordPendingTasks(quiescence.tasksSubmitted(count));
+    }
+
+    void tasksCompleted(int count) {
+        quiescence.tasksCompleted(count);
+    }
+
     public void execute(final List<Callable<Void>> tasks, final long timeout, final TimeUnit unit) {
+        setTaskTimeout(timeout, unit);
         for (final Callable<Void> task : tasks) {
-            final CompletableFuture<Void> future = CompletableFuture.runAsync(new SafeRunnableAdapter(task), executor());
-            pendingTasks.put(future, task);
-            future.whenCompleteAsync((aVoid, throwable) -> pendingTasks.remove(future), executor());
-                    future.whenComplete((aVoid, throwable) -> {
-                if(throwable != null) {
+            int pendingTaskCount = quiescence.tasksSubmitted(1);
+            final CompletableFuture<Void> future;
+            try {
+                future = CompletableFuture.runAsync(new SafeRunnableAdapter(task), executor());
+            } catch (RuntimeException e) {
+                // rejected by the executor or its backpressure policy
+                tasksCompleted(1);
+                throw e;
+            }
+            recordPendingTasks(pendingTaskCount);
+            future.whenComplete((aVoid, throwable) -> {
+                if (throwable != null) {
                     LOG.log(Level.SEVERE, String.format("Listener task failed: %s", task), throwable);
                 } else {
-                    LOG.log(Level.FINE, ()-> String.format("Listener task succeeded : %s", task));
+                    LOG.log(Level.FINE, () -> String.format("Listener task succeeded : %s", task));
                 }
+                tasksCompleted(1);
             });
         }
     }
 
-    static class SafeRunnableAdapter implements Runnable {
+    class SafeRunnableAdapter implements Runnable {
         private final Callable<Void> task;
 
         SafeRunnableAdapter(Callable<Void> task) {
@@ -86,7 +260,7 @@ public abstract class AbstractExecutionStrategy implements ExecutionStrategy {
         @Override
         public void run() {
             try {
-                task.call();
+                callTracked(task);
             } catch (Exception e) {
                 Throwables.throwIfUnchecked(e);
                 throw new RuntimeException(e);
@@ -95,18 +269,115 @@ public abstract class AbstractExecutionStrategy implements ExecutionStrategy {
     }
 
     static ExecutionStrategy newExecutionStrategy(Type strategy) {
+        return newStrategy(strategy);
+    }
+
+    /**
+     * Returns a new execution strategy of the given type. In batched mode all the listener
+     * tasks of an {@link #execute(List, long, TimeUnit)} call are submitted to the executor
+     * of the strategy as a single job. The {@link Type#KEYED} strategy is never batched: it
+     * would lose the order of the tasks of a watcher across the batches.
+     */
+    static ExecutionStrategy newExecutionStrategy(Type strategy, boolean batched) {
+        return newExecutionStrategy(strategy, batched, UNBOUNDED, BackpressurePolicy.BLOCK, 0, TimeUnit.MILLISECONDS, false);
+    }
+
+    /**
+     * Returns a new execution strategy of the given type where the listener tasks queue is bounded.
+     * Only the {@link Type#SERIALIZED} strategy queues its tasks, the other ones ignore the capacity.
+     *
+     * @param queueCapacity      the maximum number of queued listener tasks (jobs in batched mode).
+     * @param backpressurePolicy applied when the queue is full.
+     * @param timeout            the maximum time to wait for room in the queue with the
+     *                           {@link BackpressurePolicy#BLOCK} policy.
+     * @param stuckWorkerRecovery if {@code true} the {@link Type#SERIALIZED} strategy moves its
+     *                           queued tasks to a new worker when a task overruns its deadline.
+     */
+    static ExecutionStrategy newExecutionStrategy(Type strategy, boolean batched, int queueCapacity, BackpressurePolicy backpressurePolicy
+            , long timeout, TimeUnit unit, boolean stuckWorkerRecovery) {
+        checkArgument(queueCapacity > 0, "The listener queue capacity must be positive: %s", queueCapacity);
+        checkNotNull(backpressurePolicy, "backpressurePolicy");
+        AbstractExecutionStrategy executionStrategy = strategy == Type.SERIALIZED
+                ? new Serialized(queueCapacity, backpressurePolicy, timeout, unit, stuckWorkerRecovery) : newStrategy(strategy);
+        return batched && strategy != Type.KEYED ? new Batched(executionStrategy) : executionStrategy;
+    }
+
+    private static AbstractExecutionStrategy newStrategy(Type strategy) {
         switch (strategy) {
             case SAME_THREAD:
                 return new SameThread();
             case PARALLEL:
                 return new Parallel();
             case SERIALIZED:
-                return new Serialized();
+                return new Serialized(UNBOUNDED, BackpressurePolicy.BLOCK, 0, TimeUnit.MILLISECONDS, false);
+            case VIRTUAL:
+                return new Virtual();
+            case KEYED:
+                return new Keyed();
             default:
                 throw new IllegalArgumentException("Unknown strategy type: " + strategy);
         }
     }
 
+    // the task running on a worker thread, reused for all the tasks of the thread
+    private static class RunningTask {
+        private final Thread thread;
+        private volatile Callable<Void> task;
+        private volatile long startNanos;
+        private volatile boolean overrun;
+
+        RunningTask(Thread thread) {
+            this.thread = thread;
+        }
+
+        Callable<Void> start(Callable<Void> newTask) {
+            Callable<Void> previousTask = task;
+            // the task is published last so the watchdog never sees it with a stale start time
+            task = null;
+            startNanos = System.nanoTime();
+            overrun = false;
+            task = newTask;
+            return previousTask;
+        }
+
+        void stop(Callable<Void> previousTask) {
+            task = previousTask;
+        }
+    }
+
+    /**
+     * Periodically checks the deadlines of the running tasks of a strategy. The strategies are
+     * weakly referenced, the check is cancelled when its strategy is garbage collected.
+     */
+    private static class Watchdog implements Runnable {
+        private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("listener-watchdog"));
+        private final WeakReference<AbstractExecutionStrategy> strategy;
+        private volatile ScheduledFuture<?> future;
+
+        private Watchdog(AbstractExecutionStrategy strategy) {
+            this.strategy = new WeakReference<>(strategy);
+        }
+
+        static void watch(AbstractExecutionStrategy strategy) {
+            Watchdog watchdog = new Watchdog(strategy);
+            watchdog.future = SCHEDULER.scheduleAtFixedRate(watchdog, WATCHDOG_PERIOD_MILLIS, WATCHDOG_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            AbstractExecutionStrategy executionStrategy = strategy.get();
+            if (executionStrategy == null) {
+                future.cancel(false);
+                return;
+            }
+            try {
+                executionStrategy.checkDeadlines();
+            } catch (RuntimeException e) {
+                LOG.log(Level.SEVERE, "Cannot check the listener tasks deadlines", e);
+            }
+        }
+    }
+
     private static class DaemonThreadFactory implements ThreadFactory {
         final ThreadGroup group;
         final AtomicInteger threadNumber = new AtomicInteger(1);
@@ -150,13 +421,264 @@ public abstract class AbstractExecutionStrategy implements ExecutionStrategy {
         }
     }
 
+    /**
+     * Executes the listener tasks one after the other on a single thread. Its queue can be bounded,
+     * the {@link BackpressurePolicy} is then applied by the action handler that submits the tasks.
+     * <p>With the stuck worker recovery, when a task overruns its deadline the queued tasks are
+     * moved to a fresh worker thread. The stuck thread completes its task and then exits.
+     * Therefore a stuck listener cannot freeze the propagation of all the registry events, at the
+     * price of the order between the stuck task and the moved ones.</p>
+     */
     private static class Serialized extends AbstractExecutionStrategy {
-        private final Executor executor = Executors
-                .newSingleThreadExecutor(new DaemonThreadFactory("serialized-listener-handler"));
+        private final int queueCapacity;
+        private final RejectedExecutionHandler rejectedExecutionHandler;
+        private final boolean stuckWorkerRecovery;
+        // replaced under the lock of this strategy
+        private volatile Worker worker;
+
+        Serialized(int queueCapacity, BackpressurePolicy backpressurePolicy, long timeout, TimeUnit unit, boolean stuckWorkerRecovery) {
+            this.queueCapacity = queueCapacity;
+            RejectedExecutionHandler backpressureHandler = newRejectedExecutionHandler(backpressurePolicy, timeout, unit);
+            // the tasks submitted to a replaced worker are redirected to the current one, once it is published
+            this.rejectedExecutionHandler = (task, executor) -> {
+                if (executor.isShutdown()) {
+                    currentWorker().executor.execute(task);
+                } else {
+                    backpressureHandler.rejectedExecution(task, executor);
+                }
+            };
+            this.stuckWorkerRecovery = stuckWorkerRecovery;
+            this.worker = new Worker(Collections.emptyList());
+        }
+
+        @Override
+        Executor executor() {
+            return worker.executor;
+        }
+
+        private synchronized Worker currentWorker() {
+            return worker;
+        }
+
+        /**
+         * The new worker is created with the tasks queued on the stuck one and only then published,
+         * under the lock that the redirection of the rejected tasks waits for. Therefore the tasks
+         * submitted meanwhile are executed after the moved ones, and the watchdog thread never
+         * submits a task by itself: it can neither block nor fail on a full queue.
+         */
+        @Override
+        void onOverrun(Thread thread) {
+            if (!stuckWorkerRecovery) {
+                return;
+            }
+            int movedTasks;
+            synchronized (this) {
+                Worker stuckWorker = worker;
+                if (stuckWorker.thread != thread) {
+                    return;
+                }
+                stuckWorker.executor.shutdown();
+                List<Runnable> queuedTasks = new ArrayList<>();
+                stuckWorker.executor.getQueue().drainTo(queuedTasks);
+                worker = new Worker(queuedTasks);
+                movedTasks = queuedTasks.size();
+            }
+            LOG.warning(String.format("Move %d queued listener tasks from the stuck thread [%s] to a new worker", movedTasks, thread.getName()));
+        }
+
+        private class Worker {
+            private final ThreadPoolExecutor executor;
+            private volatile Thread thread;
+
+            Worker(List<Runnable> queuedTasks) {
+                ThreadFactory threadFactory = new DaemonThreadFactory("serialized-listener-handler");
+                // the moved tasks never exceed the capacity, they come from a queue of the same capacity
+                LinkedBlockingQueue<Runnable> queue = new LinkedBlockingQueue<>(queueCapacity);
+                queue.addAll(queuedTasks);
+                executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, queue, runnable -> {
+                    Thread newThread = threadFactory.newThread(runnable);
+                    thread = newThread;
+                    return newThread;
+                }, rejectedExecutionHandler);
+                if (!queuedTasks.isEmpty()) {
+                    executor.prestartCoreThread();
+                }
+            }
+        }
+    }
+
+    private static RejectedExecutionHandler newRejectedExecutionHandler(BackpressurePolicy backpressurePolicy, final long timeout, final TimeUnit unit) {
+        switch (backpressurePolicy) {
+            case CALLER_RUNS:
+                return new ThreadPoolExecutor.CallerRunsPolicy();
+            case REJECT:
+                return (task, executor) -> {
+                    throw new RegistryException(String.format("Listener task rejected, the listener queue is full (%d pending tasks)"
+                            , executor.getQueue().size()));
+                };
+            default:
+                return (task, executor) -> {
+                    try {
+                        if (!executor.getQueue().offer(task, timeout, unit)) {
+                            throw new RegistryException(String.format("Timeout after %d %s waiting for room in the listener queue"
+                                    , timeout, unit));
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RegistryException("Interrupted while waiting for room in the listener queue", e);
+                    }
+                };
+        }
+    }
+
+    /**
+     * Base class of the strategies that call their tasks by themselves instead of submitting a
+     * future per task to their executor.
+     */
+    private abstract static class CountingExecutionStrategy extends AbstractExecutionStrategy {
+
+        // calls the task and logs its failure, the task is always accounted as completed
+        void callSafely(Callable<Void> task) {
+            try {
+                callTracked(task);
+                if (LOG.isLoggable(Level.FINE)) {
+                    LOG.fine(String.format("Listener task succeeded : %s", task));
+                }
+            } catch (Throwable e) {
+                LOG.log(Level.SEVERE, String.format("Listener task failed: %s", task), e);
+            } finally {
+                tasksCompleted(1);
+            }
+        }
+    }
+
+    /**
+     * Decorates a strategy to execute each list of listener tasks as one job on its executor.
+     * The tasks of a list are called one after the other in order, a failing task is logged and
+     * does not prevent the execution of the next ones. The pending tasks are tracked by a counter
+     * instead of a future per task. Therefore a listener update costs one executor submission per
+     * registry event whatever the number of watchers to notify. The drawback is that the tasks of
+     * a same list are no longer executed in parallel by the {@link Type#PARALLEL} strategy.
+     */
+    private static class Batched extends CountingExecutionStrategy {
+        private final AbstractExecutionStrategy delegate;
+
+        Batched(AbstractExecutionStrategy delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        Executor executor() {
+            return delegate.executor();
+        }
+
+        @Override
+        void onOverrun(Thread worker) {
+            // the batches are executed by the workers of the delegate
+            delegate.onOverrun(worker);
+        }
+
+        @Override
+        boolean threadPerTask() {
+            return delegate.threadPerTask();
+        }
+
+        @Override
+        public void execute(final List<Callable<Void>> tasks, final long timeout, final TimeUnit unit) {
+            if (tasks.isEmpty()) {
+                return;
+            }
+            setTaskTimeout(timeout, unit);
+            tasksSubmitted(tasks.size());
+            try {
+                executor().execute(() -> tasks.forEach(this::callSafely));
+            } catch (RuntimeException e) {
+                // rejected by the executor or its backpressure policy
+                tasksCompleted(tasks.size());
+                throw e;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Batched{" + "delegate=" + delegate.getClass().getSimpleName() + '}';
+        }
+    }
+
+    /**
+     * Executes the tasks of different watchers concurrently on a bounded pool while the tasks of
+     * a same watcher are executed one after the other in submission order. Therefore a watcher
+     * always sees the events of a supplier in the registry order (e.g. no remove before the add)
+     * and a slow watcher only delays its own updates.
+     * <p>The tasks are keyed by their {@link WatcherTask#key()}, the other tasks are their own key.
+     * Each key with pending tasks owns a queue drained by one job at a time on the pool, the queue
+     * is dropped as soon as it is empty.</p>
+     */
+    private static class Keyed extends CountingExecutionStrategy {
+        // at least two threads so that a blocked watcher cannot stall all the others
+        private final ExecutorService executor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors())
+                , new DaemonThreadFactory("keyed-listener-handler"));
+        private final ConcurrentMap<Object, Queue<Callable<Void>>> queuesByKey = new ConcurrentHashMap<>();
+
+        @Override
+        Executor executor() {
+            return executor;
+        }
+
+        @Override
+        public void execute(final List<Callable<Void>> tasks, final long timeout, final TimeUnit unit) {
+            setTaskTimeout(timeout, unit);
+            tasksSubmitted(tasks.size());
+            for (Callable<Void> task : tasks) {
+                final Object key = task instanceof WatcherTask ? ((WatcherTask) task).key() : task;
+                boolean[] created = new boolean[1];
+                // the queue is created and fed under the map lock of the key, see drain()
+                queuesByKey.compute(key, (k, queue) -> {
+                    if (queue == null) {
+                        queue = new ConcurrentLinkedQueue<>();
+                        created[0] = true;
+                    }
+                    queue.add(task);
+                    return queue;
+                });
+                if (created[0]) {
+                    executor.execute(() -> drain(key));
+                }
+            }
+        }
+
+        private void drain(Object key) {
+            Queue<Callable<Void>> queue = queuesByKey.get(key);
+            for (; ; ) {
+                for (Callable<Void> task = queue.poll(); task != null; task = queue.poll()) {
+                    callSafely(task);
+                }
+                // only drop the queue if no task was added since the last poll
+                if (queuesByKey.computeIfPresent(key, (k, q) -> q.isEmpty() ? null : q) == null) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Same as {@link Parallel} but each listener task is executed by its own virtual thread.
+     * Falls back to the cached platform thread pool if the virtual threads are not available.
+     */
+    private static class Virtual extends AbstractExecutionStrategy {
+        private final Executor executor = VirtualThreads.isAvailable()
+                ? VirtualThreads.newThreadPerTaskExecutor(VirtualThreads.newThreadFactory("YAR virtual-listener-handler-"))
+                : Executors.newCachedThreadPool(new DaemonThreadFactory("virtual-listener-handler"));
 
         @Override
         Executor executor() {
             return executor;
         }
+
+        @Override
+        boolean threadPerTask() {
+            // the platform threads of the fallback pool are reused
+            return VirtualThreads.isAvailable();
+        }
     }
 }
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar.guice;
+
+/**
+ * Defines what happens when a bounded registry queue is full: the registry actions queue
+ * or the listener updates queue.
+ *
+ * @author Romain Gilles
+ * @see YarGuices.Builder#backpressurePolicy(BackpressurePolicy)
+ */
+public enum BackpressurePolicy {
+    /**
+     * The submitter waits until the queue has room. Waiting for the listener updates queue is
+     * bounded by the registry timeout, then a {@link org.javabits.yar.RegistryException} is thrown.
+     */
+    BLOCK,
+    /**
+     * The listener update is executed by the submitting thread (the registry action handler).
+     * The registry actions must be executed in order by their handler, so this policy behaves
+     * like {@link #BLOCK} for the registry actions queue.
+     */
+    CALLER_RUNS,
+    /**
+     * The submission fails immediately with a {@link org.javabits.yar.RegistryException}.
+     */
+    REJECT
+}
@@ -7,6 +7,8 @@ import java.lang.InterruptedException;
 import java.util.concurrent.*;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.util.concurrent.Futures.getUnchecked;
@@ -16,6 +18,10 @@ class BlockingSupplierImpl<T> implements BlockingSupplier<T>, SupplierListener,
     private final AtomicReference<CompletableFuture<Supplier<T>>> supplierRef;
     private final Id<T> id;
     private final InternalRegistry registry;
+    // the supplier changes can run the dependent stages of getAsync(): a lock does not pin the virtual threads
+    private final Lock lock = new ReentrantLock();
+    // guarded by lock
+    private final EventSequences eventSequences = new EventSequences();
 
     // preserve a reference to the registration to avoid garbage collection.
     @SuppressWarnings({"unused", "FieldCanBeLocal"})
@@ -82,33 +88,45 @@ class BlockingSupplierImpl<T> implements BlockingSupplier<T>, SupplierListener,
         return supplierRef.get().thenApply(Supplier::get);
     }
 
+    /**
+     * The events are applied one at a time, the stale ones delivered out of order by a parallel
+     * dispatch are discarded.
+     */
     @SuppressWarnings("unchecked")
     @Override
     public void supplierChanged(SupplierEvent supplierEvent) {
-        SupplierEvent.Type type = supplierEvent.type();
-        Supplier<T> supplier = (Supplier<T>) supplierEvent.supplier();
-        switch (type) {
-            case ADD:
-                CompletableFuture<Supplier<T>> completableFuture = supplierRef.get();
-                if (!completableFuture.isDone()) {
-                    completableFuture.complete(supplier);
-                }
-                break;
-            case REMOVE:
-                Future<Supplier<T>> future = supplierRef.get();
-                // Do not block on Future.get() here. Just check if the future is done.
-                if (future.isDone() && !future.isCancelled()) {
-                    Supplier<T> currentSupplier = getUnchecked(future);
-                    if (supplier.equals(currentSupplier)) {
-                        initSupplierRef();
+        lock.lock();
+        try {
+            SupplierEvent.Type type = supplierEvent.type();
+            Supplier<T> supplier = (Supplier<T>) supplierEvent.supplier();
+            if (!eventSequences.apply(supplier, supplierEvent.sequence())) {
+                return;
+            }
+            switch (type) {
+                case ADD:
+                    CompletableFuture<Supplier<T>> completableFuture = supplierRef.get();
+                    if (!completableFuture.isDone()) {
+                        completableFuture.complete(supplier);
+                    }
+                    break;
+                case REMOVE:
+                    Future<Supplier<T>> future = supplierRef.get();
+                    // Do not block on Future.get() here. Just check if the future is done.
+                    if (future.isDone() && !future.isCancelled()) {
+                        Supplier<T> currentSupplier = getUnchecked(future);
+                        if (supplier.equals(currentSupplier)) {
+                            initSupplierRef();
+                        }
+                    } else if (future.isCancelled()) {
+                        supplierRef.set(new CompletableFuture<>());
                     }
-                } else if (future.isCancelled()) {
-                    supplierRef.set(new CompletableFuture<>());
-                }
-                // else nothing to do we preserve the previous one
-                break;
-            default:
-                throw new IllegalStateException("Unknown supplier event: " + supplierEvent);
+                    // else nothing to do we preserve the previous one
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown supplier event: " + supplierEvent);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
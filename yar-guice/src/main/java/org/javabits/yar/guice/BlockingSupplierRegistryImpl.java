@@ -50,6 +50,11 @@ class BlockingSupplierRegistryImpl extends SimpleRegistry implements org.javabit
         this.blockingSupplierFactory = blockingSupplierFactory;
     }
 
+    private BlockingSupplierRegistryImpl(WatchableRegistrationContainer registrationContainer, long timeout, TimeUnit unit, BlockingSupplierFactory blockingSupplierFactory, RegistryActionPipeline actionPipeline) {
+        super(registrationContainer, timeout, unit, actionPipeline);
+        this.blockingSupplierFactory = blockingSupplierFactory;
+    }
+
     @Override
     public <T> BlockingSupplier<T> get(Class<T> type) {
         return get(Ids.newId(type));
@@ -88,6 +93,10 @@ class BlockingSupplierRegistryImpl extends SimpleRegistry implements org.javabit
         return new BlockingSupplierRegistryImpl(newLoadingCacheGuiceWatchableRegistrationContainer(executionStrategy), timeout, unit, blockingSupplierFactory);
     }
 
+    static BlockingSupplierRegistryImpl newLoadingCacheBlockingSupplierRegistry(ExecutionStrategy executionStrategy, long timeout, TimeUnit unit, BlockingSupplierFactory blockingSupplierFactory, RegistryActionPipeline actionPipeline) {
+        return new BlockingSupplierRegistryImpl(newLoadingCacheGuiceWatchableRegistrationContainer(executionStrategy), timeout, unit, blockingSupplierFactory, actionPipeline);
+    }
+
     static BlockingSupplierRegistryImpl newLoadingCacheBlockingSupplierRegistry(ExecutionStrategy executionStrategy) {
         return new BlockingSupplierRegistryImpl(newLoadingCacheGuiceWatchableRegistrationContainer(executionStrategy));
     }
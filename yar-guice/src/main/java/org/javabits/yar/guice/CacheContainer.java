@@ -17,29 +17,35 @@
 package org.javabits.yar.guice;
 
 import com.google.common.base.Function;
-import com.google.common.collect.Iterables;
 
 import javax.annotation.Nullable;
 import java.lang.reflect.Type;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
 
-import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.emptyList;
 import static java.util.Collections.unmodifiableMap;
 import static org.javabits.yar.guice.CacheContainer.KeyConversionStrategies.NO_TYPE_ERASURE;
 import static org.javabits.yar.guice.KeyEvent.newKeyEvent;
 
 /**
  * This class is responsible to maintain a multi-map of {@link Type}s
- * associated to values. It's implementation is based on Guava {@code LoadingCache}.
+ * associated to values. It's implementation is based on a {@code ConcurrentMap} of
+ * {@link PersistentBucket}s: an update replaces the bucket of its key while the key is locked, and
+ * it copies only a logarithmic part of it, whereas the reads go through the current bucket without
+ * any lock. A value already associated to a key is not added twice. A key is present only while
+ * it holds at least one value: the reads never create a key and the removal of the last value of a
+ * key drops it.
  * {@link KeyListener}{@literal <Type>} can be added. They will be
- * triggered on {@code CacheLoader.load(Type)} for addition, and on
- * {@link #invalidate(java.lang.reflect.Type)}, {@link #invalidateAll(Iterable)}
- * for removal.
+ * triggered when the first value of a key is added, and when the last one is removed
+ * or on {@link #invalidate(java.lang.reflect.Type)}, {@link #invalidateAll(Iterable)}.
+ * The listeners are notified while the key is locked, they must not update the container.
  *
  * @param <V> the type of the multi-values associated to a {@link Type}
  * @author Romain Gilles
@@ -47,7 +53,7 @@ import static org.javabits.yar.guice.KeyEvent.newKeyEvent;
 class CacheContainer<V> implements Container<Type, V> {
 
 
-    private final ConcurrentMap<Type, List<V>> loadingCache;
+    private final ConcurrentMap<Type, PersistentBucket<V>> loadingCache;
     private final Collection<KeyListener<Type>> keyListeners;
     private final Function<Type, Type> keyConversionStrategy;
 
@@ -69,25 +75,18 @@ class CacheContainer<V> implements Container<Type, V> {
     }
 
     static <V> CacheContainer<V> newConcurrentContainer() {
-        return newConcurrentContainer(new CopyOnWriteArrayList<>(), NO_TYPE_ERASURE);
+        return newConcurrentContainer(NO_TYPE_ERASURE);
     }
 
-    private static <V> CacheContainer<V> newConcurrentContainer(final Collection<KeyListener<Type>> typeListeners, Function<Type, Type> keyConversionStrategy) {
-        return new CacheContainer<>(new ConcurrentHashMap<>(), typeListeners, keyConversionStrategy);
+    static <V> CacheContainer<V> newConcurrentContainer(Function<Type, Type> keyConversionStrategy) {
+        return newConcurrentContainer(new CopyOnWriteArrayList<>(), keyConversionStrategy);
     }
 
-    static <V> CacheContainer<V> newNonConcurrentContainer(Function<Type, Type> keyConversionStrategy) {
-        return new CacheContainer<>(keyConversionStrategy);
-    }
-
-
-    private CacheContainer(Function<Type, Type> keyConversionStrategy) {
-        this.keyListeners = new CopyOnWriteArrayList<>();
-        this.loadingCache = new ConcurrentHashMap<>();
-        this.keyConversionStrategy = keyConversionStrategy;
+    private static <V> CacheContainer<V> newConcurrentContainer(final Collection<KeyListener<Type>> typeListeners, Function<Type, Type> keyConversionStrategy) {
+        return new CacheContainer<>(new ConcurrentHashMap<>(), typeListeners, keyConversionStrategy);
     }
 
-    private CacheContainer(ConcurrentMap<Type, List<V>> loadingCache, Collection<KeyListener<Type>> keyListeners, Function<Type, Type> keyConversionStrategy) {
+    private CacheContainer(ConcurrentMap<Type, PersistentBucket<V>> loadingCache, Collection<KeyListener<Type>> keyListeners, Function<Type, Type> keyConversionStrategy) {
         this.loadingCache = loadingCache;
         this.keyListeners = keyListeners;
         this.keyConversionStrategy = keyConversionStrategy;
@@ -95,41 +94,91 @@ class CacheContainer<V> implements Container<Type, V> {
 
     @Override
     public List<V> getAll(Type key) {
-        return unmodifiableList(getAllInternal(key));
-    }
-
-    private List<V> getAllInternal(Type key) {
-        key = keyConversionStrategy.apply(key);
-        return loadingCache.computeIfAbsent(key, k -> {
-            for (KeyListener<Type> keyListener : keyListeners) {
-                keyListener.keyAdded(newKeyEvent(k));
-            }
-            return new CopyOnWriteArrayList<>();
-        });
+        PersistentBucket<V> values = loadingCache.get(keyConversionStrategy.apply(key));
+        // the bucket is immutable, it can be returned as is
+        return values == null ? emptyList() : values;
     }
 
     @Nullable
     @Override
     public V getFirst(Type key) {
-        return Iterables.getFirst(getAllInternal(key), null);
+        PersistentBucket<V> values = loadingCache.get(keyConversionStrategy.apply(key));
+        return values == null ? null : values.get(0);
+    }
+
+    /**
+     * Iterates over the current snapshot of the values without copying nor wrapping them.
+     */
+    @Override
+    public <A> void forEach(Type key, BiConsumer<? super V, ? super A> action, A argument) {
+        PersistentBucket<V> values = loadingCache.get(keyConversionStrategy.apply(key));
+        if (values != null) {
+            values.forEach(action, argument);
+        }
+    }
+
+    @Override
+    public int size(Type key) {
+        PersistentBucket<V> values = loadingCache.get(keyConversionStrategy.apply(key));
+        return values == null ? 0 : values.size();
     }
 
     @Override
     public boolean put(Type key, V value) {
-        List<V> valueList = getAllInternal(key);
-        return valueList.add(value);
+        return add(key, Collections.singleton(value));
+    }
+
+    @Override
+    public boolean putAll(Type key, Collection<? extends V> values) {
+        return add(key, values);
+    }
+
+    private boolean add(Type key, Collection<? extends V> newValues) {
+        boolean[] added = new boolean[1];
+        loadingCache.compute(keyConversionStrategy.apply(key), (k, values) -> {
+            PersistentBucket<V> bucket = values == null ? PersistentBucket.empty() : values;
+            for (V value : newValues) {
+                bucket = bucket.with(value);
+            }
+            if (bucket.isEmpty()) {
+                return null;
+            }
+            added[0] = bucket != values;
+            if (values == null) {
+                fireKeyAdded(k);
+            }
+            return bucket;
+        });
+        return added[0];
     }
 
     @Override
     public boolean remove(Type key, V value) {
-        return getAllInternal(key).remove(value);
+        boolean[] removed = new boolean[1];
+        loadingCache.computeIfPresent(keyConversionStrategy.apply(key), (k, values) -> {
+            PersistentBucket<V> bucket = values.without(value);
+            removed[0] = bucket != values;
+            if (bucket.isEmpty()) {
+                fireKeyRemoved(k);
+                return null;
+            }
+            return bucket;
+        });
+        return removed[0];
     }
 
     @Override
     public void invalidate(Type key) {
         key = keyConversionStrategy.apply(key);
-        loadingCache.remove(key);
-        fireKeyRemoved(key);
+        if (loadingCache.remove(key) != null) {
+            fireKeyRemoved(key);
+        }
+    }
+
+    private void fireKeyAdded(Type key) {
+        for (KeyListener<Type> keyListener : keyListeners) {
+            keyListener.keyAdded(newKeyEvent(key));
+        }
     }
 
     private void fireKeyRemoved(Type key) {
@@ -150,6 +199,6 @@ class CacheContainer<V> implements Container<Type, V> {
 
     @Override
     public void removeKeyListener(KeyListener<Type> keyListener) {
-        keyListeners.add(keyListener);
+        keyListeners.remove(keyListener);
     }
 }
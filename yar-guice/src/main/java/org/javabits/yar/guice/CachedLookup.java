@@ -0,0 +1,124 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar.guice;
+
+import com.google.common.collect.ImmutableList;
+import org.javabits.yar.Id;
+import org.javabits.yar.Registry;
+import org.javabits.yar.Supplier;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Memoized registry lookup revalidated against the {@link Registry#version() registry versions}.
+ * As long as nothing is written to the registry the cached result is returned after a single
+ * volatile read. When the registry changed the version of the looked up type is checked, and
+ * the lookup is executed again only if the type itself changed.
+ * <p>The lists are copied when they are looked up, therefore a cached result is an immutable
+ * snapshot. If the registry does not track its versions the lookup is executed on each call.</p>
+ * <p>This class is thread safe, concurrent callers may execute the lookup concurrently on a change.</p>
+ *
+ * @param <R> the type of the lookup result.
+ * @author Romain Gilles
+ */
+public final class CachedLookup<R> implements java.util.function.Supplier<R> {
+    private final Registry registry;
+    private final Type type;
+    private final Function<Registry, R> lookup;
+    @Nullable
+    private volatile Entry<R> entry;
+
+    private CachedLookup(Registry registry, Type type, Function<Registry, R> lookup) {
+        this.registry = checkNotNull(registry, "registry");
+        this.type = checkNotNull(type, "type");
+        this.lookup = lookup;
+    }
+
+    public static <T> CachedLookup<List<Supplier<T>>> getAll(Registry registry, Type type) {
+        return new CachedLookup<>(registry, type, r -> ImmutableList.copyOf(r.<T>getAll(type)));
+    }
+
+    public static <T> CachedLookup<List<Supplier<T>>> getAll(Registry registry, Id<T> id) {
+        checkNotNull(id, "id");
+        return new CachedLookup<>(registry, id.type(), r -> ImmutableList.copyOf(r.getAll(id)));
+    }
+
+    public static <T> CachedLookup<Supplier<T>> get(Registry registry, Type type) {
+        return new CachedLookup<>(registry, type, r -> r.get(type));
+    }
+
+    public static <T> CachedLookup<Supplier<T>> get(Registry registry, Id<T> id) {
+        checkNotNull(id, "id");
+        return new CachedLookup<>(registry, id.type(), r -> r.get(id));
+    }
+
+    /**
+     * Returns the result of the lookup, from the cache if the looked up type did not change.
+     */
+    @Override
+    public R get() {
+        Entry<R> current = entry;
+        // the versions are read before the lookup: a write publishes its content, then the version
+        // of its type and finally the registry version, so the type version read below is at least
+        // as recent as the registry version and the content at least as recent as both
+        long registryVersion = registry.version();
+        if (current != null && current.registryVersion == registryVersion) {
+            return current.value;
+        }
+        long typeVersion = registry.version(type);
+        if (registryVersion < 0 || typeVersion < 0) {
+            return lookup.apply(registry);
+        }
+        if (current != null && current.typeVersion == typeVersion) {
+            // another type changed, the next calls can go back to the registry version check
+            entry = new Entry<>(registryVersion, typeVersion, current.value);
+            return current.value;
+        }
+        R value = lookup.apply(registry);
+        entry = new Entry<>(registryVersion, typeVersion, value);
+        return value;
+    }
+
+    /**
+     * Drops the cached result, the next call executes the lookup.
+     */
+    public void invalidate() {
+        entry = null;
+    }
+
+    @Override
+    public String toString() {
+        return "CachedLookup{" + "type=" + type + '}';
+    }
+
+    private static final class Entry<R> {
+        private final long registryVersion;
+        private final long typeVersion;
+        private final R value;
+
+        private Entry(long registryVersion, long typeVersion, R value) {
+            this.registryVersion = registryVersion;
+            this.typeVersion = typeVersion;
+            this.value = value;
+        }
+    }
+}
@@ -24,6 +24,7 @@ import com.google.inject.Key;
 import com.google.inject.TypeLiteral;
 import com.google.inject.binder.AnnotatedBindingBuilder;
 import com.google.inject.binder.LinkedBindingBuilder;
+import org.javabits.yar.Id;
 import org.javabits.yar.Ids;
 import org.javabits.yar.Registry;
 import org.javabits.yar.Supplier;
@@ -31,8 +32,11 @@ import org.javabits.yar.Supplier;
 import javax.annotation.Nullable;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.AbstractList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.ListIterator;
 
 import static java.util.Objects.requireNonNull;
 
@@ -68,6 +72,8 @@ public class CollectionsRegistryAnnotatedBindingBuilderImpl<T> extends RegistryA
         private final boolean laxTypeBinding;
         private final Key<T> key;
         private Registry registry;
+        // the suppliers of the strict binding, looked up again only when their type changes
+        private CachedLookup<List<Supplier<Object>>> suppliers;
         private CollectionsRegistryProvider(Key<T> key, boolean laxTypeBinding) {
             this.key = key;
             this.laxTypeBinding = laxTypeBinding;
@@ -90,9 +96,9 @@ public class CollectionsRegistryAnnotatedBindingBuilderImpl<T> extends RegistryA
 
         private List getAll() {
             if (laxTypeBinding) {
-                return registry().getAll(getCollectionsTypeParameter());
+                return new RegistryTypeView(registry(), getCollectionsTypeParameter());
             } else {
-                return registry().getAll(Ids.newId(getCollectionsTypeParameter()));
+                return suppliers().get();
             }
         }
 
@@ -113,9 +119,19 @@ public class CollectionsRegistryAnnotatedBindingBuilderImpl<T> extends RegistryA
             return requireNonNull(registry, "registry");
         }
 
+        @SuppressWarnings("unchecked")
+        private CachedLookup<List<Supplier<Object>>> suppliers() {
+            CachedLookup<List<Supplier<Object>>> result = suppliers;
+            if (result == null) {
+                suppliers = result = CachedLookup.getAll(registry(), (Id<Object>) Ids.newId(getCollectionsTypeParameter()));
+            }
+            return result;
+        }
+
         @Inject
         public void setRegistry(Registry registry) {
             this.registry = registry;
+            this.suppliers = null;
         }
 
 
@@ -125,6 +141,40 @@ public class CollectionsRegistryAnnotatedBindingBuilderImpl<T> extends RegistryA
         }
     }
 
+    /**
+     * Live view on the suppliers of a type. The registry drops the empty types, therefore the
+     * list returned by {@link Registry#getAll(Type)} is not live and it is looked up on each access.
+     */
+    private static class RegistryTypeView extends AbstractList<Supplier<Object>> {
+        private final Registry registry;
+        private final Type type;
+
+        private RegistryTypeView(Registry registry, Type type) {
+            this.registry = registry;
+            this.type = type;
+        }
+
+        @Override
+        public Supplier<Object> get(int index) {
+            return registry.<Object>getAll(type).get(index);
+        }
+
+        @Override
+        public int size() {
+            return registry.size(type);
+        }
+
+        @Override
+        public Iterator<Supplier<Object>> iterator() {
+            return registry.<Object>getAll(type).iterator();
+        }
+
+        @Override
+        public ListIterator<Supplier<Object>> listIterator(int index) {
+            return registry.<Object>getAll(type).listIterator(index);
+        }
+    }
+
     static void checkParameterizedType(Type type) {
         if (isNotParameterizedType(type)) {
             throw new IllegalArgumentException("Supplier type must be parameterized: " + type);
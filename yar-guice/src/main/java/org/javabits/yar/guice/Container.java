@@ -21,6 +21,7 @@ import javax.annotation.Nullable;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 /**
  * TODO comment
@@ -31,13 +32,36 @@ import java.util.Map;
  */
 public interface Container<K, V> {
 
+    /**
+     * Returns an immutable snapshot of the values associated to the given key.
+     */
     List<V> getAll(K key);
 
     @Nullable
     V getFirst(K key);
 
+    /**
+     * Performs the given action on each value associated to the key, in their registration order,
+     * without copying nor wrapping them. The argument is passed through to the action so that
+     * the callers can provide a non-capturing action and not allocate on each call.
+     */
+    <A> void forEach(K key, BiConsumer<? super V, ? super A> action, A argument);
+
+    /**
+     * Returns the number of values associated to the key.
+     */
+    int size(K key);
+
     boolean put(K key, V value);
 
+    default boolean putAll(K key, Collection<? extends V> values) {
+        boolean changed = false;
+        for (V value : values) {
+            changed |= put(key, value);
+        }
+        return changed;
+    }
+
     boolean remove(K key, V value);
 
     Map<K, ? extends Collection<V>> asMap();
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar.guice;
+
+import com.google.common.collect.MapMaker;
+
+import java.util.Map;
+
+import static org.javabits.yar.SupplierEvent.NO_SEQUENCE;
+
+/**
+ * Keeps the sequence of the last event applied for each supplier to discard the stale events.
+ * The events of a supplier may be delivered out of order when the listener updates are
+ * dispatched in parallel: an event older than the last applied one is already superseded.
+ * The suppliers are weakly referenced and compared by identity.
+ * <p>This class is not thread safe, the callers serialize the calls.</p>
+ *
+ * @author Romain Gilles
+ */
+final class EventSequences {
+    // created by the first ordered event, the listeners notified without sequence do not pay for it
+    private Map<Object, Long> sequences;
+
+    /**
+     * Returns {@code true} and records the sequence if the event is not older than the last one
+     * applied for the supplier. The events without sequence are always applied.
+     */
+    boolean apply(Object supplier, long sequence) {
+        if (sequence == NO_SEQUENCE) {
+            return true;
+        }
+        if (sequences == null) {
+            sequences = new MapMaker().weakKeys().concurrencyLevel(1).makeMap();
+        }
+        Long lastSequence = sequences.get(supplier);
+        if (lastSequence != null && sequence < lastSequence) {
+            return false;
+        }
+        sequences.put(supplier, sequence);
+        return true;
+    }
+}
@@ -19,6 +19,7 @@ import org.javabits.yar.RegistryHook;
 
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -33,7 +34,17 @@ public interface ExecutionStrategy {
         @VisibleForTesting
         SAME_THREAD,
         PARALLEL,
-        SERIALIZED
+        SERIALIZED,
+        /**
+         * Parallel execution where each listener task runs on its own virtual thread.
+         * Platform threads are used if the running JVM does not support virtual threads.
+         */
+        VIRTUAL,
+        /**
+         * Parallel execution across the watchers on a bounded pool where the tasks of a given
+         * watcher are executed one after the other in the order of the registry events.
+         */
+        KEYED
     }
 
     void execute(final List<Callable<Void>> tasks, final long timeout, final TimeUnit unit) throws InterruptedException;
@@ -48,4 +59,17 @@ public interface ExecutionStrategy {
     boolean hasPendingTasks();
 
     void addEndOfListenerUpdateTasksListener(RegistryHook.EndOfListenerUpdateTasksListener pendingTaskListener);
+
+    /**
+     * Returns a stage completed the next time this execution strategy has no pending task,
+     * immediately if it has none. The cost does not depend on the number of pending tasks.
+     */
+    CompletionStage<Void> whenQuiescent();
+
+    /**
+     * Waits until this execution strategy has no pending task.
+     *
+     * @return {@code false} if the timeout elapsed while some tasks were still pending.
+     */
+    boolean awaitQuiescence(long timeout, TimeUnit unit) throws InterruptedException;
 }
@@ -18,18 +18,34 @@ package org.javabits.yar.guice;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
+import org.javabits.yar.BatchWatcher;
 import org.javabits.yar.Id;
+import org.javabits.yar.IdMatcher;
+import org.javabits.yar.IdMatchers;
 import org.javabits.yar.Registration;
 import org.javabits.yar.RegistryHook;
+import org.javabits.yar.RegistrySnapshot;
+import org.javabits.yar.Supplier;
 import org.javabits.yar.TypeListener;
+import org.javabits.yar.Watcher;
 
 import javax.annotation.Nullable;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -52,26 +68,110 @@ public class GuiceWatchableRegistrationContainer implements WatchableRegistratio
     private enum Action {
         ADD() {
             @Override
-            <T> void execute(WatcherRegistration<T> watcherRegistration, SupplierRegistration<T> supplierRegistration) {
-                watcherRegistration.right().add(supplierRegistration.right());
+            <T> void execute(Watcher<T> watcher, Supplier<T> supplier, long sequence) {
+                if (watcher instanceof SequencedWatcher) {
+                    ((SequencedWatcher<T>) watcher).add(supplier, sequence);
+                } else {
+                    watcher.add(supplier);
+                }
+            }
+
+            @Override
+            <T> void executeAll(BatchWatcher<T> watcher, List<Supplier<T>> suppliers, long[] sequences) {
+                if (watcher instanceof SequencedWatcher) {
+                    ((SequencedWatcher<T>) watcher).addAll(suppliers, sequences);
+                } else {
+                    watcher.addAll(suppliers);
+                }
+            }
+
+            @Override
+            <T> void executeOneByOne(Watcher<T> watcher, List<Supplier<T>> suppliers) {
+                suppliers.forEach(watcher::add);
             }
         }, REMOVE() {
             @Override
-            <T> void execute(WatcherRegistration<T> watcherRegistration, SupplierRegistration<T> supplierRegistration) {
-                watcherRegistration.right().remove(supplierRegistration.right());
+            <T> void execute(Watcher<T> watcher, Supplier<T> supplier, long sequence) {
+                if (watcher instanceof SequencedWatcher) {
+                    ((SequencedWatcher<T>) watcher).remove(supplier, sequence);
+                } else {
+                    watcher.remove(supplier);
+                }
+            }
+
+            @Override
+            <T> void executeAll(BatchWatcher<T> watcher, List<Supplier<T>> suppliers, long[] sequences) {
+                if (watcher instanceof SequencedWatcher) {
+                    ((SequencedWatcher<T>) watcher).removeAll(suppliers, sequences);
+                } else {
+                    watcher.removeAll(suppliers);
+                }
+            }
+
+            @Override
+            <T> void executeOneByOne(Watcher<T> watcher, List<Supplier<T>> suppliers) {
+                suppliers.forEach(watcher::remove);
             }
         };
 
-        abstract <T> void execute(WatcherRegistration<T> watcherRegistration, SupplierRegistration<T> supplierRegistration);
+        /**
+         * Notifies the watcher of the supplier event ordered by the given sequence.
+         */
+        abstract <T> void execute(Watcher<T> watcher, Supplier<T> supplier, long sequence);
+
+        /**
+         * Notifies the watcher of all the given suppliers matched by its matcher, in one call if it supports it.
+         *
+         * @param sequences the sequence of the event of each supplier registration, in the same order.
+         */
+        <T> void executeAll(WatcherRegistration<T> watcherRegistration, List<SupplierRegistration<T>> supplierRegistrations, long[] sequences) {
+            List<Supplier<T>> suppliers = new ArrayList<>(supplierRegistrations.size());
+            long[] matchedSequences = new long[supplierRegistrations.size()];
+            for (int i = 0; i < supplierRegistrations.size(); i++) {
+                SupplierRegistration<T> supplierRegistration = supplierRegistrations.get(i);
+                if (watcherRegistration.left().matches(supplierRegistration.id())) {
+                    matchedSequences[suppliers.size()] = sequences[i];
+                    suppliers.add(supplierRegistration.right());
+                }
+            }
+            if (suppliers.isEmpty()) {
+                return;
+            }
+            Watcher<T> watcher = watcherRegistration.right();
+            if (watcher instanceof BatchWatcher) {
+                executeAll((BatchWatcher<T>) watcher, suppliers, Arrays.copyOf(matchedSequences, suppliers.size()));
+            } else {
+                executeOneByOne(watcher, suppliers);
+            }
+        }
+
+        abstract <T> void executeAll(BatchWatcher<T> watcher, List<Supplier<T>> suppliers, long[] sequences);
+
+        abstract <T> void executeOneByOne(Watcher<T> watcher, List<Supplier<T>> suppliers);
     }
 
     private final Container<Type, SupplierRegistration<?>> supplierRegistry;
+    // watchers by raw type, it must be a concurrent container: the lanes add and remove watchers concurrently
     private final Container<Type, WatcherRegistration<?>> watcherRegistry;
     private final ExecutionStrategy executor;
-
+    // listener update tasks buffered by the calling thread between defer and flush
+    private final ThreadLocal<List<Callable<Void>>> deferredListenerUpdates = new ThreadLocal<>();
+    // published after each mutation of the supplier registry and before the watchers are notified
+    private final AtomicReference<RegistrySnapshotImpl> snapshot = new AtomicReference<>(RegistrySnapshotImpl.EMPTY);
+    // exact id index of the supplier registry, kept in the same order than the type buckets
+    private final ConcurrentMap<Id<?>, ImmutableList<SupplierRegistration<?>>> supplierRegistrationsById = new ConcurrentHashMap<>();
+    // watchers bucketed regarding their matcher to dispatch the supplier events only to the watchers that can match
+    private final WatcherRegistrationIndex watcherRegistrationIndex = new WatcherRegistrationIndex();
+    // the generic types holding suppliers by raw type, all the mutations of a raw type are executed by the same lane
+    private final ConcurrentMap<Class<?>, Set<Type>> registeredTypesByRawType = new ConcurrentHashMap<>();
+    // incremented after each mutation of the supplier registry, once the new content and the type version are visible
+    private final AtomicLong version = new AtomicLong();
+    // version of the last mutation of each type holding suppliers, dropped with the type
+    private final ConcurrentMap<Type, Long> versionsByType = new ConcurrentHashMap<>();
+    private final Object versionLock = new Object();
 
     GuiceWatchableRegistrationContainer() {
-        this(CacheContainer.newConcurrentContainer(), CacheContainer.newNonConcurrentContainer(TYPE_ERASURE), newExecutionStrategy(SERIALIZED));
+        this(CacheContainer.newConcurrentContainer(), CacheContainer.newConcurrentContainer(TYPE_ERASURE), newExecutionStrategy(SERIALIZED));
     }
 
     private GuiceWatchableRegistrationContainer(Container<Type, SupplierRegistration<?>> supplierRegistry
@@ -86,6 +186,54 @@ public class GuiceWatchableRegistrationContainer implements WatchableRegistratio
         return supplierRegistry.asMap().keySet();
     }
 
+    @Override
+    public RegistrySnapshot snapshot() {
+        return snapshot.get();
+    }
+
+    // returns the new version, it is the sequence of the supplier events of this mutation
+    private long publishSnapshot(Type type) {
+        List<SupplierRegistration<?>> registrations = supplierRegistry.getAll(type);
+        snapshot.updateAndGet(registrySnapshot -> registrySnapshot.with(type, registrations));
+        return incrementVersion(type, registrations.isEmpty());
+    }
+
+    /**
+     * The version of the type is assigned before the new registry version is published: a reader
+     * that sees the new registry version also sees the new version of the type, and cannot validate
+     * a cached content against the previous one. The lanes mutate the types concurrently therefore
+     * the whole increment is atomic, otherwise the registry version published by a mutation could
+     * precede the type version of a concurrent one.
+     */
+    private long incrementVersion(Type type, boolean removed) {
+        synchronized (versionLock) {
+            long newVersion = version.get() + 1;
+            if (removed) {
+                versionsByType.remove(type);
+            } else {
+                versionsByType.put(type, newVersion);
+            }
+            version.set(newVersion);
+            return newVersion;
+        }
+    }
+
+    @Override
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * Returns the version of the last mutation of the type. A type without supplier does not keep
+     * any version, instead it takes the current registry version: it is greater than any version
+     * the type had while holding suppliers, and it changes on each mutation.
+     */
+    @Override
+    public long version(Type type) {
+        Long typeVersion = versionsByType.get(type);
+        return typeVersion != null ? typeVersion : version.get();
+    }
+
     @Override
     public List<SupplierRegistration<?>> getAll(Type type) {
         return supplierRegistry.getAll(type);
@@ -97,66 +245,254 @@ public class GuiceWatchableRegistrationContainer implements WatchableRegistratio
         return supplierRegistry.getFirst(type);
     }
 
+    /**
+     * Returns the registrations of the given id. An id without annotation is lax: it returns
+     * all the registrations of its type whatever their qualifier. Otherwise the exact id index
+     * is used instead of scanning the registrations of the type.
+     */
     @Override
+    @SuppressWarnings("unchecked")
     public <T> List<SupplierRegistration<T>> getAll(Id<T> id) {
-        return getSupplierRegistrationsFor(id, supplierRegistry);
-    }
-
-    private <T> List<SupplierRegistration<T>> getSupplierRegistrationsFor(Id<T> id, Container<Type, SupplierRegistration<?>> registry) {
-        List<SupplierRegistration<?>> pairs = registry.getAll(id.type());
-        ImmutableList.Builder<SupplierRegistration<T>> suppliersByKey = ImmutableList.builder();
-        for (SupplierRegistration<?> registryEntry : pairs) {
-            addSupplierIfKeyEquals(id, suppliersByKey, registryEntry);
+        if (id.annotationType() == null) {
+            return (List<SupplierRegistration<T>>) (List<?>) ImmutableList.copyOf(supplierRegistry.getAll(id.type()));
         }
-        return suppliersByKey.build();
+        return (List<SupplierRegistration<T>>) (List<?>) getIndexedRegistrations(id);
     }
 
+    @Nullable
+    @Override
     @SuppressWarnings("unchecked")
-    private <T> void addSupplierIfKeyEquals(Id<T> id, ImmutableList.Builder<SupplierRegistration<T>> suppliersByKey, SupplierRegistration<?> registryEntry) {
-        if (isKeyCompatibleToThisRegistration(id, registryEntry))
-            suppliersByKey.add((SupplierRegistration<T>) registryEntry);
+    public <T> SupplierRegistration<T> getFirst(Id<T> id) {
+        List<SupplierRegistration<?>> registrations = getIndexedRegistrations(id);
+        return registrations.isEmpty() ? null : (SupplierRegistration<T>) registrations.get(0);
     }
 
-    private <T> boolean isKeyCompatibleToThisRegistration(Id<T> id, Registration<?> registryEntry) {
-        return id.annotationType() == null && id.type().equals(registryEntry.id().type())
-                || id.equals(registryEntry.id());
+    @Override
+    public <A> void forEach(Type type, BiConsumer<? super SupplierRegistration<?>, ? super A> action, A argument) {
+        supplierRegistry.forEach(type, action, argument);
     }
 
-    @Nullable
     @Override
     @SuppressWarnings("unchecked")
-    public <T> SupplierRegistration<T> getFirst(Id<T> id) {
-        List<SupplierRegistration<?>> all = supplierRegistry.getAll(id.type());
-        for (SupplierRegistration<?> pair : all) {
-            if (id.equals(pair.left())) {
-                return (SupplierRegistration<T>) pair;
-            }
+    public <T, A> void forEach(Id<T> id, BiConsumer<? super SupplierRegistration<T>, ? super A> action, A argument) {
+        BiConsumer<? super SupplierRegistration<?>, ? super A> registrationAction = (BiConsumer<? super SupplierRegistration<?>, ? super A>) (BiConsumer<?, ?>) action;
+        if (id.annotationType() == null) {
+            supplierRegistry.forEach(id.type(), registrationAction, argument);
+            return;
         }
-        return null;
+        List<SupplierRegistration<?>> registrations = getIndexedRegistrations(id);
+        for (int i = 0; i < registrations.size(); i++) {
+            registrationAction.accept(registrations.get(i), argument);
+        }
+    }
+
+    @Override
+    public int size(Type type) {
+        return supplierRegistry.size(type);
+    }
+
+    @Override
+    public int size(Id<?> id) {
+        if (id.annotationType() == null) {
+            return supplierRegistry.size(id.type());
+        }
+        return getIndexedRegistrations(id).size();
+    }
+
+    private List<SupplierRegistration<?>> getIndexedRegistrations(Id<?> id) {
+        ImmutableList<SupplierRegistration<?>> registrations = supplierRegistrationsById.get(id);
+        return registrations == null ? ImmutableList.of() : registrations;
+    }
+
+    private void registerType(Type type) {
+        registeredTypesByRawType.computeIfAbsent(getRawType(type), rawType -> ConcurrentHashMap.newKeySet()).add(type);
+    }
+
+    private void unregisterType(Type type) {
+        registeredTypesByRawType.computeIfPresent(getRawType(type), (rawType, types) -> {
+            types.remove(type);
+            return types.isEmpty() ? null : types;
+        });
+    }
+
+    private void index(SupplierRegistration<?> registration) {
+        supplierRegistrationsById.merge(registration.id(), ImmutableList.of(registration)
+                , (registrations, added) -> ImmutableList.<SupplierRegistration<?>>builder().addAll(registrations).addAll(added).build());
+    }
+
+    private void unindex(SupplierRegistration<?> registration) {
+        supplierRegistrationsById.computeIfPresent(registration.id(), (id, registrations) -> {
+            int index = registrations.indexOf(registration);
+            if (index < 0) {
+                return registrations;
+            }
+            if (registrations.size() == 1) {
+                return null;
+            }
+            ImmutableList.Builder<SupplierRegistration<?>> remaining = ImmutableList.builder();
+            remaining.addAll(registrations.subList(0, index));
+            remaining.addAll(registrations.subList(index + 1, registrations.size()));
+            return remaining.build();
+        });
     }
 
     @Override
     public boolean put(SupplierRegistration<?> registration, long timeout, TimeUnit unit) throws InterruptedException {
         boolean added = putToRegistry(supplierRegistry, registration);
-        updateWatcher(registration, Action.ADD, timeout, unit);
+        if (added) {
+            index(registration);
+            registerType(getRegistryKey(registration));
+        }
+        long sequence = publishSnapshot(getRegistryKey(registration));
+        updateWatcher(registration, Action.ADD, sequence, timeout, unit);
         return added;
     }
 
-    private <T> void updateWatcher(final SupplierRegistration<T> supplierRegistration, final Action action, long timeout, TimeUnit unit) throws InterruptedException {
+    @Override
+    public boolean putAll(Collection<? extends SupplierRegistration<?>> registrations, long timeout, TimeUnit unit) throws InterruptedException {
+        boolean added = false;
+        ImmutableList.Builder<Callable<Void>> updateActions = ImmutableList.builder();
+        for (Map.Entry<Type, List<SupplierRegistration<?>>> registrationsByType : GuiceWatchableRegistrationContainer.<SupplierRegistration<?>>groupByType(registrations).entrySet()) {
+            Type type = registrationsByType.getKey();
+            if (supplierRegistry.putAll(type, registrationsByType.getValue())) {
+                added = true;
+                registrationsByType.getValue().forEach(this::index);
+                registerType(type);
+            }
+            long sequence = publishSnapshot(type);
+            for (SupplierRegistration<?> supplierRegistration : registrationsByType.getValue()) {
+                updateActions.addAll(getUpdateActionsToCandidateWatchers(supplierRegistration, Action.ADD, sequence
+                        , watcherRegistrationIndex.candidates(supplierRegistration.id())));
+            }
+        }
+        LOG.log(Level.FINE, () -> "Execute " + Action.ADD + " on watchers for a batch of " + registrations.size() + " suppliers");
+        executeListenerUpdates(coalesceWatcherUpdates(updateActions.build()), timeout, unit);
+        return added;
+    }
+
+    private void executeListenerUpdates(List<Callable<Void>> tasks, long timeout, TimeUnit unit) throws InterruptedException {
+        List<Callable<Void>> deferredTasks = deferredListenerUpdates.get();
+        if (deferredTasks == null) {
+            execute(tasks, timeout, unit);
+        } else {
+            // the tasks may be lazy views on the live watcher lists so they are copied now
+            deferredTasks.addAll(tasks);
+        }
+    }
+
+    @Override
+    public void deferListenerUpdates() {
+        if (deferredListenerUpdates.get() == null) {
+            deferredListenerUpdates.set(new ArrayList<>());
+        }
+    }
+
+    @Override
+    public void flushListenerUpdates(long timeout, TimeUnit unit) throws InterruptedException {
+        List<Callable<Void>> deferredTasks = deferredListenerUpdates.get();
+        if (deferredTasks == null) {
+            return;
+        }
+        deferredListenerUpdates.remove();
+        if (!deferredTasks.isEmpty()) {
+            LOG.log(Level.FINE, () -> "Execute a batch of " + deferredTasks.size() + " deferred listener update tasks");
+            execute(coalesceWatcherUpdates(deferredTasks), timeout, unit);
+        }
+    }
+
+    /**
+     * The propagations of the tasks that cannot be dispatched are failed, they would never complete.
+     * The supplier updates are dispatched once the supplier registry is mutated: when the listener
+     * queue rejects them the mutation is kept and the failure is only reported through the
+     * propagation of the registrations, the caller still receives its registration and can remove it.
+     * The failure is thrown if another kind of task is part of the rejected tasks.
+     */
+    private void execute(List<Callable<Void>> tasks, long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            executor.execute(tasks, timeout, unit);
+        } catch (RuntimeException | InterruptedException e) {
+            boolean reported = true;
+            for (Callable<Void> task : tasks) {
+                if (task instanceof UpdateWatcherOnSupplierEvent) {
+                    ((UpdateWatcherOnSupplierEvent<?>) task).propagation.failed(e);
+                } else if (task instanceof UpdateWatcherOnSupplierEvents) {
+                    ((UpdateWatcherOnSupplierEvents<?>) task).updates.forEach(update -> update.propagation.failed(e));
+                } else {
+                    reported = false;
+                }
+            }
+            if (e instanceof InterruptedException || !reported) {
+                throw e;
+            }
+            LOG.log(Level.WARNING, "Cannot dispatch " + tasks.size() + " supplier update tasks, the registrations report the failure through their propagation", e);
+        }
+    }
+
+    /**
+     * Merges the consecutive updates of a same action notified to a same watcher into one task.
+     * The tasks of a watcher keep their order, only the order between the tasks of different
+     * watchers may change.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Callable<Void>> coalesceWatcherUpdates(List<Callable<Void>> tasks) {
+        if (tasks.size() < 2) {
+            return tasks;
+        }
+        Map<Object, List<Callable<Void>>> tasksByWatcher = new LinkedHashMap<>();
+        for (Callable<Void> task : tasks) {
+            Object key = task instanceof WatcherTask ? ((WatcherTask) task).key() : task;
+            List<Callable<Void>> watcherTasks = tasksByWatcher.computeIfAbsent(key, k -> new ArrayList<>(1));
+            Callable<Void> previous = watcherTasks.isEmpty() ? null : watcherTasks.get(watcherTasks.size() - 1);
+            if (task instanceof UpdateWatcherOnSupplierEvent) {
+                UpdateWatcherOnSupplierEvent<Object> update = (UpdateWatcherOnSupplierEvent<Object>) task;
+                if (previous instanceof UpdateWatcherOnSupplierEvent && ((UpdateWatcherOnSupplierEvent<?>) previous).action == update.action) {
+                    watcherTasks.set(watcherTasks.size() - 1, new UpdateWatcherOnSupplierEvents<>((UpdateWatcherOnSupplierEvent<Object>) previous, update));
+                    continue;
+                }
+                if (previous instanceof UpdateWatcherOnSupplierEvents && ((UpdateWatcherOnSupplierEvents<?>) previous).action == update.action) {
+                    ((UpdateWatcherOnSupplierEvents<Object>) previous).updates.add(update);
+                    continue;
+                }
+            }
+            watcherTasks.add(task);
+        }
+        if (tasksByWatcher.size() == tasks.size()) {
+            return tasks;
+        }
+        List<Callable<Void>> coalescedTasks = new ArrayList<>(tasks.size());
+        tasksByWatcher.values().forEach(coalescedTasks::addAll);
+        return coalescedTasks;
+    }
+
+    private static <R extends Registration<?>> Map<Type, List<R>> groupByType(Collection<? extends R> registrations) {
+        Map<Type, List<R>> registrationsByType = new LinkedHashMap<>();
+        for (R registration : registrations) {
+            registrationsByType.computeIfAbsent(registration.id().type(), type -> new ArrayList<>()).add(registration);
+        }
+        return registrationsByType;
+    }
+
+    private <T> void updateWatcher(final SupplierRegistration<T> supplierRegistration, final Action action, long sequence, long timeout, TimeUnit unit) throws InterruptedException {
         Id<T> id = supplierRegistration.id();
         final List<WatcherRegistration<T>> watcherRegistrations = getWatcherRegistrations(id);
         LOG.log(Level.FINE, ()-> "Execute " + action + " on watchers: " + watcherRegistrations + ", for given supplier " + supplierRegistration );
-        executor.execute(getUpdateActionsToExistingWatcherOnSupplierEvent(supplierRegistration, action, watcherRegistrations),timeout, unit);
+        executeListenerUpdates(getUpdateActionsToExistingWatcherOnSupplierEvent(supplierRegistration, action, sequence, watcherRegistrations), timeout, unit);
     }
 
-    private <T> List<Callable<Void>> getUpdateActionsToExistingWatcherOnSupplierEvent(final SupplierRegistration<T> supplierRegistration, final Action action, List<WatcherRegistration<T>> watcherRegistrations) {
-        return Lists.transform(watcherRegistrations, watcherRegistration -> new UpdateWatcherOnSupplierEvent<>(watcherRegistration, supplierRegistration, action));
+    private <T> List<Callable<Void>> getUpdateActionsToExistingWatcherOnSupplierEvent(final SupplierRegistration<T> supplierRegistration, final Action action, long sequence, List<WatcherRegistration<T>> watcherRegistrations) {
+        Propagation propagation = supplierRegistration.propagate(watcherRegistrations.size());
+        return Lists.transform(watcherRegistrations, watcherRegistration -> new UpdateWatcherOnSupplierEvent<>(watcherRegistration, supplierRegistration, action, sequence, propagation));
     }
 
-    //returns all the watchers associated to the type of the given id.
+    @SuppressWarnings("unchecked")
+    private <T> List<Callable<Void>> getUpdateActionsToCandidateWatchers(final SupplierRegistration<T> supplierRegistration, final Action action, long sequence, List<WatcherRegistration<?>> watcherRegistrations) {
+        return getUpdateActionsToExistingWatcherOnSupplierEvent(supplierRegistration, action, sequence, (List<WatcherRegistration<T>>) (List) watcherRegistrations);
+    }
+
+    //returns the watchers that can match the given id.
     @SuppressWarnings("unchecked")
     private <T> List<WatcherRegistration<T>> getWatcherRegistrations(Id<T> id) {
-        return (List<WatcherRegistration<T>>)((Container)watcherRegistry).getAll(id.type());
+        return (List<WatcherRegistration<T>>) (List<?>) watcherRegistrationIndex.candidates(id);
     }
 
     private <T extends Registration<?>> boolean putToRegistry(Container<Type, T> container, T registration) {
@@ -166,7 +502,37 @@ public class GuiceWatchableRegistrationContainer implements WatchableRegistratio
     @Override
     public boolean remove(SupplierRegistration<?> registration, long timeout, TimeUnit unit) throws InterruptedException {
         boolean removed = removeFromRegistry(supplierRegistry, registration);
-        updateWatcher(registration, Action.REMOVE, timeout, unit);
+        if (removed) {
+            unindex(registration);
+            Type type = getRegistryKey(registration);
+            if (supplierRegistry.size(type) == 0) {
+                unregisterType(type);
+            }
+        }
+        long sequence = publishSnapshot(getRegistryKey(registration));
+        updateWatcher(registration, Action.REMOVE, sequence, timeout, unit);
+        return removed;
+    }
+
+    @Override
+    public boolean removeAll(Collection<? extends SupplierRegistration<?>> registrations, long timeout, TimeUnit unit) throws InterruptedException {
+        boolean removed = false;
+        ImmutableList.Builder<Callable<Void>> updateActions = ImmutableList.builder();
+        for (SupplierRegistration<?> registration : registrations) {
+            if (removeFromRegistry(supplierRegistry, registration)) {
+                removed = true;
+                unindex(registration);
+                Type type = getRegistryKey(registration);
+                if (supplierRegistry.size(type) == 0) {
+                    unregisterType(type);
+                }
+            }
+            long sequence = publishSnapshot(getRegistryKey(registration));
+            updateActions.addAll(getUpdateActionsToCandidateWatchers(registration, Action.REMOVE, sequence
+                    , watcherRegistrationIndex.candidates(registration.id())));
+        }
+        LOG.log(Level.FINE, () -> "Execute " + Action.REMOVE + " on watchers for a batch of " + registrations.size() + " suppliers");
+        executeListenerUpdates(coalesceWatcherUpdates(updateActions.build()), timeout, unit);
         return removed;
     }
 
@@ -176,20 +542,56 @@ public class GuiceWatchableRegistrationContainer implements WatchableRegistratio
 
     @Override
     public <T> boolean add(final WatcherRegistration<T> watcherRegistration, long timeout, TimeUnit unit) throws InterruptedException {
-        executor.execute(getAddSupplierActionsToNewWatcher(watcherRegistration), timeout, unit);
-        return putToRegistry(watcherRegistry, watcherRegistration);
+        executeListenerUpdates(getAddSupplierActionsToNewWatcher(watcherRegistration), timeout, unit);
+        boolean added = putToRegistry(watcherRegistry, watcherRegistration);
+        if (added) {
+            watcherRegistrationIndex.add(watcherRegistration);
+        }
+        return added;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends WatcherRegistration<?>> watcherRegistrations, long timeout, TimeUnit unit) throws InterruptedException {
+        boolean added = false;
+        ImmutableList.Builder<Callable<Void>> addActions = ImmutableList.builder();
+        for (Map.Entry<Type, List<WatcherRegistration<?>>> registrationsByType : GuiceWatchableRegistrationContainer.<WatcherRegistration<?>>groupByType(watcherRegistrations).entrySet()) {
+            for (WatcherRegistration<?> watcherRegistration : registrationsByType.getValue()) {
+                addActions.addAll(getAddSupplierActionsToNewWatcher(watcherRegistration));
+            }
+            if (watcherRegistry.putAll(registrationsByType.getKey(), registrationsByType.getValue())) {
+                added = true;
+                registrationsByType.getValue().forEach(watcherRegistrationIndex::add);
+            }
+        }
+        executeListenerUpdates(addActions.build(), timeout, unit);
+        return added;
     }
 
+    // the existing suppliers are replayed to the new watcher by a single task
     @SuppressWarnings("unchecked")
     private <T> List<Callable<Void>> getAddSupplierActionsToNewWatcher(final WatcherRegistration<T> watcherRegistration) {
-        final Class<?> watcherRawType = getRawType(watcherRegistration.id().type());
-        Set<Type> watcherCompatiblesTypes = Sets.filter(types(), type -> watcherRawType.equals(getRawType(type)));
-        ImmutableList.Builder<SupplierRegistration<T>> resultBuilder = ImmutableList.builder();
+        List<SupplierRegistration<T>> supplierRegistrations = (List<SupplierRegistration<T>>) (List<?>) getSupplierRegistrationsMatchableBy(watcherRegistration.left());
+        if (supplierRegistrations.isEmpty()) {
+            return ImmutableList.of();
+        }
+        // the replay reflects the current content: it is as recent as the last mutation
+        return ImmutableList.of(new AddAllToNewWatcher<>(watcherRegistration, ImmutableList.copyOf(supplierRegistrations), version()));
+    }
+
+    // returns the suppliers that the given matcher can match, using the same buckets than the watcher index
+    private List<SupplierRegistration<?>> getSupplierRegistrationsMatchableBy(IdMatcher<?> matcher) {
+        if (matcher instanceof IdMatchers.IdEqualityMatcher) {
+            return getIndexedRegistrations(matcher.id());
+        }
+        if (matcher instanceof IdMatchers.TypeMatcher) {
+            return ImmutableList.copyOf(getAll(matcher.id().type()));
+        }
+        Set<Type> watcherCompatiblesTypes = registeredTypesByRawType.getOrDefault(getRawType(matcher.id().type()), Collections.emptySet());
+        ImmutableList.Builder<SupplierRegistration<?>> resultBuilder = ImmutableList.builder();
         for (Type watcherCompatiblesType : watcherCompatiblesTypes) {
-            resultBuilder.addAll((List)getAll(watcherCompatiblesType));
+            resultBuilder.addAll(getAll(watcherCompatiblesType));
         }
-        List < SupplierRegistration < T >> supplierRegistrations = resultBuilder.build();
-        return Lists.transform(supplierRegistrations, supplierRegistration -> new AddToNewWatcher<>(watcherRegistration, supplierRegistration));
+        return resultBuilder.build();
     }
 
     @Override
@@ -198,17 +600,36 @@ public class GuiceWatchableRegistrationContainer implements WatchableRegistratio
     }
 
     private static KeyListener<Type> adapt(final TypeListener typeListener) {
-        return new KeyListener<Type>() {
-            @Override
-            public void keyAdded(KeyEvent<Type> event) {
-                typeListener.typeChanged(newAddTypeEvent(event.key()));
-            }
+        return new TypeListenerAdapter(typeListener);
+    }
 
-            @Override
-            public void keyRemoved(KeyEvent<Type> event) {
-                typeListener.typeChanged(newRemoveTypeEvent(event.key()));
-            }
-        };
+    // equal for a same type listener to be removable from the container
+    private static final class TypeListenerAdapter implements KeyListener<Type> {
+        private final TypeListener typeListener;
+
+        private TypeListenerAdapter(TypeListener typeListener) {
+            this.typeListener = typeListener;
+        }
+
+        @Override
+        public void keyAdded(KeyEvent<Type> event) {
+            typeListener.typeChanged(newAddTypeEvent(event.key()));
+        }
+
+        @Override
+        public void keyRemoved(KeyEvent<Type> event) {
+            typeListener.typeChanged(newRemoveTypeEvent(event.key()));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || o instanceof TypeListenerAdapter && typeListener.equals(((TypeListenerAdapter) o).typeListener);
+        }
+
+        @Override
+        public int hashCode() {
+            return typeListener.hashCode();
+        }
     }
 
     @Override
@@ -221,59 +642,194 @@ public class GuiceWatchableRegistrationContainer implements WatchableRegistratio
         return executor.hasPendingTasks();
     }
 
+    @Override
+    public ExecutionStrategy executionStrategy() {
+        return executor;
+    }
+
+    @Override
+    public Map<Type, Integer> supplierCounts() {
+        return counts(supplierRegistry);
+    }
+
+    @Override
+    public Map<Type, Integer> watcherCounts() {
+        return counts(watcherRegistry);
+    }
+
+    private static Map<Type, Integer> counts(Container<Type, ?> container) {
+        Map<Type, Integer> counts = new LinkedHashMap<>();
+        container.asMap().forEach((type, registrations) -> {
+            if (!registrations.isEmpty()) {
+                counts.put(type, registrations.size());
+            }
+        });
+        return counts;
+    }
+
     @Override
     public void addEndOfListenerUpdateTasksListener(RegistryHook.EndOfListenerUpdateTasksListener listener) {
         executor.addEndOfListenerUpdateTasksListener(listener);
     }
 
-    static class ActionAdapter<T> implements Callable<Void> {
-        private final WatcherRegistration<T> watcherRegistration;
-        private final SupplierRegistration<T> supplierRegistration;
-        private final Action action;
+    static class ActionAdapter<T> implements WatcherTask {
+        final WatcherRegistration<T> watcherRegistration;
+        final SupplierRegistration<T> supplierRegistration;
+        final Action action;
+        final long sequence;
 
-        ActionAdapter(WatcherRegistration<T> watcherRegistration, SupplierRegistration<T> supplierRegistration, Action action) {
+        ActionAdapter(WatcherRegistration<T> watcherRegistration, SupplierRegistration<T> supplierRegistration, Action action, long sequence) {
             this.watcherRegistration = watcherRegistration;
             this.supplierRegistration = supplierRegistration;
             this.action = action;
+            this.sequence = sequence;
         }
 
         @Override
         public Void call() throws Exception {
-            fireAddToWatcherIfMatches(watcherRegistration, supplierRegistration, action);
+            fireAddToWatcherIfMatches(watcherRegistration, supplierRegistration, action, sequence);
             return null;
         }
 
+        @Override
+        public Object key() {
+            return watcherRegistration;
+        }
+
+        @Override
+        public IdMatcher<?> matcher() {
+            return watcherRegistration.left();
+        }
+
         @Override
         public String toString() {
             return this.getClass().getSimpleName() + "{" +
                     "action=" + action +
                     ", watcherRegistration=" + watcherRegistration +
                     ", supplierRegistration=" + supplierRegistration +
+                    ", sequence=" + sequence +
                     '}';
         }
 
-        private static <T> void fireAddToWatcherIfMatches(WatcherRegistration<T> watcherRegistration, SupplierRegistration<T> supplierRegistration, Action action) {
+        private static <T> void fireAddToWatcherIfMatches(WatcherRegistration<T> watcherRegistration, SupplierRegistration<T> supplierRegistration, Action action, long sequence) {
             if (watcherRegistration.left().matches(supplierRegistration.id())) {
-                action.execute(watcherRegistration, supplierRegistration);
+                action.execute(watcherRegistration.right(), supplierRegistration.right(), sequence);
             }
         }
     }
 
-    static class AddToNewWatcher<T> extends ActionAdapter<T> {
-        AddToNewWatcher(WatcherRegistration<T> watcherRegistration, SupplierRegistration<T> supplierRegistration) {
-            super(watcherRegistration, supplierRegistration, Action.ADD);
+    /**
+     * Replays the existing suppliers to a new watcher.
+     */
+    static class AddAllToNewWatcher<T> implements WatcherTask {
+        private final WatcherRegistration<T> watcherRegistration;
+        private final List<SupplierRegistration<T>> supplierRegistrations;
+        private final long sequence;
+
+        AddAllToNewWatcher(WatcherRegistration<T> watcherRegistration, List<SupplierRegistration<T>> supplierRegistrations, long sequence) {
+            this.watcherRegistration = watcherRegistration;
+            this.supplierRegistrations = supplierRegistrations;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            long[] sequences = new long[supplierRegistrations.size()];
+            Arrays.fill(sequences, sequence);
+            Action.ADD.executeAll(watcherRegistration, supplierRegistrations, sequences);
+            return null;
+        }
+
+        @Override
+        public Object key() {
+            return watcherRegistration;
+        }
+
+        @Override
+        public IdMatcher<?> matcher() {
+            return watcherRegistration.left();
+        }
+
+        @Override
+        public String toString() {
+            return "AddAllToNewWatcher{" +
+                    "watcherRegistration=" + watcherRegistration +
+                    ", supplierRegistrations=" + supplierRegistrations.size() +
+                    '}';
         }
     }
 
     static class UpdateWatcherOnSupplierEvent<T> extends ActionAdapter<T> {
-        UpdateWatcherOnSupplierEvent(WatcherRegistration<T> watcherRegistration, SupplierRegistration<T> supplierRegistration, Action action) {
-            super(watcherRegistration, supplierRegistration, action);
+        private final Propagation propagation;
+
+        UpdateWatcherOnSupplierEvent(WatcherRegistration<T> watcherRegistration, SupplierRegistration<T> supplierRegistration, Action action, long sequence, Propagation propagation) {
+            super(watcherRegistration, supplierRegistration, action, sequence);
+            this.propagation = propagation;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            try {
+                return super.call();
+            } finally {
+                propagation.taskCompleted();
+            }
+        }
+    }
+
+    /**
+     * Consecutive updates of a same action notified to a watcher as a single call.
+     */
+    static class UpdateWatcherOnSupplierEvents<T> implements WatcherTask {
+        private final WatcherRegistration<T> watcherRegistration;
+        private final Action action;
+        private final List<UpdateWatcherOnSupplierEvent<T>> updates = new ArrayList<>();
+
+        UpdateWatcherOnSupplierEvents(UpdateWatcherOnSupplierEvent<T> first, UpdateWatcherOnSupplierEvent<T> second) {
+            this.watcherRegistration = first.watcherRegistration;
+            this.action = first.action;
+            updates.add(first);
+            updates.add(second);
+        }
+
+        @Override
+        public Void call() throws Exception {
+            try {
+                long[] sequences = new long[updates.size()];
+                for (int i = 0; i < sequences.length; i++) {
+                    sequences[i] = updates.get(i).sequence;
+                }
+                action.executeAll(watcherRegistration, Lists.transform(updates, update -> update.supplierRegistration), sequences);
+            } finally {
+                updates.forEach(update -> update.propagation.taskCompleted());
+            }
+            return null;
+        }
+
+        @Override
+        public Object key() {
+            return watcherRegistration;
+        }
+
+        @Override
+        public IdMatcher<?> matcher() {
+            return watcherRegistration.left();
+        }
+
+        @Override
+        public String toString() {
+            return "UpdateWatcherOnSupplierEvents{" +
+                    "action=" + action +
+                    ", watcherRegistration=" + watcherRegistration +
+                    ", updates=" + updates.size() +
+                    '}';
         }
     }
 
 
     @Override
     public boolean remove(WatcherRegistration<?> watcherRegistration) {
+        watcherRegistrationIndex.remove(watcherRegistration);
         return watcherRegistry.remove(getRegistryKey(watcherRegistration), watcherRegistration);
     }
 
@@ -284,7 +840,11 @@ public class GuiceWatchableRegistrationContainer implements WatchableRegistratio
             remove(supplierRegistration,timeout, unit);
         }
         watcherRegistry.invalidate(type);
+        watcherRegistrationIndex.invalidate(getRawType(type));
         supplierRegistry.invalidate(type);
+        unregisterType(type);
+        snapshot.updateAndGet(registrySnapshot -> registrySnapshot.without(type));
+        incrementVersion(type, true);
     }
 
     private Type getRegistryKey(Registration<?> watcherRegistration) {
@@ -292,7 +852,11 @@ public class GuiceWatchableRegistrationContainer implements WatchableRegistratio
     }
 
     static GuiceWatchableRegistrationContainer newMultimapGuiceWatchableRegistrationContainer() {
-        return new GuiceWatchableRegistrationContainer(ListMultimapContainer.newSynchronizedContainer(), ListMultimapContainer.newLockFreeContainer(), newExecutionStrategy(SERIALIZED));
+        return newMultimapGuiceWatchableRegistrationContainer(newExecutionStrategy(SERIALIZED));
+    }
+
+    static GuiceWatchableRegistrationContainer newMultimapGuiceWatchableRegistrationContainer(ExecutionStrategy executionStrategy) {
+        return new GuiceWatchableRegistrationContainer(ListMultimapContainer.newSynchronizedContainer(), ListMultimapContainer.newSynchronizedContainer(), executionStrategy);
     }
 
     static GuiceWatchableRegistrationContainer newLoadingCacheGuiceWatchableRegistrationContainer() {
@@ -300,6 +864,6 @@ public class GuiceWatchableRegistrationContainer implements WatchableRegistratio
     }
 
     static GuiceWatchableRegistrationContainer newLoadingCacheGuiceWatchableRegistrationContainer(ExecutionStrategy executionStrategy) {
-        return new GuiceWatchableRegistrationContainer(CacheContainer.newConcurrentContainer(), CacheContainer.newNonConcurrentContainer(TYPE_ERASURE), executionStrategy);
+        return new GuiceWatchableRegistrationContainer(CacheContainer.newConcurrentContainer(), CacheContainer.newConcurrentContainer(TYPE_ERASURE), executionStrategy);
     }
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar.guice;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram recorded with striped counters, so concurrent recorders do not contend.
+ * The latencies are counted in power of two buckets of microseconds: the bucket {@code i}
+ * counts the latencies between {@code 2^(i-1)} and {@code 2^i - 1} microseconds. Therefore
+ * the percentiles are upper bounds with a precision of a factor two.
+ *
+ * @author Romain Gilles
+ */
+class LatencyHistogram {
+    private static final int BUCKETS = 40;
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    void record(long latencyNanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, latencyNanos));
+        buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros))].increment();
+        count.increment();
+        totalNanos.add(latencyNanos);
+        maxNanos.accumulate(latencyNanos);
+    }
+
+    LatencySnapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        long maxMicros = TimeUnit.NANOSECONDS.toMicros(maxNanos.get());
+        long meanMicros = total == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos.sum()) / total;
+        return new LatencySnapshot(total, meanMicros, maxMicros, percentile(counts, total, 0.5, maxMicros)
+                , percentile(counts, total, 0.9, maxMicros), percentile(counts, total, 0.99, maxMicros));
+    }
+
+    private static long percentile(long[] counts, long total, double percentile, long maxMicros) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile);
+        long cumulated = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulated += counts[i];
+            if (cumulated >= rank) {
+                return Math.min(maxMicros, (1L << i) - 1);
+            }
+        }
+        return maxMicros;
+    }
+}
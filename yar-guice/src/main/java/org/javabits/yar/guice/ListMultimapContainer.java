@@ -24,6 +24,7 @@ import javax.annotation.Nullable;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 import static com.google.common.collect.Multimaps.synchronizedListMultimap;
 
@@ -61,11 +62,34 @@ class ListMultimapContainer<K, V> implements Container<K, V> {
         return null;
     }
 
+    @Override
+    public <A> void forEach(K key, BiConsumer<? super V, ? super A> action, A argument) {
+        List<V> pairs = delegate.get(key);
+        synchronized (delegate) {
+            for (int i = 0; i < pairs.size(); i++) {
+                action.accept(pairs.get(i), argument);
+            }
+        }
+    }
+
+    @Override
+    public int size(K key) {
+        List<V> pairs = delegate.get(key);
+        synchronized (delegate) {
+            return pairs.size();
+        }
+    }
+
     @Override
     public boolean put(K key, V value) {
         return delegate.put(key, value);
     }
 
+    @Override
+    public boolean putAll(K key, Collection<? extends V> values) {
+        return delegate.putAll(key, values);
+    }
+
     @Override
     public boolean remove(K key, V value) {
         return delegate.remove(key, value);
@@ -82,10 +106,6 @@ class ListMultimapContainer<K, V> implements Container<K, V> {
         return new ListMultimapContainer<>(synchronizedListMultimap(ArrayListMultimap.<K, V>create()));
     }
 
-    static <K, V> ListMultimapContainer<K, V> newLockFreeContainer() {
-        return new ListMultimapContainer<>(ArrayListMultimap.<K, V>create());
-    }
-
     @Override
     public void invalidate(K key) {
         delegate.removeAll(key);
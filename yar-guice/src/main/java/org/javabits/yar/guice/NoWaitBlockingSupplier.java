@@ -9,6 +9,8 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.javabits.yar.Registry.DEFAULT_TIMEOUT;
 import static org.javabits.yar.Registry.DEFAULT_TIME_UNIT;
@@ -21,6 +23,10 @@ public class NoWaitBlockingSupplier<T> implements BlockingSupplier<T>, SupplierL
     private final Id<T> id;
     private final AtomicReference<Supplier<T>> supplierReference;
     private final AtomicReference<CompletableFuture<Supplier<T>>> supplierFutureRef;
+    // the supplier changes can run the dependent stages of getAsync(): a lock does not pin the virtual threads
+    private final Lock lock = new ReentrantLock();
+    // guarded by lock
+    private final EventSequences eventSequences = new EventSequences();
 
     public NoWaitBlockingSupplier(Id<T> id, final Supplier<T> supplier) {
         this.id = id;
@@ -77,27 +83,35 @@ public class NoWaitBlockingSupplier<T> implements BlockingSupplier<T>, SupplierL
     }
 
     /**
-     * there no thread safety issue because the supplierFutureRef is only used for the
-     * asynchronous approach. The risk is small enough to avoid to introduce more complexity.
+     * The events are applied one at a time, the stale ones delivered out of order by a parallel
+     * dispatch are discarded.
      */
     @Override
     public void supplierChanged(SupplierEvent supplierEvent) {
-        SupplierEvent.Type type = supplierEvent.type();
-        @SuppressWarnings("unchecked")
-        Supplier<T> supplier = (Supplier<T>) supplierEvent.supplier();
-        switch (type) {
-            case ADD:
-                if (supplierReference.compareAndSet(null, supplier)) {
-                    supplierFutureRef.get().complete(supplier);
-                }
-                break;
-            case REMOVE:
-                if (supplierReference.compareAndSet(supplier, null)) {
-                    supplierFutureRef.set(new CompletableFuture<>());
-                }
-                break;
-            default:
-                throw new IllegalStateException("Unknown supplier event: " + supplierEvent);
+        lock.lock();
+        try {
+            SupplierEvent.Type type = supplierEvent.type();
+            @SuppressWarnings("unchecked")
+            Supplier<T> supplier = (Supplier<T>) supplierEvent.supplier();
+            if (!eventSequences.apply(supplier, supplierEvent.sequence())) {
+                return;
+            }
+            switch (type) {
+                case ADD:
+                    if (supplierReference.compareAndSet(null, supplier)) {
+                        supplierFutureRef.get().complete(supplier);
+                    }
+                    break;
+                case REMOVE:
+                    if (supplierReference.compareAndSet(supplier, null)) {
+                        supplierFutureRef.set(new CompletableFuture<>());
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown supplier event: " + supplierEvent);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
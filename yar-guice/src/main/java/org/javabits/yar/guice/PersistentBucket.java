@@ -0,0 +1,420 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar.guice;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import static java.util.Objects.checkIndex;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Persistent (immutable) insertion ordered set of values, exposed as an unmodifiable list.
+ * <p>The values are stored in the slots of a 32-way trie indexed by their insertion position,
+ * and a {@link PersistentHashMap} gives the position of each value. Therefore an addition or a
+ * removal copies only the path from the root to the slot, and it shares all the untouched
+ * nodes with the previous bucket: O(log<sub>32</sub> n) instead of the O(n) copy of a copy on
+ * write list. A removal leaves an empty slot behind; the bucket is compacted once the empty
+ * slots outnumber the values, which keeps the removals amortized O(log n).</p>
+ * <p>A bucket of at most 32 values is a single leaf without index nor empty slot: its updates
+ * simply copy it, which is cheaper than maintaining the index.</p>
+ * <p>Each node keeps the number of values it holds, so the positional access and the
+ * iterators skip the emptied sub-tries. This bucket does not support {@code null} values,
+ * and a value already present is not added twice.</p>
+ *
+ * @param <V> the type of values
+ * @author Romain Gilles
+ */
+@Immutable
+final class PersistentBucket<V> extends AbstractList<V> {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final PersistentBucket<?> EMPTY = new PersistentBucket<>(null, 0, 0, null);
+
+    @Nullable
+    private final Node root;
+    // level of the root, 0 when the root is a leaf
+    private final int shift;
+    // number of used slots: the values and the removed ones
+    private final int count;
+    // position of each value, null while the bucket is a single leaf
+    @Nullable
+    private final PersistentHashMap<V, Integer> positions;
+
+    private PersistentBucket(@Nullable Node root, int shift, int count, @Nullable PersistentHashMap<V, Integer> positions) {
+        this.root = root;
+        this.shift = shift;
+        this.count = count;
+        this.positions = positions;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> PersistentBucket<V> empty() {
+        return (PersistentBucket<V>) EMPTY;
+    }
+
+    /**
+     * Returns a bucket where the given value is appended, or this bucket if the value is
+     * already present.
+     */
+    PersistentBucket<V> with(V value) {
+        requireNonNull(value, "value");
+        if (positions == null) {
+            if (root == null) {
+                return new PersistentBucket<>(new Node(new Object[]{value}, 1), 0, 1, null);
+            }
+            Object[] slots = root.slots;
+            if (indexOf(slots, value) >= 0) {
+                return this;
+            }
+            if (count < WIDTH) {
+                Object[] newSlots = Arrays.copyOf(slots, count + 1);
+                newSlots[count] = value;
+                return new PersistentBucket<>(new Node(newSlots, count + 1), 0, count + 1, null);
+            }
+            // the leaf is full, the bucket becomes an indexed trie
+            return new PersistentBucket<>(new Node(new Object[]{root, newPath(0, value)}, count + 1), BITS, count + 1,
+                    PersistentBucket.<V>indexPositions(slots).with(value, count));
+        }
+        if (positions.containsKey(value)) {
+            return this;
+        }
+        Node newRoot;
+        int newShift = shift;
+        if (count == 1L << (shift + BITS)) {
+            // the trie is full, it grows by one level
+            newRoot = new Node(new Object[]{root, newPath(shift, value)}, root.size + 1);
+            newShift += BITS;
+        } else {
+            newRoot = append(root, shift, count, value);
+        }
+        return new PersistentBucket<>(newRoot, newShift, count + 1, positions.with(value, count));
+    }
+
+    /**
+     * Returns a bucket without the given value, or this bucket if the value is not present.
+     */
+    PersistentBucket<V> without(Object value) {
+        if (positions == null) {
+            int index = root == null ? -1 : indexOf(root.slots, value);
+            if (index < 0) {
+                return this;
+            }
+            if (count == 1) {
+                return empty();
+            }
+            Object[] newSlots = new Object[count - 1];
+            System.arraycopy(root.slots, 0, newSlots, 0, index);
+            System.arraycopy(root.slots, index + 1, newSlots, index, count - index - 1);
+            return new PersistentBucket<>(new Node(newSlots, count - 1), 0, count - 1, null);
+        }
+        Integer position = positions.get(value);
+        if (position == null) {
+            return this;
+        }
+        PersistentHashMap<V, Integer> newPositions = positions.without(value);
+        int size = newPositions.size();
+        int removed = count - size;
+        if (removed > size && removed >= WIDTH) {
+            return compact(newPositions);
+        }
+        return new PersistentBucket<>(clear(root, shift, position), shift, count, newPositions);
+    }
+
+    @Override
+    public int size() {
+        return root == null ? 0 : root.size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (positions == null) {
+            return root != null && indexOf(root.slots, o) >= 0;
+        }
+        return positions.containsKey(o);
+    }
+
+    @Override
+    public V get(int index) {
+        checkIndex(index, size());
+        return valueAt(position(index));
+    }
+
+    /**
+     * Performs the given action on each value, in insertion order, without allocating any iterator.
+     */
+    @SuppressWarnings("unchecked")
+    <A> void forEach(BiConsumer<? super V, ? super A> action, A argument) {
+        for (int position = 0; position < count; position += WIDTH) {
+            for (Object slot : leafOf(position)) {
+                if (slot != null) {
+                    action.accept((V) slot, argument);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<? super V> action) {
+        forEach((value, consumer) -> consumer.accept(value), action);
+    }
+
+    @Override
+    public Iterator<V> iterator() {
+        return listIterator(0);
+    }
+
+    @Override
+    public ListIterator<V> listIterator(int index) {
+        int size = size();
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return new Itr(index, index == size ? count : position(index));
+    }
+
+    private PersistentBucket<V> compact(PersistentHashMap<V, Integer> livePositions) {
+        Object[] values = new Object[livePositions.size()];
+        int[] index = new int[1];
+        forEach((value, ignored) -> {
+            if (livePositions.containsKey(value)) {
+                values[index[0]++] = value;
+            }
+        }, null);
+        return copyOf(values);
+    }
+
+    private static <V> PersistentBucket<V> copyOf(Object[] values) {
+        if (values.length == 0) {
+            return empty();
+        }
+        if (values.length <= WIDTH) {
+            return new PersistentBucket<>(new Node(values, values.length), 0, values.length, null);
+        }
+        Object[] nodes = new Object[(values.length + MASK) >>> BITS];
+        for (int i = 0; i < nodes.length; i++) {
+            Object[] slots = Arrays.copyOfRange(values, i << BITS, Math.min(values.length, (i + 1) << BITS));
+            nodes[i] = new Node(slots, slots.length);
+        }
+        int shift = 0;
+        while (nodes.length > 1) {
+            Object[] parents = new Object[(nodes.length + MASK) >>> BITS];
+            for (int i = 0; i < parents.length; i++) {
+                Object[] children = Arrays.copyOfRange(nodes, i << BITS, Math.min(nodes.length, (i + 1) << BITS));
+                int size = 0;
+                for (Object child : children) {
+                    size += ((Node) child).size;
+                }
+                parents[i] = new Node(children, size);
+            }
+            nodes = parents;
+            shift += BITS;
+        }
+        return new PersistentBucket<>((Node) nodes[0], shift, values.length, PersistentBucket.<V>indexPositions(values));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> PersistentHashMap<V, Integer> indexPositions(Object[] values) {
+        PersistentHashMap<V, Integer> positions = PersistentHashMap.empty();
+        for (int i = 0; i < values.length; i++) {
+            positions = positions.with((V) values[i], i);
+        }
+        return positions;
+    }
+
+    private static int indexOf(Object[] slots, Object value) {
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i].equals(value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Node newPath(int level, Object value) {
+        Object slot = value;
+        for (int i = 0; i <= level; i += BITS) {
+            slot = new Node(new Object[]{slot}, 1);
+        }
+        return (Node) slot;
+    }
+
+    private static Node append(Node node, int level, int position, Object value) {
+        int slot = (position >>> level) & MASK;
+        Object[] slots = Arrays.copyOf(node.slots, Math.max(node.slots.length, slot + 1));
+        if (level == 0) {
+            slots[slot] = value;
+        } else if (slot < node.slots.length) {
+            slots[slot] = append((Node) node.slots[slot], level - BITS, position, value);
+        } else {
+            slots[slot] = newPath(level - BITS, value);
+        }
+        return new Node(slots, node.size + 1);
+    }
+
+    private static Node clear(Node node, int level, int position) {
+        int slot = (position >>> level) & MASK;
+        Object[] slots = node.slots.clone();
+        slots[slot] = level == 0 ? null : clear((Node) slots[slot], level - BITS, position);
+        return new Node(slots, node.size - 1);
+    }
+
+    /**
+     * Returns the position of the slot holding the value at the given index.
+     */
+    private int position(int index) {
+        Node node = root;
+        int position = 0;
+        for (int level = shift; level > 0; level -= BITS) {
+            Object[] slots = node.slots;
+            for (int slot = 0; ; slot++) {
+                Node child = (Node) slots[slot];
+                if (index < child.size) {
+                    node = child;
+                    position += slot << level;
+                    break;
+                }
+                index -= child.size;
+            }
+        }
+        Object[] slots = node.slots;
+        for (int slot = 0; ; slot++) {
+            if (slots[slot] != null && index-- == 0) {
+                return position + slot;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int position) {
+        return (V) leafOf(position)[position & MASK];
+    }
+
+    private Object[] leafOf(int position) {
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Node) node.slots[(position >>> level) & MASK];
+        }
+        return node.slots;
+    }
+
+    private static final class Node {
+        // the values of a leaf, or the child nodes of a branch
+        final Object[] slots;
+        // number of values held by the sub-trie
+        final int size;
+
+        Node(Object[] slots, int size) {
+            this.slots = slots;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Iterates over the slots, the leaf is looked up again only when the position moves to another one.
+     */
+    private final class Itr implements ListIterator<V> {
+        private int index;
+        // position of the slot following the cursor
+        private int position;
+        private Object[] leaf;
+        private int leafIndex = -1;
+
+        Itr(int index, int position) {
+            this.index = index;
+            this.position = position;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < size();
+        }
+
+        @Override
+        public V next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            V value;
+            while ((value = slot(position++)) == null) {
+                // skip the removed values
+            }
+            index++;
+            return value;
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return index > 0;
+        }
+
+        @Override
+        public V previous() {
+            if (!hasPrevious()) {
+                throw new NoSuchElementException();
+            }
+            V value;
+            while ((value = slot(--position)) == null) {
+                // skip the removed values
+            }
+            index--;
+            return value;
+        }
+
+        @SuppressWarnings("unchecked")
+        private V slot(int position) {
+            if (position >>> BITS != leafIndex) {
+                leafIndex = position >>> BITS;
+                leaf = leafOf(position);
+            }
+            return (V) leaf[position & MASK];
+        }
+
+        @Override
+        public int nextIndex() {
+            return index;
+        }
+
+        @Override
+        public int previousIndex() {
+            return index - 1;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void set(V v) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void add(V v) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
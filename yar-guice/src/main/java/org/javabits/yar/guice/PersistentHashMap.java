@@ -0,0 +1,357 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar.guice;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.util.function.BiConsumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Persistent (immutable) hash map based on a hash array mapped trie.
+ * Each update returns a new map that shares all the untouched nodes with the previous one.
+ * Therefore an update copies only the path from the root to the updated entry: at most
+ * 7 nodes of 32 slots.
+ * <p>This map does not support {@code null} keys or values.</p>
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ * @author Romain Gilles
+ */
+@Immutable
+final class PersistentHashMap<K, V> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+
+    @Nullable
+    private final Node<K, V> root;
+    private final int size;
+
+    private PersistentHashMap(@Nullable Node<K, V> root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Nullable
+    V get(Object key) {
+        return root == null ? null : root.get(key, hash(key), 0);
+    }
+
+    boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Returns a map with the given entry. If the key is already mapped to the given value
+     * then this map is returned.
+     */
+    PersistentHashMap<K, V> with(K key, V value) {
+        requireNonNull(key, "key");
+        requireNonNull(value, "value");
+        V previous = get(key);
+        if (previous == value) {
+            return this;
+        }
+        Leaf<K, V> leaf = new Leaf<>(hash(key), key, value);
+        Node<K, V> newRoot = root == null ? leaf : root.with(leaf, 0);
+        return new PersistentHashMap<>(newRoot, previous == null ? size + 1 : size);
+    }
+
+    /**
+     * Returns a map without the given key. If the key is not mapped then this map is returned.
+     */
+    PersistentHashMap<K, V> without(Object key) {
+        if (root == null || get(key) == null) {
+            return this;
+        }
+        Node<K, V> newRoot = root.without(key, hash(key), 0);
+        return newRoot == null ? PersistentHashMap.empty() : new PersistentHashMap<>(newRoot, size - 1);
+    }
+
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        if (root != null) {
+            root.forEach(action);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        forEach((key, value) -> {
+            if (builder.length() > 1) {
+                builder.append(", ");
+            }
+            builder.append(key).append('=').append(value);
+        });
+        return builder.append('}').toString();
+    }
+
+    private static int hash(Object key) {
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int fragment(int hash, int shift) {
+        return (hash >>> shift) & MASK;
+    }
+
+    /**
+     * Merge two nodes holding distinct hashes into a new sub-trie starting at the given shift.
+     * As the hashes are distinct they always diverge before the last level.
+     */
+    @SuppressWarnings("unchecked")
+    private static <K, V> Node<K, V> merge(Node<K, V> node1, int hash1, Node<K, V> node2, int hash2, int shift) {
+        int fragment1 = fragment(hash1, shift);
+        int fragment2 = fragment(hash2, shift);
+        if (fragment1 == fragment2) {
+            return new BitmapNode<>(1 << fragment1, new Node[]{merge(node1, hash1, node2, hash2, shift + BITS)});
+        }
+        Node<K, V>[] children = fragment1 < fragment2 ? new Node[]{node1, node2} : new Node[]{node2, node1};
+        return new BitmapNode<>((1 << fragment1) | (1 << fragment2), children);
+    }
+
+    private static abstract class Node<K, V> {
+        @Nullable
+        abstract V get(Object key, int hash, int shift);
+
+        abstract Node<K, V> with(Leaf<K, V> leaf, int shift);
+
+        /**
+         * @return the node without the given key or {@code null} if the node becomes empty.
+         */
+        @Nullable
+        abstract Node<K, V> without(Object key, int hash, int shift);
+
+        abstract void forEach(BiConsumer<? super K, ? super V> action);
+    }
+
+    private static final class Leaf<K, V> extends Node<K, V> {
+        private final int hash;
+        private final K key;
+        private final V value;
+
+        Leaf(int hash, K key, V value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        @Nullable
+        @Override
+        V get(Object key, int hash, int shift) {
+            return this.hash == hash && this.key.equals(key) ? value : null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Node<K, V> with(Leaf<K, V> leaf, int shift) {
+            if (leaf.hash != hash) {
+                return merge(this, hash, leaf, leaf.hash, shift);
+            }
+            if (key.equals(leaf.key)) {
+                return leaf;
+            }
+            return new CollisionNode<>(hash, new Leaf[]{this, leaf});
+        }
+
+        @Nullable
+        @Override
+        Node<K, V> without(Object key, int hash, int shift) {
+            return get(key, hash, shift) != null ? null : this;
+        }
+
+        @Override
+        void forEach(BiConsumer<? super K, ? super V> action) {
+            action.accept(key, value);
+        }
+    }
+
+    private static final class BitmapNode<K, V> extends Node<K, V> {
+        private final int bitmap;
+        private final Node<K, V>[] children;
+
+        BitmapNode(int bitmap, Node<K, V>[] children) {
+            this.bitmap = bitmap;
+            this.children = children;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Nullable
+        @Override
+        V get(Object key, int hash, int shift) {
+            int bit = 1 << fragment(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            return children[index(bit)].get(key, hash, shift + BITS);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Node<K, V> with(Leaf<K, V> leaf, int shift) {
+            int bit = 1 << fragment(leaf.hash, shift);
+            int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                Node<K, V>[] newChildren = new Node[children.length + 1];
+                System.arraycopy(children, 0, newChildren, 0, index);
+                newChildren[index] = leaf;
+                System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+                return new BitmapNode<>(bitmap | bit, newChildren);
+            }
+            Node<K, V> child = children[index];
+            Node<K, V> newChild = child.with(leaf, shift + BITS);
+            if (newChild == child) {
+                return this;
+            }
+            Node<K, V>[] newChildren = children.clone();
+            newChildren[index] = newChild;
+            return new BitmapNode<>(bitmap, newChildren);
+        }
+
+        @Nullable
+        @Override
+        @SuppressWarnings("unchecked")
+        Node<K, V> without(Object key, int hash, int shift) {
+            int bit = 1 << fragment(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int index = index(bit);
+            Node<K, V> child = children[index];
+            Node<K, V> newChild = child.without(key, hash, shift + BITS);
+            if (newChild == child) {
+                return this;
+            }
+            if (newChild != null) {
+                if (children.length == 1 && newChild instanceof Leaf) {
+                    // collapse the path to keep the trie compact
+                    return newChild;
+                }
+                Node<K, V>[] newChildren = children.clone();
+                newChildren[index] = newChild;
+                return new BitmapNode<>(bitmap, newChildren);
+            }
+            if (children.length == 1) {
+                return null;
+            }
+            if (children.length == 2 && children[1 - index] instanceof Leaf) {
+                return children[1 - index];
+            }
+            Node<K, V>[] newChildren = new Node[children.length - 1];
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+            return new BitmapNode<>(bitmap & ~bit, newChildren);
+        }
+
+        @Override
+        void forEach(BiConsumer<? super K, ? super V> action) {
+            for (Node<K, V> child : children) {
+                child.forEach(action);
+            }
+        }
+    }
+
+    private static final class CollisionNode<K, V> extends Node<K, V> {
+        private final int hash;
+        private final Leaf<K, V>[] leaves;
+
+        CollisionNode(int hash, Leaf<K, V>[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < leaves.length; i++) {
+                if (leaves[i].key.equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Nullable
+        @Override
+        V get(Object key, int hash, int shift) {
+            if (this.hash != hash) {
+                return null;
+            }
+            int index = indexOf(key);
+            return index < 0 ? null : leaves[index].value;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Node<K, V> with(Leaf<K, V> leaf, int shift) {
+            if (leaf.hash != hash) {
+                return merge(this, hash, leaf, leaf.hash, shift);
+            }
+            int index = indexOf(leaf.key);
+            Leaf<K, V>[] newLeaves;
+            if (index < 0) {
+                newLeaves = new Leaf[leaves.length + 1];
+                System.arraycopy(leaves, 0, newLeaves, 0, leaves.length);
+                newLeaves[leaves.length] = leaf;
+            } else {
+                newLeaves = leaves.clone();
+                newLeaves[index] = leaf;
+            }
+            return new CollisionNode<>(hash, newLeaves);
+        }
+
+        @Nullable
+        @Override
+        @SuppressWarnings("unchecked")
+        Node<K, V> without(Object key, int hash, int shift) {
+            int index = this.hash == hash ? indexOf(key) : -1;
+            if (index < 0) {
+                return this;
+            }
+            if (leaves.length == 2) {
+                return leaves[1 - index];
+            }
+            Leaf<K, V>[] newLeaves = new Leaf[leaves.length - 1];
+            System.arraycopy(leaves, 0, newLeaves, 0, index);
+            System.arraycopy(leaves, index + 1, newLeaves, index, leaves.length - index - 1);
+            return new CollisionNode<>(hash, newLeaves);
+        }
+
+        @Override
+        void forEach(BiConsumer<? super K, ? super V> action) {
+            for (Leaf<K, V> leaf : leaves) {
+                leaf.forEach(action);
+            }
+        }
+    }
+}
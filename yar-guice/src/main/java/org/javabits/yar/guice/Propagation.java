@@ -0,0 +1,56 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar.guice;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the watcher tasks triggered by an update of a supplier registration. It is completed when
+ * its last task has been executed, successfully or not, or exceptionally if the tasks cannot be
+ * dispatched. The cost is a counter decrement per task, whatever the load of the registry.
+ *
+ * @author Romain Gilles
+ */
+final class Propagation {
+    static final Propagation COMPLETED = new Propagation(0);
+
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+    private final AtomicInteger pendingTasks;
+
+    Propagation(int taskCount) {
+        pendingTasks = new AtomicInteger(taskCount);
+        if (taskCount == 0) {
+            future.complete(null);
+        }
+    }
+
+    void taskCompleted() {
+        if (pendingTasks.decrementAndGet() == 0) {
+            future.complete(null);
+        }
+    }
+
+    void failed(Throwable cause) {
+        future.completeExceptionally(cause);
+    }
+
+    CompletionStage<Void> stage() {
+        return future.minimalCompletionStage();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar.guice;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Counts the pending listener tasks and signals the waiters when the count drops to zero.
+ * <p>All the waiters of a busy period share the same future: registering a waiter costs at most
+ * one future allocation and two volatile reads, whatever the number of pending tasks and waiters.
+ * The future of a busy period is only created on demand, so a strategy without waiter never
+ * allocates. When the count drops to zero the future is detached and completed; the next waiter
+ * creates the future of the next busy period.</p>
+ * <p>A waiter publishes the future before it reads the count, and a task completion decrements
+ * the count before it reads the future: whatever their interleaving, at least one of them sees the
+ * other, so a waiter cannot miss the end of its busy period.</p>
+ *
+ * @author Romain Gilles
+ */
+final class Quiescence {
+    private static final CompletableFuture<Void> QUIESCENT = CompletableFuture.completedFuture(null);
+
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+    // the future of the current busy period, null until a waiter asks for it
+    private final AtomicReference<CompletableFuture<Void>> next = new AtomicReference<>();
+
+    /**
+     * Records the submission of the given number of tasks.
+     *
+     * @return the number of pending tasks.
+     */
+    int tasksSubmitted(int count) {
+        return pendingTasks.addAndGet(count);
+    }
+
+    void tasksCompleted(int count) {
+        if (pendingTasks.addAndGet(-count) == 0) {
+            signal();
+        }
+    }
+
+    int pendingTasks() {
+        return pendingTasks.get();
+    }
+
+    /**
+     * Returns a future completed the next time there is no pending task, immediately if there is
+     * none. The returned future must not be completed by the caller, it is shared.
+     */
+    CompletableFuture<Void> whenQuiescent() {
+        if (pendingTasks.get() == 0) {
+            return QUIESCENT;
+        }
+        CompletableFuture<Void> future = next.get();
+        if (future == null) {
+            CompletableFuture<Void> newFuture = new CompletableFuture<>();
+            future = next.compareAndExchange(null, newFuture);
+            if (future == null) {
+                future = newFuture;
+            }
+        }
+        // the last task may have completed before the future was published
+        signal();
+        return future;
+    }
+
+    /**
+     * Waits until there is no pending task.
+     *
+     * @return {@code false} if the timeout elapsed while some tasks were still pending.
+     */
+    boolean awaitQuiescence(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            whenQuiescent().get(timeout, unit);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            // never completed exceptionally
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // a new busy period may have started since the count dropped to zero, it is checked again
+    private void signal() {
+        if (next.get() != null && pendingTasks.get() == 0) {
+            CompletableFuture<Void> future = next.getAndSet(null);
+            if (future != null) {
+                future.complete(null);
+            }
+        }
+    }
+}
@@ -30,10 +30,12 @@ import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
-import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
 import static com.google.common.collect.Lists.transform;
+import static com.google.common.util.concurrent.Futures.getUnchecked;
 
 /**
  * TODO comment
@@ -61,10 +63,16 @@ public class RegistrationBindingHandler implements RegistrationHandler {
         registrations = registerBindings();
     }
 
+    // issue all the registrations then wait for them instead of waiting for each one
     private List<RegistrationHolder> registerBindings() {
-        List<RegistrationHolder> registrationsBuilder = newArrayList();
-        for (Pair<Id, GuiceSupplier> idGuiceSupplierPair : getSuppliers()) {
-            registrationsBuilder.add(putRegistrationToRegistry(idGuiceSupplierPair));
+        List<Pair<Id, GuiceSupplier>> suppliers = getSuppliers();
+        List<CompletableFuture<? extends Registration<?>>> futures = newArrayListWithCapacity(suppliers.size());
+        for (Pair<Id, GuiceSupplier> idGuiceSupplierPair : suppliers) {
+            futures.add(putRegistrationToRegistry(idGuiceSupplierPair));
+        }
+        List<RegistrationHolder> registrationsBuilder = newArrayListWithCapacity(suppliers.size());
+        for (int i = 0; i < suppliers.size(); i++) {
+            registrationsBuilder.add(new RegistrationHolder(getUnchecked(futures.get(i)), suppliers.get(i).left()));
         }
         return registrationsBuilder;
     }
@@ -86,9 +94,8 @@ public class RegistrationBindingHandler implements RegistrationHandler {
     }
 
     @SuppressWarnings("unchecked")
-    private RegistrationHolder putRegistrationToRegistry(Pair<Id, GuiceSupplier> idGuiceSupplierPair) {
-        Registration<?> future = registry.put(idGuiceSupplierPair.left(), idGuiceSupplierPair.right());
-        return new RegistrationHolder(future, idGuiceSupplierPair.left());
+    private CompletableFuture<? extends Registration<?>> putRegistrationToRegistry(Pair<Id, GuiceSupplier> idGuiceSupplierPair) {
+        return registry.putAsync(idGuiceSupplierPair.left(), idGuiceSupplierPair.right());
     }
 
     @Override
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar.guice;
+
+import com.google.common.collect.ImmutableList;
+import org.javabits.yar.RegistryException;
+
+import java.lang.InterruptedException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static org.javabits.yar.guice.Reflections.getRawType;
+import static org.javabits.yar.guice.SimpleRegistry.RegistryAction;
+
+/**
+ * This class is responsible to execute the registry actions (mutations) outside of the caller threads.
+ * The actions are dispatched on one or more lanes. Each lane is a queue drained by its own daemon
+ * thread. An action is routed to a lane regarding the erased type of the id it applies to. Therefore
+ * all the actions on a given type, including the watchers on its raw type, are executed in the
+ * submission order, whereas actions on unrelated types can be executed in parallel on distinct lanes.
+ * <p>With only one lane, the default, all the actions are executed by the single
+ * {@code yar-action-handler} thread.</p>
+ * <p>In group commit mode a lane drains all its pending actions, up to a maximum group size, and
+ * hands them in one go to an {@link ActionGroupExecutor}. This saves the hand-off between the
+ * writers and the handler thread for each action under a registration storm and let the executor
+ * coalesce the actions and dispatch the listener updates of the whole group as one batch.</p>
+ * <p>The lanes are unbounded by default. With a capacity the {@link BackpressurePolicy} defines
+ * whether the submitter waits for room or is rejected when its lane is full.</p>
+ *
+ * @author Romain Gilles
+ */
+class RegistryActionPipeline {
+    private static final Logger LOG = Logger.getLogger(RegistryActionPipeline.class.getName());
+    static final String HANDLER_THREAD_NAME = "yar-action-handler";
+    static final int DEFAULT_LANES = 1;
+    static final int NO_GROUP_COMMIT = 1;
+    static final int UNBOUNDED = Integer.MAX_VALUE;
+    /**
+     * Creates the daemon platform threads used by default to drain the lanes.
+     */
+    static final ThreadFactory PLATFORM_THREAD_FACTORY = runnable -> {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        return thread;
+    };
+
+    private final List<BlockingQueue<RegistryAction<?>>> lanes;
+    private final int maxGroupSize;
+    private final ThreadFactory threadFactory;
+    private final BackpressurePolicy backpressurePolicy;
+    private final LongAccumulator pendingActionsHighWaterMark = new LongAccumulator(Math::max, 0);
+    private final GroupCommitStatistics groupCommitStatistics = new GroupCommitStatistics();
+    // latency from the submission to the completion of the actions by kind of action
+    private final ConcurrentMap<Class<?>, LatencyHistogram> actionLatencies = new ConcurrentHashMap<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    RegistryActionPipeline() {
+        this(DEFAULT_LANES);
+    }
+
+    RegistryActionPipeline(int laneCount) {
+        this(laneCount, NO_GROUP_COMMIT);
+    }
+
+    RegistryActionPipeline(int laneCount, int maxGroupSize) {
+        this(laneCount, maxGroupSize, PLATFORM_THREAD_FACTORY);
+    }
+
+    /**
+     * @param laneCount     the number of lanes, each of them is drained by its own thread.
+     * @param maxGroupSize  the maximum number of actions drained and committed together by a lane.
+     *                      {@code 1} disables the group commit: the actions are executed one by one.
+     * @param threadFactory creates the threads that drain the lanes, they must not prevent the JVM
+     *                      from exiting. The threads are renamed after their lane.
+     */
+    RegistryActionPipeline(int laneCount, int maxGroupSize, ThreadFactory threadFactory) {
+        this(laneCount, maxGroupSize, threadFactory, UNBOUNDED, BackpressurePolicy.BLOCK);
+    }
+
+    /**
+     * @param laneCount          the number of lanes, each of them is drained by its own thread.
+     * @param maxGroupSize       the maximum number of actions drained and committed together by a lane.
+     *                           {@code 1} disables the group commit: the actions are executed one by one.
+     * @param threadFactory      creates the threads that drain the lanes, they must not prevent the JVM
+     *                           from exiting. The threads are renamed after their lane.
+     * @param laneCapacity       the maximum number of pending actions per lane, {@link #UNBOUNDED} by default.
+     * @param backpressurePolicy applied on submission when the lane of the action is full.
+     */
+    RegistryActionPipeline(int laneCount, int maxGroupSize, ThreadFactory threadFactory, int laneCapacity, BackpressurePolicy backpressurePolicy) {
+        checkArgument(laneCount > 0, "The number of action handler lanes must be positive: %s", laneCount);
+        checkArgument(maxGroupSize > 0, "The maximum group size must be positive: %s", maxGroupSize);
+        checkArgument(laneCapacity > 0, "The lane capacity must be positive: %s", laneCapacity);
+        ImmutableList.Builder<BlockingQueue<RegistryAction<?>>> lanesBuilder = ImmutableList.builder();
+        for (int i = 0; i < laneCount; i++) {
+            // the linked queue does not preallocate its capacity and uses distinct put / take locks
+            lanesBuilder.add(new LinkedBlockingQueue<>(laneCapacity));
+        }
+        lanes = lanesBuilder.build();
+        this.maxGroupSize = maxGroupSize;
+        this.threadFactory = checkNotNull(threadFactory, "threadFactory");
+        this.backpressurePolicy = checkNotNull(backpressurePolicy, "backpressurePolicy");
+    }
+
+    /**
+     * Start the handler threads of the lanes.
+     *
+     * @param groupExecutor executes the groups of actions drained when the group commit is enabled.
+     */
+    void start(ActionGroupExecutor groupExecutor) {
+        checkState(started.compareAndSet(false, true), "Registry action pipeline already started");
+        for (int i = 0; i < lanes.size(); i++) {
+            Runnable handler = isGroupCommit() ? new GroupCommitActionHandler(lanes.get(i), groupExecutor) : new RegistryActionHandler(lanes.get(i));
+            Thread registryActionThread = threadFactory.newThread(handler);
+            registryActionThread.setName(lanes.size() == 1 ? HANDLER_THREAD_NAME : HANDLER_THREAD_NAME + '-' + i);
+            registryActionThread.start();
+        }
+    }
+
+    int laneCount() {
+        return lanes.size();
+    }
+
+    boolean isGroupCommit() {
+        return maxGroupSize > NO_GROUP_COMMIT;
+    }
+
+    /**
+     * Returns the number of actions waiting in the lanes queues.
+     */
+    int pendingActions() {
+        int pendingActions = 0;
+        for (BlockingQueue<RegistryAction<?>> lane : lanes) {
+            pendingActions += lane.size();
+        }
+        return pendingActions;
+    }
+
+    /**
+     * Returns the highest number of actions observed in a lane queue on submission.
+     */
+    long pendingActionsHighWaterMark() {
+        return pendingActionsHighWaterMark.get();
+    }
+
+    /**
+     * Returns the latency distribution, from submission to completion, of the actions by kind of action.
+     */
+    Map<String, LatencySnapshot> actionLatencies() {
+        Map<String, LatencySnapshot> latencies = new TreeMap<>();
+        actionLatencies.forEach((actionClass, histogram) -> latencies.put(actionClass.getSimpleName(), histogram.snapshot()));
+        return latencies;
+    }
+
+    private void recordLatency(RegistryAction<?> action, long nowNanoTime) {
+        LatencyHistogram histogram = actionLatencies.get(action.getClass());
+        if (histogram == null) {
+            histogram = actionLatencies.computeIfAbsent(action.getClass(), actionClass -> new LatencyHistogram());
+        }
+        histogram.record(nowNanoTime - action.submittedNanoTime());
+    }
+
+    GroupCommitStatistics groupCommitStatistics() {
+        return groupCommitStatistics;
+    }
+
+    /**
+     * Returns the index of the lane on which the actions related to the given type are executed.
+     * All the types that share the same raw type are executed on the same lane.
+     */
+    int laneOf(Type type) {
+        if (lanes.size() == 1) {
+            return 0;
+        }
+        int hash = getRawType(type).hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), lanes.size());
+    }
+
+    void submit(Type type, RegistryAction<?> action) throws InterruptedException {
+        submit(laneOf(type), action);
+    }
+
+    void submit(int lane, RegistryAction<?> action) throws InterruptedException {
+        BlockingQueue<RegistryAction<?>> queue = lanes.get(lane);
+        action.submitted(System.nanoTime());
+        if (backpressurePolicy == BackpressurePolicy.REJECT) {
+            if (!queue.offer(action)) {
+                throw new RegistryException(String.format("Registry action rejected, the action queue is full (%d pending actions): %s"
+                        , queue.size(), action));
+            }
+        } else {
+            // the actions of a lane must be executed in order by its handler, so caller-runs waits as well
+            queue.put(action);
+        }
+        pendingActionsHighWaterMark.accumulate(queue.size());
+    }
+
+    /**
+     * Execute a group of actions drained from a lane in one go.
+     */
+    interface ActionGroupExecutor {
+        /**
+         * Execute the given actions in order and complete their futures.
+         *
+         * @return the number of actions coalesced (cancelled out) inside the group.
+         */
+        int execute(List<RegistryAction<?>> group);
+    }
+
+    /**
+     * Statistics of the group commit mode, aggregated over all the lanes.
+     */
+    static class GroupCommitStatistics {
+        private final LongAdder groups = new LongAdder();
+        private final LongAdder actions = new LongAdder();
+        private final LongAdder coalescedActions = new LongAdder();
+        private final LongAdder latencyNanos = new LongAdder();
+        private final LongAccumulator maxGroupSize = new LongAccumulator(Math::max, 0);
+        private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+
+        void record(int groupSize, int coalesced, long groupLatencyNanos) {
+            groups.increment();
+            actions.add(groupSize);
+            coalescedActions.add(coalesced);
+            latencyNanos.add(groupLatencyNanos);
+            maxGroupSize.accumulate(groupSize);
+            maxLatencyNanos.accumulate(groupLatencyNanos);
+        }
+
+        long groups() {
+            return groups.sum();
+        }
+
+        long actions() {
+            return actions.sum();
+        }
+
+        long coalescedActions() {
+            return coalescedActions.sum();
+        }
+
+        long maxGroupSize() {
+            return maxGroupSize.get();
+        }
+
+        long latencyNanos() {
+            return latencyNanos.sum();
+        }
+
+        long maxLatencyNanos() {
+            return maxLatencyNanos.get();
+        }
+
+        @Override
+        public String toString() {
+            long groupCount = groups();
+            return "GroupCommitStatistics{" + "groups=" + groupCount + ", actions=" + actions()
+                    + ", coalescedActions=" + coalescedActions() + ", maxGroupSize=" + maxGroupSize()
+                    + ", meanLatencyNanos=" + (groupCount == 0 ? 0 : latencyNanos() / groupCount)
+                    + ", maxLatencyNanos=" + maxLatencyNanos() + '}';
+        }
+    }
+
+    private class RegistryActionHandler implements Runnable {
+        private final BlockingQueue<RegistryAction<?>> registryActionQueue;
+
+        RegistryActionHandler(BlockingQueue<RegistryAction<?>> registryActionQueue) {
+            this.registryActionQueue = registryActionQueue;
+        }
+
+        @Override
+        public void run() {
+            try {
+                try {
+                    for (; !Thread.currentThread().isInterrupted(); ) {
+                        handleNext();
+                    }
+                } catch (InterruptedException e) {
+                    LOG.fine("Exit on interruption");
+                }
+                for (RegistryAction<?> registryAction = registryActionQueue.poll(); registryAction != null; registryAction = registryActionQueue.poll()) {
+                    try {
+                        registryAction.asFuture().cancel(true);
+                    } catch (Exception ex) {
+                        LOG.log(Level.SEVERE, "Error on cancel to exit on interruption", ex);
+                    }
+                }
+            } catch (Exception e) {
+                LOG.log(Level.SEVERE, "Exit on exception", e);
+            }
+        }
+
+        void handleNext() throws InterruptedException {
+            RegistryAction<?> registryAction = registryActionQueue.take();
+            registryAction.execute();
+            recordLatency(registryAction, System.nanoTime());
+        }
+
+        BlockingQueue<RegistryAction<?>> queue() {
+            return registryActionQueue;
+        }
+    }
+
+    private class GroupCommitActionHandler extends RegistryActionHandler {
+        private final ActionGroupExecutor groupExecutor;
+        private final List<RegistryAction<?>> group = new ArrayList<>();
+
+        GroupCommitActionHandler(BlockingQueue<RegistryAction<?>> registryActionQueue, ActionGroupExecutor groupExecutor) {
+            super(registryActionQueue);
+            this.groupExecutor = groupExecutor;
+        }
+
+        @Override
+        void handleNext() throws InterruptedException {
+            group.add(queue().take());
+            queue().drainTo(group, maxGroupSize - 1);
+            try {
+                long start = System.nanoTime();
+                int coalesced = groupExecutor.execute(group);
+                long end = System.nanoTime();
+                groupCommitStatistics.record(group.size(), coalesced, end - start);
+                for (RegistryAction<?> action : group) {
+                    recordLatency(action, end);
+                }
+            } catch (RuntimeException e) {
+                // a failed group must neither leave its callers waiting nor stop this lane
+                LOG.log(Level.SEVERE, "Cannot execute a group of " + group.size() + " registry actions", e);
+                for (RegistryAction<?> action : group) {
+                    action.asFuture().completeExceptionally(e);
+                }
+            } finally {
+                group.clear();
+            }
+        }
+    }
+}
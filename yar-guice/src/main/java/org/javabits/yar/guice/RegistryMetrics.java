@@ -0,0 +1,170 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar.guice;
+
+import org.javabits.yar.Registry;
+import org.javabits.yar.RegistryException;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Metrics of a registry: its action pipeline, its listener update execution strategy and its content.
+ * The metrics are recorded by the registry itself with striped counters, this class only reads
+ * them when an attribute is requested. It is published as an MXBean under the
+ * {@link #OBJECT_NAME} name.
+ *
+ * @author Romain Gilles
+ */
+public class RegistryMetrics implements RegistryMetricsMXBean {
+    public static final String OBJECT_NAME = "org.javabits.yar:type=RegistryMetrics";
+    private static final LatencySnapshot NO_LATENCY = new LatencySnapshot(0, 0, 0, 0, 0, 0);
+
+    private final RegistryActionPipeline actionPipeline;
+    private final WatchableRegistrationContainer registrationContainer;
+
+    private RegistryMetrics(SimpleRegistry registry) {
+        this.actionPipeline = registry.actionPipeline();
+        this.registrationContainer = registry.registrationContainer();
+    }
+
+    /**
+     * Returns the metrics of the given registry.
+     *
+     * @throws IllegalArgumentException if the registry was not created by {@link YarGuices}.
+     */
+    public static RegistryMetrics of(Registry registry) {
+        checkNotNull(registry, "registry");
+        checkArgument(registry instanceof SimpleRegistry, "Not a yar registry: %s", registry);
+        return new RegistryMetrics((SimpleRegistry) registry);
+    }
+
+    /**
+     * Register these metrics into the platform MBean server under the {@link #OBJECT_NAME} name.
+     *
+     * @throws RegistryException if the registration fails, e.g. metrics of another registry are
+     *                           already registered.
+     */
+    public void register() {
+        register(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public void register(MBeanServer mBeanServer) {
+        try {
+            mBeanServer.registerMBean(this, objectName());
+        } catch (JMException e) {
+            throw new RegistryException("Cannot register the registry metrics", e);
+        }
+    }
+
+    /**
+     * Unregister the metrics registered under the {@link #OBJECT_NAME} name, if any.
+     */
+    public static void unregister(MBeanServer mBeanServer) {
+        try {
+            if (mBeanServer.isRegistered(objectName())) {
+                mBeanServer.unregisterMBean(objectName());
+            }
+        } catch (JMException e) {
+            throw new RegistryException("Cannot unregister the registry metrics", e);
+        }
+    }
+
+    static ObjectName objectName() {
+        try {
+            return new ObjectName(OBJECT_NAME);
+        } catch (MalformedObjectNameException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Override
+    public int getActionQueueDepth() {
+        return actionPipeline.pendingActions();
+    }
+
+    @Override
+    public long getActionQueueHighWaterMark() {
+        return actionPipeline.pendingActionsHighWaterMark();
+    }
+
+    @Override
+    public Map<String, LatencySnapshot> getActionLatencies() {
+        return actionPipeline.actionLatencies();
+    }
+
+    @Override
+    public LatencySnapshot getListenerLatency() {
+        AbstractExecutionStrategy executionStrategy = executionStrategy();
+        return executionStrategy != null ? executionStrategy.taskLatency() : NO_LATENCY;
+    }
+
+    @Override
+    public long getListenerFailures() {
+        AbstractExecutionStrategy executionStrategy = executionStrategy();
+        return executionStrategy != null ? executionStrategy.failedTasks() : 0;
+    }
+
+    @Override
+    public long getListenerOverruns() {
+        AbstractExecutionStrategy executionStrategy = executionStrategy();
+        return executionStrategy != null ? executionStrategy.overrunTasks() : 0;
+    }
+
+    @Override
+    public int getPendingListenerTasks() {
+        AbstractExecutionStrategy executionStrategy = executionStrategy();
+        return executionStrategy != null ? executionStrategy.pendingTasks() : 0;
+    }
+
+    @Override
+    public long getPendingListenerTasksHighWaterMark() {
+        AbstractExecutionStrategy executionStrategy = executionStrategy();
+        return executionStrategy != null ? executionStrategy.pendingTasksHighWaterMark() : 0;
+    }
+
+    @Override
+    public Map<String, Integer> getSupplierCounts() {
+        return byTypeName(registrationContainer.supplierCounts());
+    }
+
+    @Override
+    public Map<String, Integer> getWatcherCounts() {
+        return byTypeName(registrationContainer.watcherCounts());
+    }
+
+    // the custom strategies do not provide metrics
+    private AbstractExecutionStrategy executionStrategy() {
+        ExecutionStrategy executionStrategy = registrationContainer.executionStrategy();
+        return executionStrategy instanceof AbstractExecutionStrategy ? (AbstractExecutionStrategy) executionStrategy : null;
+    }
+
+    private static Map<String, Integer> byTypeName(Map<Type, Integer> counts) {
+        Map<String, Integer> countsByName = new TreeMap<>();
+        counts.forEach((type, count) -> countsByName.put(type.getTypeName(), count));
+        return countsByName;
+    }
+}
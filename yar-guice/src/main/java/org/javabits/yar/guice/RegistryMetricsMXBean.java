@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar.guice;
+
+import java.util.Map;
+
+/**
+ * Management interface of the registry metrics.
+ *
+ * @author Romain Gilles
+ * @see RegistryMetrics
+ */
+public interface RegistryMetricsMXBean {
+
+    /**
+     * Returns the number of registry actions (mutations) waiting to be executed.
+     */
+    int getActionQueueDepth();
+
+    /**
+     * Returns the highest number of registry actions observed in an action queue.
+     */
+    long getActionQueueHighWaterMark();
+
+    /**
+     * Returns the latency, from submission to completion, of the registry actions by kind of action
+     * (e.g. {@code Add}, {@code Remove}, {@code AddWatcher}, {@code InvalidateType}).
+     */
+    Map<String, LatencySnapshot> getActionLatencies();
+
+    /**
+     * Returns the execution time of the watcher / listener updates.
+     */
+    LatencySnapshot getListenerLatency();
+
+    /**
+     * Returns the number of watcher / listener updates that have failed.
+     */
+    long getListenerFailures();
+
+    /**
+     * Returns the number of watcher / listener updates that have overrun the registry timeout.
+     */
+    long getListenerOverruns();
+
+    /**
+     * Returns the number of watcher / listener updates submitted and not yet completed.
+     */
+    int getPendingListenerTasks();
+
+    /**
+     * Returns the highest number of pending watcher / listener updates observed.
+     */
+    long getPendingListenerTasksHighWaterMark();
+
+    /**
+     * Returns the number of suppliers by type.
+     */
+    Map<String, Integer> getSupplierCounts();
+
+    /**
+     * Returns the number of watchers by erased type.
+     */
+    Map<String, Integer> getWatcherCounts();
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar.guice;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import org.javabits.yar.Id;
+import org.javabits.yar.RegistrySnapshot;
+import org.javabits.yar.Supplier;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Snapshot of the suppliers of a registry backed by a persistent map of type to suppliers.
+ * A new snapshot is derived from the previous one on each mutation of the registry and shares
+ * with it all the untouched types. The types and ids sets are computed once per snapshot on
+ * first access.
+ *
+ * @author Romain Gilles
+ */
+@Immutable
+class RegistrySnapshotImpl implements RegistrySnapshot {
+    static final RegistrySnapshotImpl EMPTY = new RegistrySnapshotImpl(PersistentHashMap.empty());
+
+    private final PersistentHashMap<Type, List<Supplier<?>>> suppliersByType;
+    // lazily computed, a race only leads to compute them twice
+    private volatile Set<Type> types;
+    private volatile Set<Id<?>> ids;
+
+    private RegistrySnapshotImpl(PersistentHashMap<Type, List<Supplier<?>>> suppliersByType) {
+        this.suppliersByType = suppliersByType;
+    }
+
+    /**
+     * Returns a snapshot where the suppliers of the given type are replaced by the given registrations.
+     * The type is omitted if there is no registration. The snapshot keeps a view of the registrations
+     * if they are immutable, otherwise it keeps a copy of them.
+     */
+    RegistrySnapshotImpl with(Type type, List<? extends SupplierRegistration<?>> registrations) {
+        if (registrations.isEmpty()) {
+            return without(type);
+        }
+        return new RegistrySnapshotImpl(suppliersByType.with(type, Lists.transform(immutable(registrations), SupplierRegistration::right)));
+    }
+
+    // the persistent buckets of the cache container are immutable, there is nothing to copy
+    private static List<? extends SupplierRegistration<?>> immutable(List<? extends SupplierRegistration<?>> registrations) {
+        return registrations instanceof PersistentBucket ? registrations : ImmutableList.copyOf(registrations);
+    }
+
+    RegistrySnapshotImpl without(Type type) {
+        PersistentHashMap<Type, List<Supplier<?>>> newSuppliersByType = suppliersByType.without(type);
+        return newSuppliersByType == suppliersByType ? this : new RegistrySnapshotImpl(newSuppliersByType);
+    }
+
+    @Override
+    public Set<Type> types() {
+        Set<Type> result = types;
+        if (result == null) {
+            ImmutableSet.Builder<Type> builder = ImmutableSet.builder();
+            suppliersByType.forEach((type, suppliers) -> builder.add(type));
+            types = result = builder.build();
+        }
+        return result;
+    }
+
+    @Override
+    public Set<Id<?>> ids() {
+        Set<Id<?>> result = ids;
+        if (result == null) {
+            ImmutableSet.Builder<Id<?>> builder = ImmutableSet.builder();
+            suppliersByType.forEach((type, suppliers) -> {
+                for (Supplier<?> supplier : suppliers) {
+                    builder.add(supplier.id());
+                }
+            });
+            ids = result = builder.build();
+        }
+        return result;
+    }
+
+    @Nullable
+    @Override
+    public <T> Supplier<T> get(Class<T> type) {
+        return get((Type) type);
+    }
+
+    @Override
+    public <T> List<Supplier<T>> getAll(Class<T> type) {
+        return getAll((Type) type);
+    }
+
+    @Nullable
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Supplier<T> get(Id<T> id) {
+        for (Supplier<?> supplier : suppliers(id.type())) {
+            if (id.equals(supplier.id())) {
+                return (Supplier<T>) supplier;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> List<Supplier<T>> getAll(Id<T> id) {
+        List<Supplier<?>> suppliers = suppliers(id.type());
+        if (id.annotationType() == null) {
+            // same lax semantic as the registry: all the suppliers of the type
+            return (List<Supplier<T>>) (List<?>) suppliers;
+        }
+        ImmutableList.Builder<Supplier<T>> builder = ImmutableList.builder();
+        for (Supplier<?> supplier : suppliers) {
+            if (id.equals(supplier.id())) {
+                builder.add((Supplier<T>) supplier);
+            }
+        }
+        return builder.build();
+    }
+
+    @Nullable
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Supplier<T> get(Type type) {
+        List<Supplier<?>> suppliers = suppliers(type);
+        return suppliers.isEmpty() ? null : (Supplier<T>) suppliers.get(0);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> List<Supplier<T>> getAll(Type type) {
+        return (List<Supplier<T>>) (List<?>) suppliers(type);
+    }
+
+    private List<Supplier<?>> suppliers(Type type) {
+        List<Supplier<?>> suppliers = suppliersByType.get(requireNonNull(type, "type"));
+        return suppliers == null ? Collections.emptyList() : suppliers;
+    }
+
+    @Override
+    public String toString() {
+        return "RegistrySnapshotImpl{" + "suppliersByType=" + suppliersByType + '}';
+    }
+}
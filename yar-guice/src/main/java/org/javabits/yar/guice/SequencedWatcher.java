@@ -0,0 +1,50 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar.guice;
+
+import org.javabits.yar.BatchWatcher;
+import org.javabits.yar.Supplier;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * A watcher notified with the sequence of each supplier event. The sequence is the registry
+ * version produced by the mutation, it increases for each event of an id and lets the watcher
+ * discard the stale events delivered out of order. The element calls of the {@link BatchWatcher}
+ * are events without sequence.
+ *
+ * @author Romain Gilles
+ * @see org.javabits.yar.SupplierEvent#sequence()
+ */
+interface SequencedWatcher<T> extends BatchWatcher<T> {
+
+    @Nullable
+    Supplier<T> add(Supplier<T> element, long sequence);
+
+    void remove(Supplier<T> element, long sequence);
+
+    /**
+     * @param sequences the sequence of each element, in the same order.
+     */
+    List<Supplier<T>> addAll(List<Supplier<T>> elements, long[] sequences);
+
+    /**
+     * @param sequences the sequence of each element, in the same order.
+     */
+    void removeAll(List<Supplier<T>> elements, long[] sequences);
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar.guice;
+
+import com.google.common.collect.MapMaker;
+import org.javabits.yar.BlockingSupplier;
+import org.javabits.yar.Id;
+
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Blocking supplier factory that shares one {@link BlockingSupplier} per {@link Id} and registry.
+ * The suppliers are created by a delegate factory and kept in a weak-valued cache. Therefore all
+ * the callers of a given id share the same supplier and its single listener registration, instead
+ * of adding a new watcher to the registry on each lookup. A supplier is reclaimed, and its listener
+ * unregistered, as soon as no caller holds it anymore.
+ *
+ * @author Romain Gilles
+ */
+public class SharedBlockingSupplierFactory implements BlockingSupplierFactory {
+    private final BlockingSupplierFactory delegate;
+    // a factory can be shared by several registries
+    private final ConcurrentMap<InternalRegistry, ConcurrentMap<Id<?>, BlockingSupplier<?>>> suppliersByRegistry = new MapMaker().weakKeys().makeMap();
+
+    public SharedBlockingSupplierFactory() {
+        this(new DefaultBlockingSupplierFactory());
+    }
+
+    public SharedBlockingSupplierFactory(BlockingSupplierFactory delegate) {
+        this.delegate = checkNotNull(delegate, "delegate");
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> BlockingSupplier<T> create(InternalRegistry registry, Id<T> id) {
+        ConcurrentMap<Id<?>, BlockingSupplier<?>> suppliers = suppliersByRegistry.computeIfAbsent(registry, key -> new MapMaker().weakValues().makeMap());
+        // a concurrent creation may register a supplier that is lost, its listener is then garbage collected
+        return (BlockingSupplier<T>) suppliers.computeIfAbsent(id, key -> delegate.create(registry, id));
+    }
+
+    @Override
+    public String toString() {
+        return "SharedBlockingSupplierFactory{" + "delegate=" + delegate + '}';
+    }
+}
@@ -20,27 +20,29 @@ import com.google.common.base.FinalizableReferenceQueue;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.*;
-import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.SettableFuture;
 import org.javabits.yar.*;
 
 import javax.annotation.Nullable;
 import java.lang.InterruptedException;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static com.google.common.collect.Lists.transform;
 import static com.google.common.util.concurrent.Futures.getUnchecked;
 import static java.util.Collections.singletonList;
-import static java.util.Collections.unmodifiableSet;
 import static java.util.Objects.requireNonNull;
 import static org.javabits.yar.InterruptedException.newInterruptedException;
 import static org.javabits.yar.guice.GuiceWatchableRegistrationContainer.newLoadingCacheGuiceWatchableRegistrationContainer;
@@ -57,7 +59,8 @@ import static org.javabits.yar.guice.WatcherRegistration.newWatcherRegistration;
  * @author Romain Gilles
  */
 class SimpleRegistry implements Registry, RegistryHook, InternalRegistry {
-    private final LinkedBlockingQueue<RegistryAction> registryActionQueue;
+    private static final Logger LOG = Logger.getLogger(SimpleRegistry.class.getName());
+    private final RegistryActionPipeline actionPipeline;
     private final WatchableRegistrationContainer registrationContainer;
     private final FinalizableReferenceQueue referenceQueue;
     private final long defaultTimeOut;
@@ -72,17 +75,26 @@ class SimpleRegistry implements Registry, RegistryHook, InternalRegistry {
     }
 
     SimpleRegistry(WatchableRegistrationContainer registrationContainer, long timeout, TimeUnit unit) {
+        this(registrationContainer, timeout, unit, new RegistryActionPipeline());
+    }
+
+    SimpleRegistry(WatchableRegistrationContainer registrationContainer, long timeout, TimeUnit unit, RegistryActionPipeline actionPipeline) {
         referenceQueue = new FinalizableReferenceQueue();
         this.registrationContainer = registrationContainer;
-        //TODO test performance of the linked vs. array or any other blocking. may provide a new builder feature to setup the size of the queue
-        registryActionQueue = new LinkedBlockingQueue<>();
-        Thread registryActionThread = new Thread(new RegistryActionHandler(registryActionQueue), "yar-action-handler");
-        registryActionThread.setDaemon(true);
-        registryActionThread.start();
+        this.actionPipeline = actionPipeline;
         this.defaultTimeOut = timeout;
         this.defaultTimeoutUnit = unit;
+        actionPipeline.start(this::executeActionGroup);
+    }
+
+
+    RegistryActionPipeline actionPipeline() {
+        return actionPipeline;
     }
 
+    WatchableRegistrationContainer registrationContainer() {
+        return registrationContainer;
+    }
 
     public long defaultTimeout() {
         return defaultTimeOut;
@@ -94,24 +106,17 @@ class SimpleRegistry implements Registry, RegistryHook, InternalRegistry {
 
     @Override
     public Set<Type> types() {
-        return unmodifiableSet(registrationContainer.types());
+        return snapshot().types();
     }
 
     @Override
     public Set<Id<?>> ids() {
-        ImmutableSet.Builder<Id<?>> builder = ImmutableSet.builder();
-        for (Type type : registrationContainer.types()) {
-            builder.addAll(Lists.transform(getAll(type), new Function<Supplier<?>, Id<?>>() {
-                @Nullable
-                @Override
-                public Id<?> apply(@Nullable Supplier<?> supplier) {
-                    requireNonNull(supplier, "supplier");
-                    //noinspection ConstantConditions
-                    return supplier.id();
-                }
-            }));
-        }
-        return builder.build();
+        return snapshot().ids();
+    }
+
+    @Override
+    public RegistrySnapshot snapshot() {
+        return registrationContainer.snapshot();
     }
 
     @Override
@@ -143,6 +148,41 @@ class SimpleRegistry implements Registry, RegistryHook, InternalRegistry {
         return viewOfEntries(registrationContainer.getAll(type));
     }
 
+    // the actions are non-capturing lambdas, the consumer is passed as argument to not allocate on each call
+    @Override
+    public void forEach(Type type, Consumer<? super Supplier<?>> action) {
+        requireNonNull(action, "action");
+        registrationContainer.forEach(type, (SupplierRegistration<?> registration, Consumer<? super Supplier<?>> consumer)
+                -> consumer.accept(registration.right()), action);
+    }
+
+    @Override
+    public <T> void forEach(Id<T> id, Consumer<? super Supplier<T>> action) {
+        requireNonNull(action, "action");
+        registrationContainer.forEach(id, (SupplierRegistration<T> registration, Consumer<? super Supplier<T>> consumer)
+                -> consumer.accept(registration.right()), action);
+    }
+
+    @Override
+    public long version() {
+        return registrationContainer.version();
+    }
+
+    @Override
+    public long version(Type type) {
+        return registrationContainer.version(requireNonNull(type, "type"));
+    }
+
+    @Override
+    public int size(Type type) {
+        return registrationContainer.size(type);
+    }
+
+    @Override
+    public int size(Id<?> id) {
+        return registrationContainer.size(id);
+    }
+
 
     private static <T> ImmutableList<Supplier<T>> transformToSuppliers(List<SupplierRegistration<T>> pairs) {
         return ImmutableList.copyOf(transform(pairs, new Function<SupplierRegistration<T>, Supplier<T>>() {
@@ -192,17 +232,44 @@ class SimpleRegistry implements Registry, RegistryHook, InternalRegistry {
         return registration.right();
     }
 
-    private <T> Registration<T> put(Id<T> id, Supplier<T> supplier) {
+    private <T> CompletableFuture<Registration<T>> submitPut(Id<T> id, Supplier<T> supplier) {
         checkKey(id, "id");
         checkSupplier(supplier);
         SupplierRegistration<T> registration = new SupplierRegistration<>(id, supplier);
         Add<T> add = new Add<>(registration);
-        return executeActionOnRegistry(add);
+        return submitActionOnRegistry(id.type(), add);
     }
 
     @Override
     public <T> Registration<T> put(Id<T> id, java.util.function.Supplier<? extends T> supplier) {
-        return put(id, requireNonNull(newSupplierAdapter(id, supplier), "supplier"));
+        return getUnchecked(submitPut(id, requireNonNull(newSupplierAdapter(id, supplier), "supplier")));
+    }
+
+    @Override
+    public <T> CompletableFuture<Registration<T>> putAsync(Id<T> id, java.util.function.Supplier<? extends T> supplier) {
+        return submitPut(id, requireNonNull(newSupplierAdapter(id, supplier), "supplier")).copy();
+    }
+
+    @Override
+    public List<Registration<?>> putAll(Map<? extends Id<?>, ? extends java.util.function.Supplier<?>> suppliers) {
+        requireNonNull(suppliers, "suppliers");
+        if (suppliers.isEmpty()) {
+            return ImmutableList.of();
+        }
+        ImmutableList.Builder<SupplierRegistration<?>> registrationsBuilder = ImmutableList.builder();
+        for (Map.Entry<? extends Id<?>, ? extends java.util.function.Supplier<?>> entry : suppliers.entrySet()) {
+            registrationsBuilder.add(newSupplierRegistration(entry.getKey(), entry.getValue()));
+        }
+        List<SupplierRegistration<?>> registrations = registrationsBuilder.build();
+        getUnchecked(submitActionsOnRegistry(registrations, registration -> registration.id().type(), AddAll::new));
+        return ImmutableList.copyOf(registrations);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> SupplierRegistration<T> newSupplierRegistration(Id<T> id, java.util.function.Supplier<?> supplier) {
+        checkKey(id, "id");
+        Supplier<T> supplierAdapter = newSupplierAdapter(id, requireNonNull((java.util.function.Supplier<? extends T>) supplier, "supplier"));
+        return new SupplierRegistration<>(id, supplierAdapter);
     }
 
     private <T> JavaSupplierAdapter<T> newSupplierAdapter(Id<T> id, java.util.function.Supplier<? extends T> supplier) {
@@ -223,8 +290,22 @@ class SimpleRegistry implements Registry, RegistryHook, InternalRegistry {
         removeAll(singletonList(registration));
     }
 
+    @Override
+    public CompletableFuture<Void> removeAsync(Registration<?> registration) {
+        return removeAllAsync(singletonList(registration));
+    }
+
     @Override
     public void removeAll(Collection<? extends Registration<?>> registrations) {
+        getUnchecked(submitRemoveAll(registrations));
+    }
+
+    @Override
+    public CompletableFuture<Void> removeAllAsync(Collection<? extends Registration<?>> registrations) {
+        return submitRemoveAll(registrations).copy();
+    }
+
+    private CompletableFuture<Void> submitRemoveAll(Collection<? extends Registration<?>> registrations) {
         Collection<SupplierRegistration<?>> supplierRegistrations = Collections2.transform(registrations, new Function<Registration<?>, SupplierRegistration<?>>() {
             @Nullable
             @Override
@@ -232,14 +313,42 @@ class SimpleRegistry implements Registry, RegistryHook, InternalRegistry {
                 return checkSupplierRegistration(registration);
             }
         });
-        RegistryAction<Void> action = new Remove(supplierRegistrations);
-        executeActionOnRegistry(action);
+        return submitActionsOnRegistry(supplierRegistrations, registration -> registration.id().type(), Remove::new);
     }
 
-    private <T> T executeActionOnRegistry(RegistryAction<T> action) {
+    private <T> CompletableFuture<T> submitActionOnRegistry(Type type, RegistryAction<T> action) {
         try {
-            registryActionQueue.put(action);
-            return getUnchecked(action.asFuture());
+            actionPipeline.submit(type, action);
+            return action.asFuture();
+        } catch (InterruptedException e) {
+            throw newInterruptedException(String.format("Cannot execute action [%s] on the registry", action), e);
+        }
+    }
+
+    /**
+     * Split the given elements regarding the lane of their type and submit one action per lane.
+     * The actions are executed concurrently and the returned future is completed when all of them are completed.
+     */
+    private <E> CompletableFuture<Void> submitActionsOnRegistry(Collection<E> elements, java.util.function.Function<? super E, Type> typeFunction, java.util.function.Function<List<E>, RegistryAction<Void>> actionFactory) {
+        List<E> elementList = ImmutableList.copyOf(elements);
+        if (actionPipeline.laneCount() == 1 || elementList.isEmpty()) {
+            return submitActionOnRegistry(0, actionFactory.apply(elementList));
+        }
+        Map<Integer, List<E>> elementsByLane = new LinkedHashMap<>();
+        for (E element : elementList) {
+            elementsByLane.computeIfAbsent(actionPipeline.laneOf(typeFunction.apply(element)), lane -> new ArrayList<>()).add(element);
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>(elementsByLane.size());
+        for (Map.Entry<Integer, List<E>> laneElements : elementsByLane.entrySet()) {
+            futures.add(submitActionOnRegistry(laneElements.getKey(), actionFactory.apply(laneElements.getValue())));
+        }
+        return futures.size() == 1 ? futures.get(0) : CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private <T> CompletableFuture<T> submitActionOnRegistry(int lane, RegistryAction<T> action) {
+        try {
+            actionPipeline.submit(lane, action);
+            return action.asFuture();
         } catch (InterruptedException e) {
             throw newInterruptedException(String.format("Cannot execute action [%s] on the registry", action), e);
         }
@@ -265,8 +374,37 @@ class SimpleRegistry implements Registry, RegistryHook, InternalRegistry {
         return addWatcherRegistration(watcherRegistration);
     }
 
+    @Override
+    public <T> CompletableFuture<Registration<T>> addWatcherAsync(IdMatcher<T> idMatcher, Watcher<T> watcher) {
+        checkKeyMatcher(idMatcher, "idMatcher");
+        WatcherRegistration<T> watcherRegistration = newWatcherRegistration(idMatcher, watcher, referenceQueue, this);
+        return submitWatcherRegistration(watcherRegistration).copy();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Registration<?>> addWatchers(Map<? extends IdMatcher<?>, ? extends Watcher<?>> watchers) {
+        requireNonNull(watchers, "watchers");
+        if (watchers.isEmpty()) {
+            return ImmutableList.of();
+        }
+        ImmutableList.Builder<WatcherRegistration<?>> watcherRegistrationsBuilder = ImmutableList.builder();
+        for (Map.Entry<? extends IdMatcher<?>, ? extends Watcher<?>> entry : watchers.entrySet()) {
+            IdMatcher<Object> idMatcher = checkKeyMatcher((IdMatcher<Object>) entry.getKey(), "idMatcher");
+            Watcher<Object> watcher = requireNonNull((Watcher<Object>) entry.getValue(), "watcher");
+            watcherRegistrationsBuilder.add(newWatcherRegistration(idMatcher, watcher, referenceQueue, this));
+        }
+        List<WatcherRegistration<?>> watcherRegistrations = watcherRegistrationsBuilder.build();
+        getUnchecked(submitActionsOnRegistry(watcherRegistrations, registration -> registration.id().type(), AddWatchers::new));
+        return ImmutableList.copyOf(watcherRegistrations);
+    }
+
     <T> Registration<T> addWatcherRegistration(WatcherRegistration<T> watcherRegistration) {
-        return executeActionOnRegistry(new AddWatcher<>(watcherRegistration));
+        return getUnchecked(submitWatcherRegistration(watcherRegistration));
+    }
+
+    private <T> CompletableFuture<Registration<T>> submitWatcherRegistration(WatcherRegistration<T> watcherRegistration) {
+        return submitActionOnRegistry(watcherRegistration.id().type(), new AddWatcher<>(watcherRegistration));
     }
 
     public <T> Registration<T> addSupplierListener(IdMatcher<T> idMatcher, SupplierListener supplierListener) {
@@ -294,8 +432,7 @@ class SimpleRegistry implements Registry, RegistryHook, InternalRegistry {
                 return checkRegistration(watcherRegistration, WatcherRegistration.class);
             }
         });
-        RemoveWatcher action = new RemoveWatcher(registrations);
-        executeActionOnRegistry(action);
+        getUnchecked(submitActionsOnRegistry(registrations, registration -> registration.id().type(), RemoveWatcher::new));
     }
 
     @Override
@@ -305,8 +442,12 @@ class SimpleRegistry implements Registry, RegistryHook, InternalRegistry {
 
     @Override
     public void invalidateAll(Collection<Type> types) {
-        RegistryAction<Void> removeAllAction = new InvalidateType(types);
-        executeActionOnRegistry(removeAllAction);
+        getUnchecked(submitActionsOnRegistry(types, type -> type, InvalidateType::new));
+    }
+
+    @Override
+    public CompletableFuture<Void> invalidateAllAsync(Collection<Type> types) {
+        return submitActionsOnRegistry(types, type -> type, InvalidateType::new).copy();
     }
 
     @Override
@@ -329,31 +470,166 @@ class SimpleRegistry implements Registry, RegistryHook, InternalRegistry {
         registrationContainer.addEndOfListenerUpdateTasksListener(listener);
     }
 
+    @Override
+    public boolean awaitListenerQuiescence(long timeout, TimeUnit unit) throws InterruptedException {
+        return registrationContainer.executionStrategy().awaitQuiescence(timeout, unit);
+    }
+
+    /**
+     * Execute a group of actions drained from the action pipeline in group commit mode.
+     * The actions that cancel each other out inside the group are coalesced first. Then the
+     * remaining actions are executed in order while their listener update tasks are buffered,
+     * and finally the buffered tasks are dispatched as one batch before the futures of the
+     * actions are completed. If the batch cannot be dispatched all the actions of the group
+     * are completed exceptionally, their callers must never wait for ever.
+     *
+     * @return the number of coalesced actions
+     */
+    private int executeActionGroup(List<RegistryAction<?>> group) {
+        int coalesced = coalesce(group);
+        registrationContainer.deferListenerUpdates();
+        RuntimeException flushFailure = null;
+        try {
+            for (RegistryAction<?> action : group) {
+                action.executeAndHoldCompletion();
+            }
+        } finally {
+            try {
+                registrationContainer.flushListenerUpdates(defaultTimeOut, defaultTimeoutUnit);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                LOG.log(Level.SEVERE, "Cannot dispatch the listener updates of a group of " + group.size() + " actions", e);
+                flushFailure = e;
+            }
+            for (RegistryAction<?> action : group) {
+                if (flushFailure != null) {
+                    action.asFuture().completeExceptionally(flushFailure);
+                } else {
+                    action.complete();
+                }
+            }
+        }
+        return coalesced;
+    }
+
+    /**
+     * A supplier added and then invalidated by its type inside the same group is never added
+     * to the registry: the add and the invalidation cancel each other out.
+     * The watchers are therefore not notified of this transient supplier.
+     * <p>This is the only pair that can be coalesced. An add and the removal of its registration
+     * never meet in a group: the registration is handed out to the caller only once the add is
+     * completed, that is after its group is executed.</p>
+     */
+    private int coalesce(List<RegistryAction<?>> group) {
+        if (group.size() == 1) {
+            return 0;
+        }
+        Map<SupplierRegistration<?>, Add<?>> pendingAdds = new IdentityHashMap<>();
+        int coalesced = 0;
+        for (RegistryAction<?> action : group) {
+            if (action instanceof Add) {
+                Add<?> add = (Add<?>) action;
+                pendingAdds.put(add.registration, add);
+            } else if (action instanceof InvalidateType && !pendingAdds.isEmpty()) {
+                for (Type type : ((InvalidateType) action).types) {
+                    for (Iterator<Add<?>> iterator = pendingAdds.values().iterator(); iterator.hasNext(); ) {
+                        Add<?> add = iterator.next();
+                        if (type.equals(add.registration.id().type())) {
+                            add.cancel();
+                            iterator.remove();
+                            coalesced++;
+                        }
+                    }
+                }
+            }
+        }
+        return coalesced;
+    }
+
     interface RegistryAction<T> {
 
         void execute();
 
-        ListenableFuture<T> asFuture();
+        /**
+         * Execute this action but keep its future uncompleted until {@link #complete()} is called.
+         */
+        void executeAndHoldCompletion();
+
+        void complete();
+
+        CompletableFuture<T> asFuture();
+
+        /**
+         * Records the {@link System#nanoTime()} of the submission of this action to measure its latency.
+         */
+        void submitted(long nanoTime);
+
+        long submittedNanoTime();
 
     }
 
     static abstract class AbstractRegistryAction<T> implements RegistryAction<T> {
-        private final SettableFuture<T> future = SettableFuture.create();
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private boolean cancelled;
+        private T result;
+        private Exception failure;
+        private long submittedNanoTime;
+
+        @Override
+        public final void submitted(long nanoTime) {
+            submittedNanoTime = nanoTime;
+        }
+
+        @Override
+        public final long submittedNanoTime() {
+            return submittedNanoTime;
+        }
 
         @Override
         public final void execute() {
+            executeAndHoldCompletion();
+            complete();
+        }
+
+        @Override
+        public final void executeAndHoldCompletion() {
+            if (cancelled) {
+                return;
+            }
             try {
-                T result = doExecute();
-                future.set(result);
+                result = doExecute();
             } catch (Exception e) {
-                future.setException(e);
+                failure = e;
+            }
+        }
+
+        @Override
+        public final void complete() {
+            if (failure != null) {
+                future.completeExceptionally(failure);
+            } else {
+                future.complete(result);
             }
         }
 
+        /**
+         * Cancel out the execution of this action. It will be completed with
+         * the result returned by {@link #cancelledResult()}.
+         */
+        final void cancel() {
+            cancelled = true;
+            result = cancelledResult();
+        }
+
+        T cancelledResult() {
+            return null;
+        }
+
         abstract T doExecute() throws Exception;
 
         @Override
-        public final ListenableFuture<T> asFuture() {
+        public final CompletableFuture<T> asFuture() {
             return future;
         }
     }
@@ -371,6 +647,25 @@ class SimpleRegistry implements Registry, RegistryHook, InternalRegistry {
             return registration;
         }
 
+        @Override
+        Registration<T> cancelledResult() {
+            return registration;
+        }
+
+    }
+
+    private class AddAll extends AbstractRegistryAction<Void> {
+        private final List<SupplierRegistration<?>> registrations;
+
+        AddAll(List<SupplierRegistration<?>> registrations) {
+            this.registrations = registrations;
+        }
+
+        @Override
+        Void doExecute() throws Exception {
+            registrationContainer.putAll(registrations, defaultTimeOut, defaultTimeoutUnit);
+            return null;
+        }
     }
 
     private class Remove extends AbstractRegistryAction<Void> {
@@ -382,9 +677,7 @@ class SimpleRegistry implements Registry, RegistryHook, InternalRegistry {
 
         @Override
         Void doExecute() throws Exception {
-            for (SupplierRegistration<?> registration : registrations) {
-                registrationContainer.remove(registration, defaultTimeOut, defaultTimeoutUnit);
-            }
+            registrationContainer.removeAll(ImmutableList.copyOf(registrations), defaultTimeOut, defaultTimeoutUnit);
             return null;
         }
     }
@@ -422,51 +715,34 @@ class SimpleRegistry implements Registry, RegistryHook, InternalRegistry {
         }
     }
 
-    private class RemoveWatcher extends AbstractRegistryAction<Void> {
-        private final Collection<WatcherRegistration<?>> watcherRegistrations;
+    private class AddWatchers extends AbstractRegistryAction<Void> {
 
-        public RemoveWatcher(Collection<WatcherRegistration<?>> watcherRegistrations) {
+        private final List<WatcherRegistration<?>> watcherRegistrations;
+
+        AddWatchers(List<WatcherRegistration<?>> watcherRegistrations) {
             this.watcherRegistrations = watcherRegistrations;
         }
 
         @Override
         Void doExecute() throws Exception {
-            for (WatcherRegistration<?> watcherRegistration : watcherRegistrations) {
-                registrationContainer.remove(watcherRegistration);
-            }
+            registrationContainer.addAll(watcherRegistrations, defaultTimeOut, defaultTimeoutUnit);
             return null;
         }
     }
 
-    private static class RegistryActionHandler implements Runnable {
-        private static final Logger LOG = Logger.getLogger(RegistryActionHandler.class.getName());
-        private final BlockingQueue<RegistryAction> registryActionQueue;
+    private class RemoveWatcher extends AbstractRegistryAction<Void> {
+        private final Collection<WatcherRegistration<?>> watcherRegistrations;
 
-        RegistryActionHandler(BlockingQueue<RegistryAction> registryActionQueue) {
-            this.registryActionQueue = registryActionQueue;
+        public RemoveWatcher(Collection<WatcherRegistration<?>> watcherRegistrations) {
+            this.watcherRegistrations = watcherRegistrations;
         }
 
         @Override
-        public void run() {
-            try {
-                try {
-                    for (; !Thread.currentThread().isInterrupted(); ) {
-                        RegistryAction registryAction = registryActionQueue.take();
-                        registryAction.execute();
-                    }
-                } catch (InterruptedException e) {
-                    LOG.fine("Exit on interruption");
-                }
-                for (RegistryAction registryAction = registryActionQueue.poll(); registryAction != null; ) {
-                    try {
-                        registryAction.asFuture().cancel(true);
-                    } catch (Exception ex) {
-                        LOG.log(Level.SEVERE, "Error on cancel to exit on interruption", ex);
-                    }
-                }
-            } catch (Exception e) {
-                LOG.log(Level.SEVERE, "Exit on exception", e);
+        Void doExecute() throws Exception {
+            for (WatcherRegistration<?> watcherRegistration : watcherRegistrations) {
+                registrationContainer.remove(watcherRegistration);
             }
+            return null;
         }
     }
 
@@ -19,6 +19,8 @@ package org.javabits.yar.guice;
 import org.javabits.yar.Id;
 import org.javabits.yar.Supplier;
 
+import java.util.concurrent.CompletionStage;
+
 /**
  * TODO comment
  * Date: 2/20/13
@@ -27,6 +29,9 @@ import org.javabits.yar.Supplier;
  * @author Romain Gilles
  */
 class SupplierRegistration<T> extends StrongPair<Id<T>, Supplier<T>> implements org.javabits.yar.Registration<T> {
+    // the propagation of the last update, replaced by the registry on each update of this registration
+    private volatile Propagation propagation = Propagation.COMPLETED;
+
     SupplierRegistration(Id<T> leftValue, Supplier<T> rightValue) {
         super(leftValue, rightValue);
     }
@@ -36,6 +41,20 @@ class SupplierRegistration<T> extends StrongPair<Id<T>, Supplier<T>> implements
         return left();
     }
 
+    @Override
+    public CompletionStage<Void> propagation() {
+        return propagation.stage();
+    }
+
+    /**
+     * Starts the tracking of a new update of this registration that triggers the given number of tasks.
+     */
+    Propagation propagate(int taskCount) {
+        Propagation newPropagation = new Propagation(taskCount);
+        propagation = newPropagation;
+        return newPropagation;
+    }
+
     @Override
     public String toString() {
         return "SupplierRegistration{" +
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar.guice;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Access to the virtual threads of the running JVM.
+ * The library is compiled against a JDK that does not provide them, therefore the
+ * {@code Thread.ofVirtual()} builder is looked up by reflection once. If it is not
+ * available (JVM older than 21 or preview not enabled) the factories fall back to
+ * daemon platform threads.
+ *
+ * @author Romain Gilles
+ */
+final class VirtualThreads {
+    private static final Logger LOG = Logger.getLogger(VirtualThreads.class.getName());
+    private static final Method OF_VIRTUAL;
+    private static final Method NAME;
+    private static final Method FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> ofVirtualBuilder = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            name = ofVirtualBuilder.getMethod("name", String.class, long.class);
+            factory = ofVirtualBuilder.getMethod("factory");
+            // fail fast if the virtual threads are a disabled preview feature
+            ofVirtual.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.log(Level.FINE, "Virtual threads are not available, platform threads will be used", e);
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+    }
+
+    private VirtualThreads() {
+        throw new AssertionError("not for you!");
+    }
+
+    /**
+     * Returns {@code true} if the running JVM supports the virtual threads.
+     */
+    static boolean isAvailable() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Returns a factory of virtual threads named {@code namePrefix} followed by a counter.
+     * If the virtual threads are not available then the returned factory creates daemon
+     * platform threads with the same name.
+     */
+    static ThreadFactory newThreadFactory(String namePrefix) {
+        checkNotNull(namePrefix, "namePrefix");
+        if (isAvailable()) {
+            try {
+                Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 0L);
+                return (ThreadFactory) FACTORY.invoke(builder);
+            } catch (ReflectiveOperationException e) {
+                LOG.log(Level.WARNING, "Cannot create a virtual thread factory, platform threads will be used", e);
+            }
+        }
+        return new DaemonThreadFactory(namePrefix);
+    }
+
+    /**
+     * Returns an executor that starts a new thread, created by the given factory, for each task.
+     * It is the natural executor for virtual threads that must not be pooled.
+     */
+    static Executor newThreadPerTaskExecutor(final ThreadFactory threadFactory) {
+        checkNotNull(threadFactory, "threadFactory");
+        return command -> threadFactory.newThread(checkNotNull(command, "command")).start();
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger();
+        private final String namePrefix;
+
+        DaemonThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(@SuppressWarnings("NullableProblems") Runnable runnable) {
+            Thread thread = new Thread(checkNotNull(runnable, "runnable"), namePrefix + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -18,13 +18,17 @@ package org.javabits.yar.guice;
 
 import org.javabits.yar.Id;
 import org.javabits.yar.RegistryHook;
+import org.javabits.yar.RegistrySnapshot;
 import org.javabits.yar.TypeListener;
 
 import javax.annotation.Nullable;
 import java.lang.reflect.Type;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 /**
  * TODO comment
@@ -37,6 +41,11 @@ interface WatchableRegistrationContainer {
 
     Set<Type> types();
 
+    /**
+     * Returns the snapshot of the suppliers published after the last mutation.
+     */
+    RegistrySnapshot snapshot();
+
     List<SupplierRegistration<?>> getAll(Type type);
 
     @Nullable
@@ -47,16 +56,61 @@ interface WatchableRegistrationContainer {
     @Nullable
     <T> SupplierRegistration<T> getFirst(Id<T> id);
 
+    /**
+     * Performs the given action on each registration of the type without copying them.
+     * The argument is passed through to the action, see {@link Container#forEach(Object, BiConsumer, Object)}.
+     */
+    <A> void forEach(Type type, BiConsumer<? super SupplierRegistration<?>, ? super A> action, A argument);
+
+    /**
+     * Performs the given action on each registration of the id without copying them.
+     * An id without annotation visits all the registrations of its type like {@link #getAll(Id)}.
+     */
+    <T, A> void forEach(Id<T> id, BiConsumer<? super SupplierRegistration<T>, ? super A> action, A argument);
+
+    int size(Type type);
+
+    int size(Id<?> id);
+
+    /**
+     * Returns the version of the supplier registry, it is incremented after each mutation.
+     */
+    long version();
+
+    /**
+     * Returns the version of the suppliers of the given type. It changes after each mutation of
+     * the type and never takes back a previous value.
+     */
+    long version(Type type);
+
     boolean put(SupplierRegistration<?> registration, long timeout, TimeUnit unit) throws InterruptedException;
 
+    boolean putAll(Collection<? extends SupplierRegistration<?>> registrations, long timeout, TimeUnit unit) throws InterruptedException;
+
     boolean remove(SupplierRegistration<?> registration, long timeout, TimeUnit unit) throws InterruptedException;
 
+    boolean removeAll(Collection<? extends SupplierRegistration<?>> registrations, long timeout, TimeUnit unit) throws InterruptedException;
+
     <T> boolean add(WatcherRegistration<T> watcherRegistration, long timeout, TimeUnit unit) throws InterruptedException;
 
+    boolean addAll(Collection<? extends WatcherRegistration<?>> watcherRegistrations, long timeout, TimeUnit unit) throws InterruptedException;
+
     boolean remove(WatcherRegistration<?> watcherRegistration);
 
     void removeAll(Type type, long timeout, TimeUnit unit) throws InterruptedException;
 
+    /**
+     * Buffer the listener update tasks produced by the current thread instead of handing them
+     * to the execution strategy, until {@link #flushListenerUpdates(long, TimeUnit)} is called.
+     */
+    void deferListenerUpdates();
+
+    /**
+     * Hand the listener update tasks buffered by the current thread to the execution strategy
+     * as one batch, in the order they were produced, and stop the buffering.
+     */
+    void flushListenerUpdates(long timeout, TimeUnit unit) throws InterruptedException;
+
     void addTypeListener(TypeListener typeListener);
 
     void removeTypeListener(TypeListener typeListener);
@@ -64,4 +118,19 @@ interface WatchableRegistrationContainer {
     boolean hasPendingListenerUpdateTasks();
 
     void addEndOfListenerUpdateTasksListener(RegistryHook.EndOfListenerUpdateTasksListener listener);
+
+    /**
+     * Returns the execution strategy of the listener updates.
+     */
+    ExecutionStrategy executionStrategy();
+
+    /**
+     * Returns the number of suppliers registered by type, the types without supplier are omitted.
+     */
+    Map<Type, Integer> supplierCounts();
+
+    /**
+     * Returns the number of watchers registered by erased type, the types without watcher are omitted.
+     */
+    Map<Type, Integer> watcherCounts();
 }
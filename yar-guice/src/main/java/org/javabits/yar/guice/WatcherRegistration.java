@@ -14,11 +14,18 @@
 
 package org.javabits.yar.guice;
 
+import static org.javabits.yar.SupplierEvent.NO_SEQUENCE;
 import static org.javabits.yar.SupplierEvent.Type.ADD;
 import static org.javabits.yar.SupplierEvent.Type.REMOVE;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -90,9 +97,22 @@ class WatcherRegistration<T> extends FinalizableWeakReference<Object> implements
                 '}';
     }
 
-    static class WatcherDecorator<T> implements Watcher<T> {
+    /**
+     * Keeps track of the suppliers tracked by the decorated watcher, weakly referenced.
+     * The batch calls are forwarded as is to a {@link BatchWatcher}, otherwise they are
+     * split into element calls. A failing element call does not prevent the next ones,
+     * as it would not if each element was notified by its own task.
+     * <p>The calls are serialized and the stale events are discarded, therefore the decorated
+     * watcher receives the events of each supplier in order even under a parallel dispatch.</p>
+     */
+    static class WatcherDecorator<T> implements SequencedWatcher<T> {
         private final WeakReference<Watcher<T>> delegate;
+        // serializes the calls without pinning the virtual thread of a blocking watcher to its carrier
+        private final Lock lock = new ReentrantLock();
+        // guarded by lock
         private final IdentityHashMap<Supplier<T>, Supplier<T>> trackedElements = new IdentityHashMap<>();
+        // guarded by lock
+        private final EventSequences eventSequences = new EventSequences();
 
         WatcherDecorator(Watcher<T> delegate) {
             this.delegate = new WeakReference<>(delegate);
@@ -101,15 +121,88 @@ class WatcherRegistration<T> extends FinalizableWeakReference<Object> implements
         @Nullable
         @Override
         public Supplier<T> add(Supplier<T> element) {
-            Watcher<T> watcher = delegate.get();
-            if (watcher != null) {
-                Supplier<T> trackedElement = watcher.add(element);
-                if (trackedElement != null) {
-                    trackedElements.put(element, trackedElement);
+            return add(element, NO_SEQUENCE);
+        }
+
+        @Nullable
+        @Override
+        public Supplier<T> add(Supplier<T> element, long sequence) {
+            lock.lock();
+            try {
+                if (!eventSequences.apply(element, sequence)) {
+                    return null;
+                }
+                Watcher<T> watcher = delegate.get();
+                if (watcher != null) {
+                    Supplier<T> trackedElement = watcher.add(element);
+                    if (trackedElement != null) {
+                        trackedElements.put(element, trackedElement);
+                    }
+                    return trackedElement;
+                } else {
+                    clearTrackedElements();
+                    return null;
                 }
-                return trackedElement;
-            } else {
-                clearTrackedElements();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public List<Supplier<T>> addAll(List<Supplier<T>> elements) {
+            return addAll(elements, noSequences(elements.size()));
+        }
+
+        @Override
+        public List<Supplier<T>> addAll(List<Supplier<T>> elements, long[] sequences) {
+            lock.lock();
+            try {
+                List<Supplier<T>> result = new ArrayList<>(Collections.nCopies(elements.size(), null));
+                Watcher<T> watcher = delegate.get();
+                if (watcher == null) {
+                    clearTrackedElements();
+                    return result;
+                }
+                // position in the given elements of each applied element
+                int[] positions = new int[elements.size()];
+                List<Supplier<T>> appliedElements = new ArrayList<>(elements.size());
+                for (int i = 0; i < elements.size(); i++) {
+                    if (eventSequences.apply(elements.get(i), sequences[i])) {
+                        positions[appliedElements.size()] = i;
+                        appliedElements.add(elements.get(i));
+                    }
+                }
+                if (appliedElements.isEmpty()) {
+                    return result;
+                }
+                List<Supplier<T>> trackedElements;
+                if (watcher instanceof BatchWatcher) {
+                    trackedElements = ((BatchWatcher<T>) watcher).addAll(appliedElements);
+                } else {
+                    trackedElements = new ArrayList<>(appliedElements.size());
+                    for (Supplier<T> element : appliedElements) {
+                        trackedElements.add(addSafely(watcher, element));
+                    }
+                }
+                for (int i = 0; i < appliedElements.size(); i++) {
+                    Supplier<T> trackedElement = trackedElements.get(i);
+                    if (trackedElement != null) {
+                        this.trackedElements.put(appliedElements.get(i), trackedElement);
+                        result.set(positions[i], trackedElement);
+                    }
+                }
+                return result;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Nullable
+        private static <T> Supplier<T> addSafely(Watcher<T> watcher, Supplier<T> element) {
+            try {
+                return watcher.add(element);
+            } catch (RuntimeException e) {
+                LOG.log(Level.SEVERE, String.format("Watcher add failed: %s, supplier: %s", watcher, element), e);
                 return null;
             }
         }
@@ -120,14 +213,69 @@ class WatcherRegistration<T> extends FinalizableWeakReference<Object> implements
 
         @Override
         public void remove(Supplier<T> element) {
-            Supplier<T> trackedElement = trackedElements.remove(element);
-            if (trackedElement != null) {
+            remove(element, NO_SEQUENCE);
+        }
+
+        @Override
+        public void remove(Supplier<T> element, long sequence) {
+            lock.lock();
+            try {
+                if (!eventSequences.apply(element, sequence)) {
+                    return;
+                }
+                Supplier<T> trackedElement = trackedElements.remove(element);
+                if (trackedElement != null) {
+                    Watcher<T> watcher = delegate.get();
+                    if (watcher != null) {
+                        watcher.remove(trackedElement);
+                    } else {
+                        clearTrackedElements();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void removeAll(List<Supplier<T>> elements) {
+            removeAll(elements, noSequences(elements.size()));
+        }
+
+        @Override
+        public void removeAll(List<Supplier<T>> elements, long[] sequences) {
+            lock.lock();
+            try {
+                List<Supplier<T>> removedElements = new ArrayList<>(elements.size());
+                for (int i = 0; i < elements.size(); i++) {
+                    Supplier<T> element = elements.get(i);
+                    if (!eventSequences.apply(element, sequences[i])) {
+                        continue;
+                    }
+                    Supplier<T> trackedElement = trackedElements.remove(element);
+                    if (trackedElement != null) {
+                        removedElements.add(trackedElement);
+                    }
+                }
+                if (removedElements.isEmpty()) {
+                    return;
+                }
                 Watcher<T> watcher = delegate.get();
-                if (watcher != null) {
-                    watcher.remove(trackedElement);
-                } else {
+                if (watcher == null) {
                     clearTrackedElements();
+                } else if (watcher instanceof BatchWatcher) {
+                    ((BatchWatcher<T>) watcher).removeAll(removedElements);
+                } else {
+                    for (Supplier<T> removedElement : removedElements) {
+                        try {
+                            watcher.remove(removedElement);
+                        } catch (RuntimeException e) {
+                            LOG.log(Level.SEVERE, String.format("Watcher remove failed: %s, supplier: %s", watcher, removedElement), e);
+                        }
+                    }
                 }
+            } finally {
+                lock.unlock();
             }
         }
 
@@ -139,7 +287,13 @@ class WatcherRegistration<T> extends FinalizableWeakReference<Object> implements
         }
     }
 
-    private static class SupplierWatcherToSupplierListenerAdapter<T> implements Watcher<T> {
+    static long[] noSequences(int size) {
+        long[] sequences = new long[size];
+        Arrays.fill(sequences, NO_SEQUENCE);
+        return sequences;
+    }
+
+    private static class SupplierWatcherToSupplierListenerAdapter<T> implements SequencedWatcher<T> {
         private final WeakReference<SupplierListener> delegate;
 
         public SupplierWatcherToSupplierListenerAdapter(SupplierListener delegate) {
@@ -149,18 +303,55 @@ class WatcherRegistration<T> extends FinalizableWeakReference<Object> implements
         @Nullable
         @Override
         public Supplier<T> add(Supplier<T> supplier) {
+            return add(supplier, NO_SEQUENCE);
+        }
+
+        @Nullable
+        @Override
+        public Supplier<T> add(Supplier<T> supplier, long sequence) {
             SupplierListener supplierListener = delegate.get();
             if (supplierListener != null) {
-                supplierListener.supplierChanged(new SupplierEvent(ADD, supplier));
+                supplierListener.supplierChanged(new SupplierEvent(ADD, supplier, sequence));
             }
             return supplier;
         }
 
         @Override
         public void remove(Supplier<T> supplier) {
+            remove(supplier, NO_SEQUENCE);
+        }
+
+        @Override
+        public void remove(Supplier<T> supplier, long sequence) {
             SupplierListener supplierListener = delegate.get();
             if (supplierListener != null) {
-                supplierListener.supplierChanged(new SupplierEvent(REMOVE, supplier));
+                supplierListener.supplierChanged(new SupplierEvent(REMOVE, supplier, sequence));
+            }
+        }
+
+        // the listener is notified one event at a time
+        @Override
+        public List<Supplier<T>> addAll(List<Supplier<T>> suppliers) {
+            return addAll(suppliers, noSequences(suppliers.size()));
+        }
+
+        @Override
+        public List<Supplier<T>> addAll(List<Supplier<T>> suppliers, long[] sequences) {
+            for (int i = 0; i < suppliers.size(); i++) {
+                add(suppliers.get(i), sequences[i]);
+            }
+            return suppliers;
+        }
+
+        @Override
+        public void removeAll(List<Supplier<T>> suppliers) {
+            removeAll(suppliers, noSequences(suppliers.size()));
+        }
+
+        @Override
+        public void removeAll(List<Supplier<T>> suppliers, long[] sequences) {
+            for (int i = 0; i < suppliers.size(); i++) {
+                remove(suppliers.get(i), sequences[i]);
             }
         }
 
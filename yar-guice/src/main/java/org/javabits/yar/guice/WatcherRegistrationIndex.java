@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar.guice;
+
+import com.google.common.collect.ImmutableList;
+import org.javabits.yar.Id;
+import org.javabits.yar.IdMatcher;
+import org.javabits.yar.IdMatchers;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.javabits.yar.guice.Reflections.getRawType;
+
+/**
+ * Index of the watcher registrations used to dispatch the supplier events.
+ * The watchers are bucketed regarding their matcher:
+ * <ul>
+ * <li>the equality matchers ({@link IdMatchers#newIdMatcher(Id)}) by their exact id,</li>
+ * <li>the type matchers ({@link IdMatchers#newTypeMatcher(Id)}) by their full generic type,</li>
+ * <li>the other matchers, whose predicate is opaque, by the raw type of their id.</li>
+ * </ul>
+ * Therefore an event on a supplier only visits the watchers that can match its id instead of
+ * all the watchers of its raw type. The buckets are immutable lists replaced on each update.
+ *
+ * @author Romain Gilles
+ */
+class WatcherRegistrationIndex {
+    private final ConcurrentMap<Id<?>, ImmutableList<WatcherRegistration<?>>> byId = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Type, ImmutableList<WatcherRegistration<?>>> byType = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<?>, ImmutableList<WatcherRegistration<?>>> residualByRawType = new ConcurrentHashMap<>();
+
+    void add(WatcherRegistration<?> watcherRegistration) {
+        IdMatcher<?> matcher = watcherRegistration.left();
+        Id<?> id = matcher.id();
+        if (matcher instanceof IdMatchers.IdEqualityMatcher) {
+            add(byId, id, watcherRegistration);
+        } else if (matcher instanceof IdMatchers.TypeMatcher) {
+            add(byType, id.type(), watcherRegistration);
+        } else {
+            add(residualByRawType, getRawType(id.type()), watcherRegistration);
+        }
+    }
+
+    boolean remove(WatcherRegistration<?> watcherRegistration) {
+        IdMatcher<?> matcher = watcherRegistration.left();
+        Id<?> id = matcher.id();
+        if (matcher instanceof IdMatchers.IdEqualityMatcher) {
+            return remove(byId, id, watcherRegistration);
+        } else if (matcher instanceof IdMatchers.TypeMatcher) {
+            return remove(byType, id.type(), watcherRegistration);
+        } else {
+            return remove(residualByRawType, getRawType(id.type()), watcherRegistration);
+        }
+    }
+
+    /**
+     * Remove all the watchers registered on the given raw type.
+     */
+    void invalidate(Class<?> rawType) {
+        byId.keySet().removeIf(id -> rawType.equals(getRawType(id.type())));
+        byType.keySet().removeIf(type -> rawType.equals(getRawType(type)));
+        residualByRawType.remove(rawType);
+    }
+
+    /**
+     * Returns the watchers that can match the given supplier id.
+     */
+    List<WatcherRegistration<?>> candidates(Id<?> id) {
+        List<WatcherRegistration<?>> exactWatchers = get(byId, id);
+        List<WatcherRegistration<?>> typeWatchers = get(byType, id.type());
+        List<WatcherRegistration<?>> residualWatchers = get(residualByRawType, getRawType(id.type()));
+        if (typeWatchers.isEmpty() && residualWatchers.isEmpty()) {
+            return exactWatchers;
+        }
+        return ImmutableList.<WatcherRegistration<?>>builder()
+                .addAll(exactWatchers).addAll(typeWatchers).addAll(residualWatchers).build();
+    }
+
+    private static <K> void add(ConcurrentMap<K, ImmutableList<WatcherRegistration<?>>> bucket, K key, WatcherRegistration<?> watcherRegistration) {
+        bucket.merge(key, ImmutableList.of(watcherRegistration)
+                , (registrations, added) -> ImmutableList.<WatcherRegistration<?>>builder().addAll(registrations).addAll(added).build());
+    }
+
+    private static <K> boolean remove(ConcurrentMap<K, ImmutableList<WatcherRegistration<?>>> bucket, K key, WatcherRegistration<?> watcherRegistration) {
+        boolean[] removed = new boolean[1];
+        bucket.computeIfPresent(key, (k, registrations) -> {
+            int index = registrations.indexOf(watcherRegistration);
+            if (index < 0) {
+                return registrations;
+            }
+            removed[0] = true;
+            if (registrations.size() == 1) {
+                return null;
+            }
+            return ImmutableList.<WatcherRegistration<?>>builder()
+                    .addAll(registrations.subList(0, index))
+                    .addAll(registrations.subList(index + 1, registrations.size())).build();
+        });
+        return removed[0];
+    }
+
+    private static <K> List<WatcherRegistration<?>> get(ConcurrentMap<K, ImmutableList<WatcherRegistration<?>>> bucket, K key) {
+        ImmutableList<WatcherRegistration<?>> registrations = bucket.get(key);
+        return registrations == null ? ImmutableList.of() : registrations;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2013 Romain Gilles
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.javabits.yar.guice;
+
+import org.javabits.yar.IdMatcher;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Listener update task that notifies a single watcher.
+ * The execution strategies can use its key to keep the order of the tasks of a watcher.
+ *
+ * @author Romain Gilles
+ * @see ExecutionStrategy.Type#KEYED
+ */
+interface WatcherTask extends Callable<Void> {
+
+    /**
+     * Returns the key of the notified watcher, the tasks with equal keys target the same watcher.
+     */
+    Object key();
+
+    /**
+     * Returns the matcher of the notified watcher, used to report the task.
+     */
+    IdMatcher<?> matcher();
+}
@@ -14,14 +14,17 @@
 
 package org.javabits.yar.guice;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static org.javabits.yar.Registry.DEFAULT_TIMEOUT;
 import static org.javabits.yar.Registry.DEFAULT_TIME_UNIT;
 import static org.javabits.yar.guice.AbstractExecutionStrategy.newExecutionStrategy;
 import static org.javabits.yar.guice.ExecutionStrategy.Type;
+import static org.javabits.yar.guice.ExecutionStrategy.Type.KEYED;
 import static org.javabits.yar.guice.ExecutionStrategy.Type.PARALLEL;
 import static org.javabits.yar.guice.ExecutionStrategy.Type.SERIALIZED;
+import static org.javabits.yar.guice.ExecutionStrategy.Type.VIRTUAL;
 
 import java.util.Collections;
 import java.util.List;
@@ -142,10 +145,20 @@ public final class YarGuices {
     }
 
     public static class Builder {
-        private ExecutionStrategy executionStrategy;
+        private Type executionStrategy;
+        private boolean batchedListenerUpdate;
         private long timeout = DEFAULT_TIMEOUT;
         private TimeUnit unit = DEFAULT_TIME_UNIT;
         private BlockingSupplierFactory blockingSupplierFactory = new DefaultBlockingSupplierFactory();
+        private int actionHandlerLanes = RegistryActionPipeline.DEFAULT_LANES;
+        private int actionGroupSize = RegistryActionPipeline.NO_GROUP_COMMIT;
+        private boolean virtualThreads;
+        private boolean sharedBlockingSuppliers;
+        private int actionQueueCapacity = RegistryActionPipeline.UNBOUNDED;
+        private int listenerQueueCapacity = RegistryActionPipeline.UNBOUNDED;
+        private BackpressurePolicy backpressurePolicy = BackpressurePolicy.BLOCK;
+        private boolean stuckListenerRecovery;
+        private boolean registerMetrics;
 
         /**
          * Set the timeout value to use when executing concurrent methods (e.g. {@code Future},
@@ -201,6 +214,20 @@ public final class YarGuices {
             return listenerUpdateExecutionStrategy(PARALLEL);
         }
 
+        /**
+         * Enable the keyed update of the {@link org.javabits.yar.Watcher} and
+         * {@link org.javabits.yar.SupplierListener} on {@link Registry} state change. The updates
+         * of different listeners are executed in parallel on a pool bounded by the number of
+         * processors whereas the updates of a given listener are executed one after the other in
+         * the order of the registry state changes. Therefore a slow listener does not delay the
+         * others and a listener never sees a removal before the corresponding addition.
+         *
+         * @return this {@code Builder}
+         */
+        public Builder keyedListenerUpdate() {
+            return listenerUpdateExecutionStrategy(KEYED);
+        }
+
         /**
          * Set the execution strategy to apply on registry watcher / listener when un mutation
          * action is executed on the registry. The default strategy is a parallel execution.
@@ -210,11 +237,28 @@ public final class YarGuices {
          * @return this {@code Builder}
          * @see #parallelListenerUpdate()
          * @see #serializedListenerUpdate()
+         * @see #keyedListenerUpdate()
          */
         public Builder listenerUpdateExecutionStrategy(Type executionStrategy) {
             checkExecutionStrategy();
             checkNotNull(executionStrategy, "executionStrategy");
-            this.executionStrategy = newExecutionStrategy(executionStrategy);
+            this.executionStrategy = executionStrategy;
+            return this;
+        }
+
+        /**
+         * Submit the {@link org.javabits.yar.Watcher} and {@link org.javabits.yar.SupplierListener}
+         * updates of a registry state change as one job to the listener update execution strategy
+         * instead of one job per listener. The listeners of a same state change are then called one
+         * after the other, even with the parallel strategy, but the dispatch overhead per listener
+         * is removed. It can be combined with any listener update execution strategy but the keyed
+         * one that already dispatches the updates by listener.
+         *
+         * @return this {@code Builder}
+         * @see #listenerUpdateExecutionStrategy(Type)
+         */
+        public Builder batchedListenerUpdate() {
+            this.batchedListenerUpdate = true;
             return this;
         }
 
@@ -251,16 +295,179 @@ public final class YarGuices {
             return this;
         }
 
+        /**
+         * Share the blocking suppliers returned by the registry: all the lookups of a given
+         * {@code Id} return the same {@link org.javabits.yar.BlockingSupplier} as long as a caller
+         * holds it. Therefore repeated lookups do not add a new listener to the registry on each
+         * call. The suppliers are still created by the blocking supplier strategy.
+         *
+         * @return this {@code Builder}
+         * @see #blockingSupplierStrategy(BlockingSupplierFactory)
+         * @see SharedBlockingSupplierFactory
+         */
+        public Builder sharedBlockingSuppliers() {
+            this.sharedBlockingSuppliers = true;
+            return this;
+        }
+
+        /**
+         * Set the number of lanes used to execute the registry mutations (put, remove, watcher
+         * add / remove, type invalidation). Each lane is drained by its own handler thread and
+         * the actions are routed to a lane regarding the erased type of their {@code Id}.
+         * Therefore the actions on a given type are still executed in order whereas the actions on
+         * unrelated types can proceed in parallel. The default value is {@code 1}: all the
+         * mutations are executed by a single {@code yar-action-handler} thread.
+         *
+         * @param actionHandlerLanes
+         *            the number of action handler lanes, must be strictly positive.
+         * @return this {@code Builder}
+         */
+        public Builder actionHandlerLanes(int actionHandlerLanes) {
+            checkArgument(actionHandlerLanes > 0, "actionHandlerLanes must be strictly positive: %s", actionHandlerLanes);
+            this.actionHandlerLanes = actionHandlerLanes;
+            return this;
+        }
+
+        /**
+         * Enable the group commit of the registry mutations. Instead of taking the pending
+         * actions one by one, each action handler drains up to {@code maxGroupSize} actions and
+         * commits them together: the actions that cancel each other out (e.g. a supplier added
+         * and removed inside the same group) are coalesced, and the watcher / listener updates
+         * of the whole group are handed to the listener execution strategy as one batch. The
+         * futures of the grouped actions are completed once the whole group is committed.
+         *
+         * @param maxGroupSize
+         *            the maximum number of actions committed together, {@code 1} disables the
+         *            group commit (default).
+         * @return this {@code Builder}
+         */
+        public Builder groupCommit(int maxGroupSize) {
+            checkArgument(maxGroupSize > 0, "maxGroupSize must be strictly positive: %s", maxGroupSize);
+            this.actionGroupSize = maxGroupSize;
+            return this;
+        }
+
+        /**
+         * Run the registry threads on virtual threads: the action handler lanes and the
+         * {@link Type#VIRTUAL} listener update strategy where each watcher / listener update
+         * runs on its own virtual thread. Therefore the listener updates that wait on not yet
+         * available suppliers do not pin platform threads. If the running JVM does not support
+         * virtual threads then platform threads are used.
+         * <p>This option defines the listener update execution strategy, it cannot be combined
+         * with another one.</p>
+         *
+         * @return this {@code Builder}
+         * @see #listenerUpdateExecutionStrategy(Type)
+         */
+        public Builder virtualThreads() {
+            listenerUpdateExecutionStrategy(VIRTUAL);
+            this.virtualThreads = true;
+            return this;
+        }
+
+        /**
+         * Bound the number of pending registry actions per action handler lane. When a lane is full
+         * the {@link #backpressurePolicy(BackpressurePolicy) backpressure policy} is applied to the
+         * caller of the mutation method. The queues are unbounded by default.
+         *
+         * @param capacity the maximum number of pending actions per lane, must be strictly positive.
+         * @return this {@code Builder}
+         * @see #actionHandlerLanes(int)
+         */
+        public Builder actionQueueCapacity(int capacity) {
+            checkArgument(capacity > 0, "capacity must be strictly positive: %s", capacity);
+            this.actionQueueCapacity = capacity;
+            return this;
+        }
+
+        /**
+         * Bound the number of queued {@link org.javabits.yar.Watcher} and
+         * {@link org.javabits.yar.SupplierListener} updates of the serialized listener update
+         * execution strategy, the other strategies do not queue the updates. When the queue is full
+         * the {@link #backpressurePolicy(BackpressurePolicy) backpressure policy} is applied to the
+         * action handler that submits the updates. The queue is unbounded by default.
+         *
+         * @param capacity the maximum number of queued listener updates, must be strictly positive.
+         * @return this {@code Builder}
+         * @see #serializedListenerUpdate()
+         */
+        public Builder listenerQueueCapacity(int capacity) {
+            checkArgument(capacity > 0, "capacity must be strictly positive: %s", capacity);
+            this.listenerQueueCapacity = capacity;
+            return this;
+        }
+
+        /**
+         * Set the policy applied when the action queue or the listener queue is full. The default
+         * policy is {@link BackpressurePolicy#BLOCK}.
+         *
+         * @param backpressurePolicy the policy to apply on a full queue.
+         * @return this {@code Builder}
+         * @see #actionQueueCapacity(int)
+         * @see #listenerQueueCapacity(int)
+         */
+        public Builder backpressurePolicy(BackpressurePolicy backpressurePolicy) {
+            this.backpressurePolicy = checkNotNull(backpressurePolicy, "backpressurePolicy");
+            return this;
+        }
+
+        /**
+         * Recover the serialized listener update execution strategy from a stuck
+         * {@link org.javabits.yar.Watcher} or {@link org.javabits.yar.SupplierListener}. When an update
+         * does not complete within the registry {@link #timeout(long) timeout} the pending updates are
+         * moved to a new thread, so the other listeners keep receiving the registry events. The
+         * overrunning updates are always reported, whether this option is enabled or not.
+         *
+         * @return this {@code Builder}
+         * @see #serializedListenerUpdate()
+         */
+        public Builder stuckListenerRecovery() {
+            this.stuckListenerRecovery = true;
+            return this;
+        }
+
+        /**
+         * Publish the {@link RegistryMetrics metrics} of the built registry into the platform
+         * MBean server under the {@link RegistryMetrics#OBJECT_NAME} name. Only one registry
+         * can publish its metrics in a JVM.
+         *
+         * @return this {@code Builder}
+         * @see RegistryMetrics#of(Registry)
+         */
+        public Builder registerMetrics() {
+            this.registerMetrics = true;
+            return this;
+        }
+
         public BlockingSupplierRegistry build() {
-            return BlockingSupplierRegistryImpl.newLoadingCacheBlockingSupplierRegistry(
-                    executionStrategy, timeout, unit, blockingSupplierFactory);
+            ExecutionStrategy listenerUpdateExecutionStrategy = newExecutionStrategy(executionStrategy != null
+                    ? executionStrategy : SERIALIZED, batchedListenerUpdate, listenerQueueCapacity, backpressurePolicy, timeout, unit, stuckListenerRecovery);
+            BlockingSupplierRegistry registry = BlockingSupplierRegistryImpl.newLoadingCacheBlockingSupplierRegistry(
+                    listenerUpdateExecutionStrategy, timeout, unit, sharedBlockingSuppliers
+                            ? new SharedBlockingSupplierFactory(blockingSupplierFactory) : blockingSupplierFactory,
+                    new RegistryActionPipeline(actionHandlerLanes, actionGroupSize, virtualThreads
+                            ? VirtualThreads.newThreadFactory(RegistryActionPipeline.HANDLER_THREAD_NAME)
+                            : RegistryActionPipeline.PLATFORM_THREAD_FACTORY, actionQueueCapacity, backpressurePolicy));
+            if (registerMetrics) {
+                RegistryMetrics.of(registry).register();
+            }
+            return registry;
         }
 
         @Override
         public String toString() {
             return "Builder{" + "executionStrategy=" + executionStrategy + ", timeout=" + timeout
                     + ", unit=" + unit + ", blockingSupplierFactory=" + blockingSupplierFactory
-                    + '}';
+                    + ", actionHandlerLanes=" + actionHandlerLanes
+                    + ", actionGroupSize=" + actionGroupSize
+                    + ", batchedListenerUpdate=" + batchedListenerUpdate
+                    + ", virtualThreads=" + virtualThreads
+                    + ", sharedBlockingSuppliers=" + sharedBlockingSuppliers
+                    + ", actionQueueCapacity=" + actionQueueCapacity
+                    + ", listenerQueueCapacity=" + listenerQueueCapacity
+                    + ", backpressurePolicy=" + backpressurePolicy
+                    + ", stuckListenerRecovery=" + stuckListenerRecovery
+                    + ", registerMetrics=" + registerMetrics + '}';
         }
     }
 }
@@ -0,0 +1,115 @@
+package org.javabits.yar.guice;
+
+import com.google.inject.name.Names;
+import org.javabits.yar.BatchWatcher;
+import org.javabits.yar.Id;
+import org.javabits.yar.Ids;
+import org.javabits.yar.Registration;
+import org.javabits.yar.Supplier;
+import org.javabits.yar.Watcher;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.javabits.yar.IdMatchers.newIdMatcher;
+import static org.javabits.yar.IdMatchers.newTypeMatcher;
+import static org.javabits.yar.guice.SimpleRegistry.newLoadingCacheRegistry;
+
+/**
+ * @author Romain Gilles
+ */
+public class BatchWatcherTest {
+
+    @Test
+    public void testInitialReplayInOneCall() throws Exception {
+        SimpleRegistry registry = newLoadingCacheRegistry();
+        Id<String> id = Ids.newId(String.class);
+        for (int i = 0; i < 100; i++) {
+            registry.put(id, () -> "value");
+        }
+        RecordingBatchWatcher batchWatcher = new RecordingBatchWatcher();
+        registry.addWatcher(newIdMatcher(id), batchWatcher);
+        final List<Supplier<String>> added = new CopyOnWriteArrayList<>();
+        Watcher<String> watcher = new Watcher<String>() {
+            @Override
+            public Supplier<String> add(Supplier<String> element) {
+                added.add(element);
+                return element;
+            }
+
+            @Override
+            public void remove(Supplier<String> element) {
+            }
+        };
+        registry.addWatcher(newIdMatcher(id), watcher);
+        assertThat(registry.awaitListenerQuiescence(5, SECONDS), is(true));
+
+        assertThat(batchWatcher.calls, hasSize(1));
+        assertThat(batchWatcher.calls.get(0), is("addAll:100"));
+        assertThat(added, hasSize(100));
+    }
+
+    @Test
+    public void testBurstInOneCall() throws Exception {
+        SimpleRegistry registry = newLoadingCacheRegistry();
+        RecordingBatchWatcher batchWatcher = new RecordingBatchWatcher();
+        registry.addWatcher(newTypeMatcher(Ids.newId(String.class)), batchWatcher);
+        Map<Id<?>, java.util.function.Supplier<?>> suppliers = new LinkedHashMap<>();
+        for (int i = 0; i < 10; i++) {
+            suppliers.put(Ids.newId(String.class, Names.named("supplier" + i)), () -> "value");
+        }
+        suppliers.put(Ids.newId(Integer.class), () -> 1);
+        List<Registration<?>> registrations = registry.putAll(suppliers);
+        for (Registration<?> registration : registrations) {
+            registration.propagation().toCompletableFuture().get(5, SECONDS);
+        }
+        assertThat(batchWatcher.calls, contains("addAll:10"));
+        assertThat(batchWatcher.tracked, hasSize(10));
+
+        registry.removeAll(registrations);
+        for (Registration<?> registration : registrations) {
+            registration.propagation().toCompletableFuture().get(5, SECONDS);
+        }
+        assertThat(batchWatcher.calls, contains("addAll:10", "removeAll:10"));
+        assertThat(batchWatcher.tracked, hasSize(0));
+    }
+
+    private static class RecordingBatchWatcher implements BatchWatcher<String> {
+        final List<String> calls = new CopyOnWriteArrayList<>();
+        final List<Supplier<String>> tracked = new CopyOnWriteArrayList<>();
+
+        @Override
+        public List<Supplier<String>> addAll(List<Supplier<String>> elements) {
+            calls.add("addAll:" + elements.size());
+            tracked.addAll(elements);
+            return elements;
+        }
+
+        @Override
+        public void removeAll(List<Supplier<String>> elements) {
+            calls.add("removeAll:" + elements.size());
+            tracked.removeAll(elements);
+        }
+
+        @Override
+        public Supplier<String> add(Supplier<String> element) {
+            calls.add("add");
+            tracked.add(element);
+            return element;
+        }
+
+        @Override
+        public void remove(Supplier<String> element) {
+            calls.add("remove");
+            tracked.remove(element);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.javabits.yar.guice;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.javabits.yar.SupplierEvent.Type.ADD;
 import static org.javabits.yar.SupplierEvent.Type.REMOVE;
 
@@ -104,6 +105,30 @@ public class BlockingSupplierImplTest {
         assertThat(getNativeSupplier(blockingSupplier), is(supplier1));
     }
 
+    @Test
+    public void testStaleAddAfterRemoveIsDiscarded() {
+        // given a null supplier
+        BlockingSupplierImpl<MyInterface> blockingSupplier = newBlockingSupplier();
+        // when the removal of a supplier is delivered before its addition
+        blockingSupplier.supplierChanged(new SupplierEvent(REMOVE, supplier1, 2));
+        blockingSupplier.supplierChanged(new SupplierEvent(ADD, supplier1, 1));
+        // then the removed supplier must not be returned
+        assertThat(getNativeSupplier(blockingSupplier), is(nullValue()));
+    }
+
+    @Test
+    public void testRemoveDeliveredAfterNextAdd() {
+        // given a null supplier
+        BlockingSupplierImpl<MyInterface> blockingSupplier = newBlockingSupplier();
+        // when a supplier is replaced but its removal is delivered after the next addition
+        blockingSupplier.supplierChanged(new SupplierEvent(ADD, supplier1, 1));
+        Mockito.when(registry.getDirectly(ID)).thenReturn(supplier2);
+        blockingSupplier.supplierChanged(new SupplierEvent(ADD, supplier2, 3));
+        blockingSupplier.supplierChanged(new SupplierEvent(REMOVE, supplier1, 2));
+        // then the 2nd supplier must be returned
+        assertThat(getNativeSupplier(blockingSupplier), is(supplier2));
+    }
+
     private BlockingSupplierImpl<MyInterface> newBlockingSupplier() {
         return new BlockingSupplierImpl<>(ID, registry);
     }
@@ -0,0 +1,127 @@
+package org.javabits.yar.guice;
+
+import com.google.inject.name.Names;
+import org.javabits.yar.Id;
+import org.javabits.yar.Ids;
+import org.javabits.yar.Registration;
+import org.javabits.yar.Supplier;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.javabits.yar.guice.SimpleRegistry.newLoadingCacheRegistry;
+
+/**
+ * @author Romain Gilles
+ */
+public class CachedLookupTest {
+    private SimpleRegistry registry;
+
+    @Before
+    public void setUp() {
+        registry = newLoadingCacheRegistry();
+    }
+
+    @Test
+    public void testVersions() {
+        Id<String> id = Ids.newId(String.class);
+        long registryVersion = registry.version();
+        long absentTypeVersion = registry.version(String.class);
+
+        Registration<String> registration = registry.put(id, () -> "test");
+        long typeVersion = registry.version(String.class);
+        assertThat(registry.version(), is(greaterThan(registryVersion)));
+        assertThat(typeVersion, is(greaterThan(absentTypeVersion)));
+
+        registry.put(Ids.newId(Integer.class), () -> 1);
+        assertThat(registry.version(String.class), is(typeVersion));
+
+        registry.remove(registration);
+        // a removed type does not take back a previous version
+        assertThat(registry.version(String.class), is(greaterThan(typeVersion)));
+    }
+
+    @Test
+    public void testGetAllCached() {
+        Id<String> id = Ids.newId(String.class);
+        CachedLookup<List<Supplier<String>>> lookup = CachedLookup.getAll(registry, id);
+        List<Supplier<String>> empty = lookup.get();
+        assertThat(empty, is(empty()));
+        assertThat(lookup.get(), is(sameInstance(empty)));
+
+        Registration<String> registration = registry.put(id, () -> "test");
+        List<Supplier<String>> suppliers = lookup.get();
+        assertThat(suppliers, hasSize(1));
+        assertThat(lookup.get(), is(sameInstance(suppliers)));
+
+        // the writes on another type do not invalidate the result
+        registry.put(Ids.newId(Integer.class), () -> 1);
+        assertThat(lookup.get(), is(sameInstance(suppliers)));
+
+        registry.put(Ids.newId(String.class, Names.named("test")), () -> "named");
+        assertThat(lookup.get(), hasSize(2));
+
+        registry.remove(registration);
+        assertThat(lookup.get(), hasSize(1));
+    }
+
+    @Test
+    public void testGetCached() {
+        Id<String> id = Ids.newId(String.class, Names.named("test"));
+        CachedLookup<Supplier<String>> lookup = CachedLookup.get(registry, id);
+        assertThat(lookup.get(), is(nullValue()));
+
+        Registration<String> registration = registry.put(id, () -> "test");
+        Supplier<String> supplier = lookup.get();
+        assertThat(supplier.get(), is("test"));
+        assertThat(lookup.get(), is(sameInstance(supplier)));
+
+        registry.remove(registration);
+        assertThat(lookup.get(), is(nullValue()));
+    }
+
+    @Test
+    public void testConcurrentWritesOnOtherType() throws Exception {
+        final Id<String> id = Ids.newId(String.class);
+        final CachedLookup<List<Supplier<String>>> lookup = CachedLookup.getAll(registry, id);
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        ExecutorService executorService = Executors.newFixedThreadPool(3);
+        try {
+            Future<?> reader = executorService.submit(() -> {
+                while (writing.get()) {
+                    lookup.get();
+                }
+            });
+            Future<?> otherTypeWriter = executorService.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    registry.remove(registry.put(Ids.newId(Long.class), () -> 1L));
+                }
+            });
+            Future<?> typeWriter = executorService.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    registry.remove(registry.put(id, () -> "transient"));
+                }
+            });
+            typeWriter.get(30, SECONDS);
+            otherTypeWriter.get(30, SECONDS);
+            // the last write, still concurrent with the reader
+            registry.put(id, () -> "last");
+            writing.set(false);
+            reader.get(30, SECONDS);
+        } finally {
+            writing.set(false);
+            executorService.shutdownNow();
+        }
+        // no write is pending, a cached result must reflect the last one
+        assertThat(lookup.get(), hasSize(1));
+    }
+}
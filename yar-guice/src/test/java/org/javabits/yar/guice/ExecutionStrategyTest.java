@@ -17,17 +17,28 @@
 package org.javabits.yar.guice;
 
 import com.google.common.collect.ImmutableList;
+import org.javabits.yar.IdMatcher;
+import org.javabits.yar.RegistryException;
 import org.javabits.yar.RegistryHook;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
 import static org.javabits.yar.guice.AbstractExecutionStrategy.newExecutionStrategy;
+import static org.javabits.yar.guice.ExecutionStrategy.Type.KEYED;
 import static org.javabits.yar.guice.ExecutionStrategy.Type.PARALLEL;
 import static org.javabits.yar.guice.ExecutionStrategy.Type.SAME_THREAD;
 import static org.javabits.yar.guice.ExecutionStrategy.Type.SERIALIZED;
@@ -82,6 +93,157 @@ public class ExecutionStrategyTest {
         assertThat(endOfTaskBarrier.await(5, MILLISECONDS), is(true));
     }
 
+    @Test
+    public void testExecute_Batched() throws Exception {
+        ExecutionStrategy executionStrategy = newExecutionStrategy(PARALLEL, true);
+        final CountDownLatch countDownLatch = new CountDownLatch(1);
+        final List<Integer> executions = new CopyOnWriteArrayList<>();
+        Callable<Void> barrierCallable = () -> {
+            countDownLatch.await();
+            executions.add(0);
+            return null;
+        };
+        Callable<Void> failingCallable = () -> {
+            throw new IllegalStateException("test");
+        };
+        Callable<Void> lastCallable = () -> {
+            executions.add(1);
+            return null;
+        };
+
+        executionStrategy.execute(ImmutableList.of(barrierCallable, failingCallable, lastCallable), 5, MILLISECONDS);
+        assertThat(executionStrategy.hasPendingTasks(), is(true));
+        final CountDownLatch endOfTaskBarrier = new CountDownLatch(1);
+        executionStrategy.addEndOfListenerUpdateTasksListener(endOfTaskBarrier::countDown);
+        assertThat(endOfTaskBarrier.getCount(), is(1L));
+        countDownLatch.countDown();
+        assertThat(endOfTaskBarrier.await(5, SECONDS), is(true));
+        assertThat(executions, contains(0, 1));
+        assertThat(executionStrategy.hasPendingTasks(), is(false));
+    }
+
+    @Test
+    public void testExecute_KeyedOrderedPerKey() throws Exception {
+        ExecutionStrategy executionStrategy = newExecutionStrategy(KEYED);
+        final CountDownLatch blockedKeyLatch = new CountDownLatch(1);
+        final List<Integer> blockedKeyExecutions = new CopyOnWriteArrayList<>();
+        final CountDownLatch otherKeyExecuted = new CountDownLatch(1);
+        ImmutableList.Builder<Callable<Void>> tasks = ImmutableList.builder();
+        tasks.add(newWatcherTask("blocked", () -> {
+            blockedKeyLatch.await();
+            blockedKeyExecutions.add(0);
+        }));
+        for (int i = 1; i < 100; i++) {
+            final int index = i;
+            tasks.add(newWatcherTask("blocked", () -> blockedKeyExecutions.add(index)));
+        }
+        tasks.add(newWatcherTask("other", otherKeyExecuted::countDown));
+
+        executionStrategy.execute(tasks.build(), 5, MILLISECONDS);
+        // the other key is not delayed by the blocked one
+        assertThat(otherKeyExecuted.await(5, SECONDS), is(true));
+        assertThat(blockedKeyExecutions, is(empty()));
+        final CountDownLatch endOfTaskBarrier = new CountDownLatch(1);
+        executionStrategy.addEndOfListenerUpdateTasksListener(endOfTaskBarrier::countDown);
+        blockedKeyLatch.countDown();
+        assertThat(endOfTaskBarrier.await(5, SECONDS), is(true));
+        assertThat(blockedKeyExecutions, hasSize(100));
+        for (int i = 0; i < 100; i++) {
+            assertThat(blockedKeyExecutions.get(i), is(i));
+        }
+    }
+
+    @Test
+    public void testExecute_RejectOnFullListenerQueue() throws Exception {
+        AbstractExecutionStrategy executionStrategy = (AbstractExecutionStrategy) newExecutionStrategy(SERIALIZED, false, 1, BackpressurePolicy.REJECT, 5, SECONDS, false);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch countDownLatch = new CountDownLatch(1);
+        Callable<Void> barrierCallable = () -> {
+            started.countDown();
+            countDownLatch.await();
+            return null;
+        };
+        executionStrategy.execute(ImmutableList.of(barrierCallable), 5, SECONDS);
+        assertThat(started.await(5, SECONDS), is(true));
+        executionStrategy.execute(ImmutableList.of(newDummyCallable()), 5, SECONDS);
+        try {
+            executionStrategy.execute(ImmutableList.of(newDummyCallable()), 5, SECONDS);
+            fail("the listener queue is full");
+        } catch (RegistryException e) {
+            // expected
+        } finally {
+            countDownLatch.countDown();
+        }
+        assertThat(executionStrategy.pendingTasksHighWaterMark(), is(2L));
+    }
+
+    @Test
+    public void testExecute_StuckWorkerRecovery() throws Exception {
+        AbstractExecutionStrategy executionStrategy = (AbstractExecutionStrategy) newExecutionStrategy(SERIALIZED, false, 16, BackpressurePolicy.BLOCK, 5, SECONDS, true);
+        final CountDownLatch stuckLatch = new CountDownLatch(1);
+        final CountDownLatch nextExecuted = new CountDownLatch(1);
+        try {
+            executionStrategy.execute(ImmutableList.of(newWatcherTask("stuck", stuckLatch::await)
+                    , newWatcherTask("next", nextExecuted::countDown)), 100, MILLISECONDS);
+            assertThat(nextExecuted.await(5, SECONDS), is(true));
+            assertThat(executionStrategy.overrunTasks(), is(1L));
+        } finally {
+            stuckLatch.countDown();
+        }
+    }
+
+    @Test
+    public void testExecute_StuckWorkerRecoveryKeepsOrder() throws Exception {
+        AbstractExecutionStrategy executionStrategy = (AbstractExecutionStrategy) newExecutionStrategy(SERIALIZED, false, 16, BackpressurePolicy.REJECT, 5, SECONDS, true);
+        final CountDownLatch stuckLatch = new CountDownLatch(1);
+        final CountDownLatch allExecuted = new CountDownLatch(4);
+        final List<String> executed = new CopyOnWriteArrayList<>();
+        try {
+            executionStrategy.execute(ImmutableList.of(newWatcherTask("stuck", stuckLatch::await)
+                    , newWatcherTask("a", () -> record(executed, "a", allExecuted))
+                    , newWatcherTask("b", () -> record(executed, "b", allExecuted))), 100, MILLISECONDS);
+            executionStrategy.execute(ImmutableList.of(newWatcherTask("c", () -> record(executed, "c", allExecuted))), 100, MILLISECONDS);
+            for (long deadline = System.nanoTime() + SECONDS.toNanos(5); executionStrategy.overrunTasks() == 0 && System.nanoTime() < deadline; ) {
+                Thread.sleep(10);
+            }
+            executionStrategy.execute(ImmutableList.of(newWatcherTask("d", () -> record(executed, "d", allExecuted))), 100, MILLISECONDS);
+            assertThat(allExecuted.await(5, SECONDS), is(true));
+            assertThat(executed, contains("a", "b", "c", "d"));
+        } finally {
+            stuckLatch.countDown();
+        }
+        assertThat(executionStrategy.awaitQuiescence(5, SECONDS), is(true));
+    }
+
+    private static void record(List<String> executed, String task, CountDownLatch latch) {
+        executed.add(task);
+        latch.countDown();
+    }
+
+    private static WatcherTask newWatcherTask(final Object key, final InterruptibleRunnable runnable) {
+        return new WatcherTask() {
+            @Override
+            public Object key() {
+                return key;
+            }
+
+            @Override
+            public IdMatcher<?> matcher() {
+                return null;
+            }
+
+            @Override
+            public Void call() throws Exception {
+                runnable.run();
+                return null;
+            }
+        };
+    }
+
+    private interface InterruptibleRunnable {
+        void run() throws InterruptedException;
+    }
+
     private void executeAblockinglistOfTask(ExecutionStrategy executionStrategy) throws InterruptedException {
         final CountDownLatch countDownLatch = new CountDownLatch(1);
         Callable<Void> barrierCallable = new Callable<Void>() {
@@ -106,6 +268,67 @@ public class ExecutionStrategyTest {
         assertThat(endOfTaskBarrier.await(5, MILLISECONDS), is(true));
     }
 
+    @Test
+    public void testThreadPerTaskReleasesItsTrackingSlot() throws Exception {
+        AbstractExecutionStrategy executionStrategy = new AbstractExecutionStrategy() {
+            private final Executor executor = task -> new Thread(task).start();
+
+            @Override
+            Executor executor() {
+                return executor;
+            }
+
+            @Override
+            boolean threadPerTask() {
+                return true;
+            }
+        };
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            tasks.add(newDummyCallable());
+        }
+        executionStrategy.execute(tasks, 5, SECONDS);
+        assertThat(executionStrategy.awaitQuiescence(5, SECONDS), is(true));
+        assertThat(executionStrategy.trackedThreads(), is(0));
+    }
+
+    @Test
+    public void testAwaitQuiescence() throws Exception {
+        for (ExecutionStrategy.Type type : ImmutableList.of(PARALLEL, SERIALIZED, KEYED)) {
+            ExecutionStrategy executionStrategy = newExecutionStrategy(type);
+            assertThat(executionStrategy.awaitQuiescence(0, MILLISECONDS), is(true));
+            final CountDownLatch countDownLatch = new CountDownLatch(1);
+            Callable<Void> barrierCallable = () -> {
+                countDownLatch.await();
+                return null;
+            };
+            executionStrategy.execute(ImmutableList.of(newDummyCallable(), barrierCallable), 5, SECONDS);
+            assertThat(executionStrategy.awaitQuiescence(20, MILLISECONDS), is(false));
+            countDownLatch.countDown();
+            assertThat(executionStrategy.awaitQuiescence(5, SECONDS), is(true));
+            assertThat(executionStrategy.hasPendingTasks(), is(false));
+        }
+    }
+
+    @Test
+    public void testWhenQuiescentSharedByWaiters() throws Exception {
+        ExecutionStrategy executionStrategy = newExecutionStrategy(SERIALIZED);
+        final CountDownLatch countDownLatch = new CountDownLatch(1);
+        executionStrategy.execute(ImmutableList.of(() -> {
+            countDownLatch.await();
+            return null;
+        }), 5, SECONDS);
+        final CountDownLatch waiters = new CountDownLatch(10_000);
+        for (int i = 0; i < 10_000; i++) {
+            executionStrategy.whenQuiescent().thenRun(waiters::countDown);
+        }
+        assertThat(waiters.getCount(), is(10_000L));
+        countDownLatch.countDown();
+        assertThat(waiters.await(5, SECONDS), is(true));
+        // a new busy period gets a new stage
+        assertThat(executionStrategy.whenQuiescent().toCompletableFuture().isDone(), is(true));
+    }
+
     private Callable<Void> newDummyCallable() {
         return new Callable<Void>() {
             @Override
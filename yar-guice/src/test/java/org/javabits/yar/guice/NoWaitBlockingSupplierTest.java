@@ -2,12 +2,14 @@ package org.javabits.yar.guice;
 
 import org.javabits.yar.*;
 import org.junit.Test;
+import org.mockito.Mockito;
 
 import javax.annotation.Nullable;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 import static org.javabits.yar.SupplierEvent.Type.ADD;
+import static org.javabits.yar.SupplierEvent.Type.REMOVE;
 
 /**
  * @author Romain Gilles
@@ -77,4 +79,19 @@ public class NoWaitBlockingSupplierTest {
         });
         assertThat(supplier.get(), is((MyInterface) myInterface));
     }
+
+    @Test
+    public void testStaleEventsAreDiscarded() throws Exception {
+        @SuppressWarnings("unchecked")
+        Supplier<MyInterface> supplier1 = Mockito.mock(Supplier.class);
+        @SuppressWarnings("unchecked")
+        Supplier<MyInterface> supplier2 = Mockito.mock(Supplier.class);
+        NoWaitBlockingSupplier<MyInterface> supplier = new NoWaitBlockingSupplier<>(id, null);
+        // the removal of the 1st supplier is delivered before its addition
+        supplier.supplierChanged(new SupplierEvent(REMOVE, supplier1, 2));
+        supplier.supplierChanged(new SupplierEvent(ADD, supplier1, 1));
+        assertThat(supplier.getNativeSupplier(), is(nullValue()));
+        supplier.supplierChanged(new SupplierEvent(ADD, supplier2, 3));
+        assertThat(supplier.getNativeSupplier(), is((Object) supplier2));
+    }
 }
@@ -0,0 +1,100 @@
+package org.javabits.yar.guice;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author Romain Gilles
+ */
+public class PersistentBucketTest {
+
+    @Test
+    public void testWithWithout() {
+        PersistentBucket<String> empty = PersistentBucket.empty();
+        PersistentBucket<String> one = empty.with("one");
+        PersistentBucket<String> two = one.with("two");
+        assertThat(empty.isEmpty(), is(true));
+        assertThat(one, contains("one"));
+        assertThat(two, contains("one", "two"));
+
+        PersistentBucket<String> withoutOne = two.without("one");
+        assertThat(withoutOne, contains("two"));
+        assertThat(two, contains("one", "two"));
+        assertThat(withoutOne.without("two").isEmpty(), is(true));
+    }
+
+    @Test
+    public void testUnchangedBucketIsReturned() {
+        PersistentBucket<String> bucket = PersistentBucket.<String>empty().with("one");
+        assertThat(bucket.with("one"), is(sameInstance(bucket)));
+        assertThat(bucket.without("two"), is(sameInstance(bucket)));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnmodifiable() {
+        PersistentBucket.<String>empty().with("one").add("two");
+    }
+
+    @Test
+    public void testAgainstArrayList() {
+        Random random = new Random(42);
+        PersistentBucket<Integer> bucket = PersistentBucket.empty();
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            if (expected.isEmpty() || random.nextInt(3) > 0) {
+                bucket = bucket.with(i);
+                expected.add(i);
+            } else {
+                Integer value = expected.remove(random.nextInt(expected.size()));
+                bucket = bucket.without(value);
+            }
+            if (i % 5_000 == 0) {
+                assertSameContent(bucket, expected);
+            }
+        }
+        assertSameContent(bucket, expected);
+        while (!expected.isEmpty()) {
+            bucket = bucket.without(expected.remove(random.nextInt(expected.size())));
+        }
+        assertThat(bucket.isEmpty(), is(true));
+        assertThat(bucket, is(sameInstance(PersistentBucket.<Integer>empty())));
+    }
+
+    @Test
+    public void testListIterator() {
+        PersistentBucket<Integer> bucket = PersistentBucket.empty();
+        for (int i = 0; i < 100; i++) {
+            bucket = bucket.with(i);
+        }
+        for (int i = 0; i < 100; i += 2) {
+            bucket = bucket.without(i);
+        }
+        ListIterator<Integer> iterator = bucket.listIterator(10);
+        assertThat(iterator.previous(), is(19));
+        assertThat(iterator.next(), is(19));
+        assertThat(iterator.next(), is(21));
+        assertThat(iterator.nextIndex(), is(11));
+        iterator = bucket.listIterator(bucket.size());
+        assertThat(iterator.hasNext(), is(false));
+        assertThat(iterator.previous(), is(99));
+    }
+
+    private static void assertSameContent(PersistentBucket<Integer> bucket, List<Integer> expected) {
+        assertThat(bucket.size(), is(expected.size()));
+        assertThat(bucket, is(equalTo(expected)));
+        for (int i = 0; i < expected.size(); i += 97) {
+            assertThat(bucket.get(i), is(expected.get(i)));
+            assertThat(bucket.contains(expected.get(i)), is(true));
+        }
+        List<Integer> visited = new ArrayList<>();
+        bucket.forEach((value, list) -> list.add(value), visited);
+        assertThat(visited, is(equalTo(expected)));
+    }
+}
@@ -0,0 +1,99 @@
+package org.javabits.yar.guice;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author Romain Gilles
+ */
+public class PersistentHashMapTest {
+
+    @Test
+    public void testWithWithout() {
+        PersistentHashMap<String, Integer> empty = PersistentHashMap.empty();
+        PersistentHashMap<String, Integer> one = empty.with("one", 1);
+        PersistentHashMap<String, Integer> two = one.with("two", 2);
+        assertThat(empty.isEmpty(), is(true));
+        assertThat(one.size(), is(1));
+        assertThat(two.size(), is(2));
+        assertThat(one.get("two"), is(nullValue()));
+        assertThat(two.get("one"), is(1));
+        assertThat(two.get("two"), is(2));
+
+        PersistentHashMap<String, Integer> withoutOne = two.without("one");
+        assertThat(withoutOne.size(), is(1));
+        assertThat(withoutOne.get("one"), is(nullValue()));
+        assertThat(two.get("one"), is(1));
+        assertThat(withoutOne.without("two").isEmpty(), is(true));
+    }
+
+    @Test
+    public void testUnchangedMapIsReturned() {
+        Integer value = 1;
+        PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty().with("one", value);
+        assertThat(map.with("one", value), is(sameInstance(map)));
+        assertThat(map.without("two"), is(sameInstance(map)));
+    }
+
+    @Test
+    public void testHashCollisions() {
+        PersistentHashMap<CollidingKey, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 10; i++) {
+            map = map.with(new CollidingKey(i), i);
+        }
+        assertThat(map.size(), is(10));
+        for (int i = 0; i < 10; i++) {
+            assertThat(map.get(new CollidingKey(i)), is(i));
+        }
+        for (int i = 0; i < 10; i++) {
+            map = map.without(new CollidingKey(i));
+            assertThat(map.get(new CollidingKey(i)), is(nullValue()));
+            assertThat(map.size(), is(9 - i));
+        }
+    }
+
+    @Test
+    public void testRandomOperations() {
+        Random random = new Random(42);
+        Map<Integer, Integer> expected = new HashMap<>();
+        PersistentHashMap<Integer, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 100_000; i++) {
+            Integer key = random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.without(key);
+            } else {
+                expected.put(key, i);
+                map = map.with(key, i);
+            }
+        }
+        assertThat(map.size(), is(expected.size()));
+        Map<Integer, Integer> actual = new HashMap<>();
+        map.forEach(actual::put);
+        assertThat(actual, is(expected));
+    }
+
+    private static class CollidingKey {
+        private final int value;
+
+        CollidingKey(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CollidingKey && ((CollidingKey) o).value == value;
+        }
+
+        @Override
+        public int hashCode() {
+            return 7;
+        }
+    }
+}
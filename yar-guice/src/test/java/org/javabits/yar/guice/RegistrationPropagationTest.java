@@ -0,0 +1,150 @@
+package org.javabits.yar.guice;
+
+import org.javabits.yar.Id;
+import org.javabits.yar.Ids;
+import org.javabits.yar.Registration;
+import org.javabits.yar.RegistryException;
+import org.javabits.yar.Supplier;
+import org.javabits.yar.Watcher;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+import static org.javabits.yar.IdMatchers.newIdMatcher;
+import static org.javabits.yar.guice.AbstractExecutionStrategy.newExecutionStrategy;
+import static org.javabits.yar.guice.ExecutionStrategy.Type.PARALLEL;
+import static org.javabits.yar.guice.ExecutionStrategy.Type.SERIALIZED;
+import static org.javabits.yar.guice.GuiceWatchableRegistrationContainer.newLoadingCacheGuiceWatchableRegistrationContainer;
+
+/**
+ * @author Romain Gilles
+ */
+public class RegistrationPropagationTest {
+
+    @Test
+    public void testPropagationIsNotDelayedByOtherRegistrations() throws Exception {
+        SimpleRegistry registry = new SimpleRegistry(newLoadingCacheGuiceWatchableRegistrationContainer(newExecutionStrategy(PARALLEL)));
+        final CountDownLatch watcherEntered = new CountDownLatch(1);
+        final CountDownLatch releaseWatcher = new CountDownLatch(1);
+        Watcher<String> slowWatcher = new Watcher<String>() {
+            @Override
+            public Supplier<String> add(Supplier<String> element) {
+                watcherEntered.countDown();
+                try {
+                    releaseWatcher.await(10, SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return element;
+            }
+
+            @Override
+            public void remove(Supplier<String> element) {
+            }
+        };
+        final AtomicInteger notifications = new AtomicInteger();
+        Watcher<Integer> fastWatcher = new Watcher<Integer>() {
+            @Override
+            public Supplier<Integer> add(Supplier<Integer> element) {
+                notifications.incrementAndGet();
+                return element;
+            }
+
+            @Override
+            public void remove(Supplier<Integer> element) {
+                notifications.incrementAndGet();
+            }
+        };
+        Id<String> slowId = Ids.newId(String.class);
+        Id<Integer> fastId = Ids.newId(Integer.class);
+        registry.addWatcher(newIdMatcher(slowId), slowWatcher);
+        registry.addWatcher(newIdMatcher(fastId), fastWatcher);
+
+        Registration<String> slowRegistration = registry.put(slowId, () -> "slow");
+        assertThat(watcherEntered.await(5, SECONDS), is(true));
+        Registration<Integer> fastRegistration = registry.put(fastId, () -> 1);
+        fastRegistration.propagation().toCompletableFuture().get(5, SECONDS);
+        assertThat(notifications.get(), is(1));
+        assertThat(slowRegistration.propagation().toCompletableFuture().isDone(), is(false));
+        assertThat(registry.hasPendingListenerUpdateTasks(), is(true));
+
+        registry.remove(fastRegistration);
+        fastRegistration.propagation().toCompletableFuture().get(5, SECONDS);
+        assertThat(notifications.get(), is(2));
+
+        releaseWatcher.countDown();
+        slowRegistration.propagation().toCompletableFuture().get(5, SECONDS);
+    }
+
+    @Test
+    public void testRejectedDispatchIsReportedByPropagation() throws Exception {
+        ExecutionStrategy executionStrategy = newExecutionStrategy(SERIALIZED, false, 1, BackpressurePolicy.REJECT, 5, SECONDS, false);
+        SimpleRegistry registry = new SimpleRegistry(newLoadingCacheGuiceWatchableRegistrationContainer(executionStrategy));
+        final CountDownLatch watcherEntered = new CountDownLatch(1);
+        final CountDownLatch releaseWatcher = new CountDownLatch(1);
+        final AtomicInteger removals = new AtomicInteger();
+        Id<String> id = Ids.newId(String.class);
+        registry.addWatcher(newIdMatcher(id), new Watcher<String>() {
+            @Override
+            public Supplier<String> add(Supplier<String> element) {
+                watcherEntered.countDown();
+                try {
+                    releaseWatcher.await(10, SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return element;
+            }
+
+            @Override
+            public void remove(Supplier<String> element) {
+                removals.incrementAndGet();
+            }
+        });
+        try {
+            // the first update blocks the listener thread and the second one fills the queue
+            Registration<String> blocked = registry.put(id, () -> "blocked");
+            assertThat(watcherEntered.await(5, SECONDS), is(true));
+            Registration<String> queued = registry.put(id, () -> "queued");
+            Registration<String> rejected = registry.put(id, () -> "rejected");
+            try {
+                rejected.propagation().toCompletableFuture().get(5, SECONDS);
+                fail("the listener queue is full");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause(), is(instanceOf(RegistryException.class)));
+            }
+            // the supplier is registered and its registration can be removed
+            assertThat(registry.getAll(id), hasSize(3));
+            releaseWatcher.countDown();
+            blocked.propagation().toCompletableFuture().get(5, SECONDS);
+            queued.propagation().toCompletableFuture().get(5, SECONDS);
+            registry.remove(rejected);
+            assertThat(registry.getAll(id), hasSize(2));
+        } finally {
+            releaseWatcher.countDown();
+        }
+    }
+
+    @Test
+    public void testPropagationWithoutWatcher() {
+        SimpleRegistry registry = SimpleRegistry.newLoadingCacheRegistry();
+        Registration<Long> registration = registry.put(Ids.newId(Long.class), () -> 1L);
+        assertThat(registration.propagation().toCompletableFuture().isDone(), is(true));
+    }
+
+    @Test
+    public void testDefaultPropagationIsCompleted() {
+        Registration<Long> registration = () -> Ids.newId(Long.class);
+        CompletableFuture<Void> propagation = registration.propagation().toCompletableFuture();
+        assertThat(propagation.isDone(), is(true));
+    }
+}
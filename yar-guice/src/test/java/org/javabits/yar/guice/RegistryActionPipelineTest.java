@@ -0,0 +1,260 @@
+package org.javabits.yar.guice;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.reflect.TypeToken;
+import org.javabits.yar.Id;
+import org.javabits.yar.Ids;
+import org.javabits.yar.Registry;
+import org.javabits.yar.RegistryException;
+import org.javabits.yar.Supplier;
+import org.javabits.yar.Watcher;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+import static org.javabits.yar.IdMatchers.newIdMatcher;
+import static org.javabits.yar.guice.AbstractExecutionStrategy.newExecutionStrategy;
+import static org.javabits.yar.guice.ExecutionStrategy.Type.SAME_THREAD;
+import static org.javabits.yar.guice.GuiceWatchableRegistrationContainer.newLoadingCacheGuiceWatchableRegistrationContainer;
+
+/**
+ * @author Romain Gilles
+ */
+public class RegistryActionPipelineTest {
+
+    @Test
+    public void testSameRawTypeSameLane() {
+        RegistryActionPipeline pipeline = new RegistryActionPipeline(8);
+        Type stringList = new TypeToken<List<String>>() {}.getType();
+        Type integerList = new TypeToken<List<Integer>>() {}.getType();
+        assertThat(pipeline.laneOf(stringList), is(pipeline.laneOf(integerList)));
+        assertThat(pipeline.laneOf(stringList), is(pipeline.laneOf(List.class)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoLane() {
+        new RegistryActionPipeline(0);
+    }
+
+    @Test
+    public void testUnrelatedTypesAreNotBlocked() throws Exception {
+        RegistryActionPipeline pipeline = new RegistryActionPipeline(8);
+        Class<?> otherType = findTypeOnAnotherLane(pipeline, String.class);
+        final Registry registry = new SimpleRegistry(newLoadingCacheGuiceWatchableRegistrationContainer(newExecutionStrategy(SAME_THREAD))
+                , Registry.DEFAULT_TIMEOUT, Registry.DEFAULT_TIME_UNIT, pipeline);
+        final Id<String> id = Ids.newId(String.class);
+        final CountDownLatch watcherEntered = new CountDownLatch(1);
+        final CountDownLatch releaseWatcher = new CountDownLatch(1);
+        registry.addWatcher(newIdMatcher(id), new Watcher<String>() {
+            @Override
+            public Supplier<String> add(Supplier<String> element) {
+                watcherEntered.countDown();
+                try {
+                    releaseWatcher.await(10, SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return element;
+            }
+
+            @Override
+            public void remove(Supplier<String> element) {
+            }
+        });
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            // blocks the lane of the String type with the SAME_THREAD strategy
+            Future<?> blockedPut = executorService.submit(() -> registry.put(id, () -> "test"));
+            assertThat(watcherEntered.await(10, SECONDS), is(true));
+
+            registry.put(Ids.newId(otherType), () -> null);
+            assertThat(registry.get(otherType), is(not(nullValue())));
+            assertThat(blockedPut.isDone(), is(false));
+
+            releaseWatcher.countDown();
+            blockedPut.get(10, SECONDS);
+            assertThat(registry.get(id).get(), is("test"));
+        } finally {
+            releaseWatcher.countDown();
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRejectOnFullActionQueue() throws Exception {
+        RegistryActionPipeline pipeline = new RegistryActionPipeline(1, 1, RegistryActionPipeline.PLATFORM_THREAD_FACTORY, 1, BackpressurePolicy.REJECT);
+        final Registry registry = new SimpleRegistry(newLoadingCacheGuiceWatchableRegistrationContainer(newExecutionStrategy(SAME_THREAD))
+                , Registry.DEFAULT_TIMEOUT, Registry.DEFAULT_TIME_UNIT, pipeline);
+        final Id<String> id = Ids.newId(String.class);
+        final CountDownLatch watcherEntered = new CountDownLatch(1);
+        final CountDownLatch releaseWatcher = new CountDownLatch(1);
+        registry.addWatcher(newIdMatcher(id), new Watcher<String>() {
+            @Override
+            public Supplier<String> add(Supplier<String> element) {
+                watcherEntered.countDown();
+                try {
+                    releaseWatcher.await(10, SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return element;
+            }
+
+            @Override
+            public void remove(Supplier<String> element) {
+            }
+        });
+        try {
+            // the handler is blocked by the watcher
+            CompletableFuture<?> blockedPut = registry.putAsync(id, () -> "test");
+            assertThat(watcherEntered.await(10, SECONDS), is(true));
+            // fills the queue
+            CompletableFuture<?> queuedPut = registry.putAsync(Ids.newId(Integer.class), () -> 1);
+            try {
+                registry.putAsync(Ids.newId(Long.class), () -> 1L);
+                fail("the action queue is full");
+            } catch (RegistryException e) {
+                // expected
+            }
+            assertThat(pipeline.pendingActionsHighWaterMark(), is(1L));
+
+            releaseWatcher.countDown();
+            blockedPut.get(10, SECONDS);
+            queuedPut.get(10, SECONDS);
+            assertThat(registry.get(Integer.class), is(not(nullValue())));
+            assertThat(registry.get(Long.class), is(nullValue()));
+        } finally {
+            releaseWatcher.countDown();
+        }
+    }
+
+    @Test
+    public void testRemoveAllOnSeveralLanes() {
+        RegistryActionPipeline pipeline = new RegistryActionPipeline(8);
+        Class<?> otherType = findTypeOnAnotherLane(pipeline, String.class);
+        Registry registry = new SimpleRegistry(newLoadingCacheGuiceWatchableRegistrationContainer(newExecutionStrategy(SAME_THREAD))
+                , Registry.DEFAULT_TIMEOUT, Registry.DEFAULT_TIME_UNIT, pipeline);
+        Id<String> id = Ids.newId(String.class);
+        registry.removeAll(ImmutableList.of(registry.put(id, () -> "test"), registry.put(Ids.newId(otherType), () -> null)));
+        assertThat(registry.get(id), is(nullValue()));
+        assertThat(registry.get(otherType), is(nullValue()));
+    }
+
+    @Test
+    public void testGroupCommitCoalesceAddAndInvalidate() throws Exception {
+        RegistryActionPipeline pipeline = new RegistryActionPipeline(1, 16);
+        final SimpleRegistry registry = new SimpleRegistry(newLoadingCacheGuiceWatchableRegistrationContainer(newExecutionStrategy(SAME_THREAD))
+                , Registry.DEFAULT_TIMEOUT, Registry.DEFAULT_TIME_UNIT, pipeline);
+        final Id<String> id = Ids.newId(String.class);
+        final CountDownLatch watcherEntered = new CountDownLatch(1);
+        final CountDownLatch releaseWatcher = new CountDownLatch(1);
+        registry.addWatcher(newIdMatcher(id), new Watcher<String>() {
+            @Override
+            public Supplier<String> add(Supplier<String> element) {
+                watcherEntered.countDown();
+                try {
+                    releaseWatcher.await(10, SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return element;
+            }
+
+            @Override
+            public void remove(Supplier<String> element) {
+            }
+        });
+        final Id<Integer> integerId = Ids.newId(Integer.class);
+        final AtomicInteger integerAdds = new AtomicInteger();
+        registry.addWatcher(newIdMatcher(integerId), new Watcher<Integer>() {
+            @Override
+            public Supplier<Integer> add(Supplier<Integer> element) {
+                integerAdds.incrementAndGet();
+                return element;
+            }
+
+            @Override
+            public void remove(Supplier<Integer> element) {
+            }
+        });
+        ExecutorService executorService = Executors.newCachedThreadPool();
+        try {
+            // blocks the handler on a first group
+            Future<?> blockedPut = executorService.submit(() -> registry.put(id, () -> "test"));
+            assertThat(watcherEntered.await(10, SECONDS), is(true));
+            // then accumulates an add and an invalidation of the same type
+            Future<?> put = executorService.submit(() -> registry.put(integerId, () -> 1));
+            awaitPendingActions(pipeline, 1);
+            Future<?> invalidate = executorService.submit(() -> registry.invalidate(Integer.class));
+            awaitPendingActions(pipeline, 2);
+
+            releaseWatcher.countDown();
+            blockedPut.get(10, SECONDS);
+            put.get(10, SECONDS);
+            invalidate.get(10, SECONDS);
+
+            assertThat(registry.get(integerId), is(nullValue()));
+            assertThat(integerAdds.get(), is(0));
+            // the statistics are recorded by the handler after the completion of the group
+            RegistryActionPipeline.GroupCommitStatistics statistics = pipeline.groupCommitStatistics();
+            for (int i = 0; i < 1000 && (statistics.coalescedActions() == 0 || statistics.maxGroupSize() < 2); i++) {
+                Thread.sleep(10);
+            }
+            assertThat(statistics.coalescedActions(), is(1L));
+            assertThat(statistics.maxGroupSize(), is(2L));
+        } finally {
+            releaseWatcher.countDown();
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailedGroupFlushCompletesActionsAndKeepsLane() throws Exception {
+        RegistryActionPipeline pipeline = new RegistryActionPipeline(1, 16);
+        GuiceWatchableRegistrationContainer container = Mockito.spy(newLoadingCacheGuiceWatchableRegistrationContainer(newExecutionStrategy(SAME_THREAD)));
+        Mockito.doThrow(new RegistryException("listener queue full")).doCallRealMethod()
+                .when(container).flushListenerUpdates(Matchers.anyLong(), Matchers.any(TimeUnit.class));
+        Registry registry = new SimpleRegistry(container, Registry.DEFAULT_TIMEOUT, Registry.DEFAULT_TIME_UNIT, pipeline);
+        try {
+            registry.putAsync(Ids.newId(String.class), () -> "test").get(10, SECONDS);
+            fail("the listener updates cannot be dispatched");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(RegistryException.class)));
+        }
+        // the lane still handles the next actions
+        registry.putAsync(Ids.newId(Integer.class), () -> 1).get(10, SECONDS);
+        assertThat(registry.get(Integer.class), is(not(nullValue())));
+    }
+
+    private static void awaitPendingActions(RegistryActionPipeline pipeline, int pendingActions) throws InterruptedException {
+        for (int i = 0; i < 1000 && pipeline.pendingActions() < pendingActions; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(pipeline.pendingActions(), is(pendingActions));
+    }
+
+    private static Class<?> findTypeOnAnotherLane(RegistryActionPipeline pipeline, Class<?> type) {
+        for (Class<?> candidate : ImmutableList.<Class<?>>of(Integer.class, Long.class, Double.class, Float.class
+                , Short.class, Byte.class, Character.class, Boolean.class, Object.class, Number.class)) {
+            if (pipeline.laneOf(candidate) != pipeline.laneOf(type)) {
+                return candidate;
+            }
+        }
+        throw new AssertionError("No type found on another lane than " + type);
+    }
+}
@@ -149,14 +149,14 @@ public class RegistryHookTest {
         }
         // when remove the second service registration
         registry.remove(serviceRegistration2);
-        // then count must be 1 because not invalidated
+        // then count must be 0 because the type does not hold any registration anymore
         synchronized (count) {
-            assertThat(count[0], is(1));
+            assertThat(count[0], is(0));
         }
         // when invalidate the type MyService
         assertThat(registry.getAll(MyService.class), org.hamcrest.Matchers.<org.javabits.yar.Supplier<MyService>>iterableWithSize(0));
         registryHook.invalidate(MyService.class);
-        // then count must be 0
+        // then count must still be 0
         synchronized (count) {
             assertThat(count[0], is(0));
         }
@@ -168,6 +168,24 @@ public class RegistryHookTest {
         }
     }
 
+    @Test
+    public void testTypeListenerNotTriggeredByReads() throws Exception {
+        registryHook.addTypeListener(typeEvent -> {
+            synchronized (count) {
+                count[0] = count[0] + 1;
+            }
+        });
+        // when look up a type never registered, the blocking supplier adds a watcher on it
+        assertThat(registry.get(MyService.class).get(), is(nullValue()));
+        assertThat(registry.getAll(MyService.class), org.hamcrest.Matchers.<org.javabits.yar.Supplier<MyService>>iterableWithSize(0));
+        assertThat(registry.size(Ids.newId(MyService.class)), is(0));
+        // then no type event is fired and the type is not registered
+        synchronized (count) {
+            assertThat(count[0], is(0));
+        }
+        assertThat(registry.types(), not(hasItem(MyService.class)));
+    }
+
     @Test
     public void testHasPendingListenerUpdateTasks() throws Exception {
         Id<String> stringId = Ids.newId(String.class);
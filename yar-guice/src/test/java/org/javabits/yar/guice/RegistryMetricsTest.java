@@ -0,0 +1,89 @@
+package org.javabits.yar.guice;
+
+import org.javabits.yar.BlockingSupplierRegistry;
+import org.javabits.yar.Id;
+import org.javabits.yar.Ids;
+import org.javabits.yar.Supplier;
+import org.javabits.yar.Watcher;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.ref.Reference;
+import java.util.concurrent.CountDownLatch;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.javabits.yar.IdMatchers.newIdMatcher;
+
+/**
+ * @author Romain Gilles
+ */
+public class RegistryMetricsTest {
+
+    @Test
+    public void testMetrics() throws Exception {
+        BlockingSupplierRegistry registry = YarGuices.builder().build();
+        Id<String> id = Ids.newId(String.class);
+        final CountDownLatch watcherNotified = new CountDownLatch(1);
+        // the registry references the watchers weakly, it must stay reachable until the end of the test
+        Watcher<String> watcher = new Watcher<String>() {
+            @Override
+            public Supplier<String> add(Supplier<String> element) {
+                watcherNotified.countDown();
+                throw new IllegalStateException("test");
+            }
+
+            @Override
+            public void remove(Supplier<String> element) {
+            }
+        };
+        registry.addWatcher(newIdMatcher(id), watcher);
+        registry.put(id, () -> "test");
+        assertThat(watcherNotified.await(10, SECONDS), is(true));
+        RegistryMetrics metrics = RegistryMetrics.of(registry);
+        // the failure is recorded once the watcher has thrown
+        for (long deadline = System.nanoTime() + SECONDS.toNanos(10); metrics.getListenerFailures() == 0 && System.nanoTime() < deadline; ) {
+            Thread.sleep(10);
+        }
+        assertThat(metrics.getActionLatencies().get("Add").getCount(), is(1L));
+        assertThat(metrics.getActionLatencies().get("AddWatcher").getCount(), is(1L));
+        assertThat(metrics.getSupplierCounts(), hasEntry("java.lang.String", 1));
+        assertThat(metrics.getWatcherCounts(), hasEntry("java.lang.String", 1));
+        assertThat(metrics.getListenerFailures(), is(1L));
+        assertThat(metrics.getListenerLatency().getCount(), is(1L));
+        assertThat(metrics.getActionQueueDepth(), is(0));
+
+        MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+        metrics.register(mBeanServer);
+        try {
+            TabularData actionLatencies = (TabularData) mBeanServer.getAttribute(RegistryMetrics.objectName(), "ActionLatencies");
+            assertThat(actionLatencies.size(), is(2));
+            CompositeData listenerLatency = (CompositeData) mBeanServer.getAttribute(RegistryMetrics.objectName(), "ListenerLatency");
+            assertThat(listenerLatency.get("count"), is((Object) 1L));
+            assertThat(mBeanServer.getAttribute(RegistryMetrics.objectName(), "ListenerFailures"), is((Object) 1L));
+        } finally {
+            RegistryMetrics.unregister(mBeanServer);
+        }
+        assertThat(mBeanServer.isRegistered(RegistryMetrics.objectName()), is(false));
+        Reference.reachabilityFence(watcher);
+    }
+
+    @Test
+    public void testLatencyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(SECONDS.toNanos(1) / 1000 * i);
+        }
+        LatencySnapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getCount(), is(100L));
+        assertThat(snapshot.getMaxMicros(), is(100_000L));
+        assertThat(snapshot.getMeanMicros(), is(50_500L));
+        // power of two buckets: upper bound with a factor two precision
+        assertThat(snapshot.getP50Micros(), allOf(greaterThanOrEqualTo(50_000L), lessThan(100_000L)));
+        assertThat(snapshot.getP99Micros(), is(100_000L));
+    }
+}
@@ -0,0 +1,38 @@
+package org.javabits.yar.guice;
+
+import org.javabits.yar.BlockingSupplier;
+import org.javabits.yar.BlockingSupplierRegistry;
+import org.javabits.yar.Id;
+import org.javabits.yar.Ids;
+import org.junit.Test;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author Romain Gilles
+ */
+public class SharedBlockingSupplierFactoryTest {
+
+    @Test
+    public void testSameSupplierPerId() throws Exception {
+        BlockingSupplierRegistry registry = YarGuices.builder().sharedBlockingSuppliers().build();
+        BlockingSupplier<String> supplier = registry.get(String.class);
+        assertThat(registry.get(Ids.newId(String.class)), is(sameInstance(supplier)));
+        assertThat(registry.get(Integer.class), is(not(sameInstance((Object) supplier))));
+
+        registry.put(Ids.newId(String.class), () -> "test");
+        assertThat(supplier.getSync(10, SECONDS), is("test"));
+    }
+
+    @Test
+    public void testOneCachePerRegistry() {
+        SharedBlockingSupplierFactory factory = new SharedBlockingSupplierFactory();
+        BlockingSupplierRegistry registry = YarGuices.builder().blockingSupplierStrategy(factory).build();
+        BlockingSupplierRegistry otherRegistry = YarGuices.builder().blockingSupplierStrategy(factory).build();
+        Id<String> id = Ids.newId(String.class);
+        assertThat(registry.get(id), is(sameInstance(registry.get(id))));
+        assertThat(otherRegistry.get(id), is(not(sameInstance(registry.get(id)))));
+    }
+}
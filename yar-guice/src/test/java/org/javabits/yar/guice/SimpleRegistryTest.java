@@ -1,19 +1,34 @@
 package org.javabits.yar.guice;
 
 import com.google.common.reflect.TypeToken;
+import com.google.inject.name.Names;
+import com.google.common.collect.ImmutableMap;
 import org.javabits.yar.Id;
+import org.javabits.yar.IdMatcher;
+import org.javabits.yar.IdMatchers;
 import org.javabits.yar.Ids;
+import org.javabits.yar.Registration;
 import org.javabits.yar.Registry;
+import org.javabits.yar.RegistrySnapshot;
+import org.javabits.yar.Supplier;
+import org.javabits.yar.Watcher;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.Collections.emptyList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
+import static org.javabits.yar.IdMatchers.newIdMatcher;
+import static org.javabits.yar.guice.AbstractExecutionStrategy.newExecutionStrategy;
+import static org.javabits.yar.guice.ExecutionStrategy.Type.SAME_THREAD;
+import static org.javabits.yar.guice.GuiceWatchableRegistrationContainer.newLoadingCacheGuiceWatchableRegistrationContainer;
 import static org.javabits.yar.guice.SimpleRegistry.newLoadingCacheRegistry;
 
 /**
@@ -59,6 +74,31 @@ public class SimpleRegistryTest {
         assertThat(registry.get(id).get(), is("test"));
     }
 
+    @Test
+    public void testForEachAndSize() {
+        Id<String> id = Ids.newId(String.class);
+        Id<String> namedId = Ids.newId(String.class, Names.named("named"));
+        registry.put(id, () -> "first");
+        registry.put(namedId, () -> "second");
+
+        List<Object> values = new ArrayList<>();
+        registry.forEach(String.class, supplier -> values.add(supplier.get()));
+        assertThat(values, contains("first", "second"));
+        assertThat(registry.size(String.class), is(2));
+        // an id without annotation is lax
+        assertThat(registry.size(id), is(2));
+
+        List<String> namedValues = new ArrayList<>();
+        registry.forEach(namedId, supplier -> namedValues.add(supplier.get()));
+        assertThat(namedValues, contains("second"));
+        assertThat(registry.size(namedId), is(1));
+
+        registry.forEach(Integer.class, supplier -> values.add(supplier.get()));
+        assertThat(values, hasSize(2));
+        assertThat(registry.size(Integer.class), is(0));
+        assertThat(registry.types(), not(hasItem(Integer.class)));
+    }
+
     @Test(expected = NullPointerException.class) @SuppressWarnings("unchecked")
     public void testGetClassNullPointerException() throws Exception {
         registry.get((Class) null);
@@ -116,4 +156,225 @@ public class SimpleRegistryTest {
         registry.getAll((Type) null);
     }
 
+
+    @Test
+    public void testPutAll() {
+        Id<String> stringId = Ids.newId(String.class);
+        Id<Integer> integerId = Ids.newId(Integer.class);
+        List<Registration<?>> registrations = registry.putAll(ImmutableMap.<Id<?>, java.util.function.Supplier<?>>of(
+                stringId, () -> "test",
+                integerId, () -> 1));
+        assertThat(registrations, hasSize(2));
+        assertThat(registrations.get(0).id(), is((Id) stringId));
+        assertThat(registrations.get(1).id(), is((Id) integerId));
+        assertThat(registry.get(stringId).get(), is("test"));
+        assertThat(registry.get(integerId).get(), is(1));
+
+        registry.removeAll(registrations);
+        assertThat(registry.get(stringId), is(nullValue()));
+        assertThat(registry.get(integerId), is(nullValue()));
+    }
+
+    @Test
+    public void testPutAllEmpty() {
+        assertThat(registry.putAll(Collections.<Id<?>, java.util.function.Supplier<?>>emptyMap()), is(empty()));
+    }
+
+    @Test
+    public void testQualifiedIdLookup() {
+        List<Registration<?>> registrations = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String value = "test" + i;
+            registrations.add(registry.put(Ids.newId(String.class, Names.named(value)), () -> value));
+        }
+        Id<String> id = Ids.newId(String.class, Names.named("test42"));
+        Registration<String> second = registry.put(id, () -> "second");
+        assertThat(registry.get(id).get(), is("test42"));
+        assertThat(registry.getAll(id), hasSize(2));
+        assertThat(registry.getAll(String.class), hasSize(101));
+        assertThat(registry.get(Ids.newId(String.class, Names.named("unknown"))), is(nullValue()));
+
+        registry.remove(registrations.get(42));
+        assertThat(registry.get(id).get(), is("second"));
+        registry.remove(second);
+        assertThat(registry.get(id), is(nullValue()));
+        assertThat(registry.getAll(id), is(empty()));
+    }
+
+    @Test
+    public void testPutAsync() {
+        List<CompletableFuture<Registration<String>>> futures = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            String value = "test" + i;
+            futures.add(registry.putAsync(Ids.newId(String.class, Names.named(value)), () -> value));
+        }
+        List<Registration<?>> registrations = new ArrayList<>();
+        for (CompletableFuture<Registration<String>> future : futures) {
+            registrations.add(future.join());
+        }
+        assertThat(registry.getAll(String.class), hasSize(500));
+        assertThat(registry.get(Ids.newId(String.class, Names.named("test499"))).get(), is("test499"));
+
+        registry.removeAllAsync(registrations).join();
+        assertThat(registry.getAll(String.class), is(empty()));
+    }
+
+    @Test
+    public void testRemoveAsync() {
+        Id<String> id = Ids.newId(String.class);
+        Registration<String> registration = registry.putAsync(id, () -> "test").join();
+        assertThat(registry.get(id).get(), is("test"));
+        registry.removeAsync(registration).join();
+        assertThat(registry.get(id), is(nullValue()));
+    }
+
+    @Test
+    public void testAddWatchers() {
+        // same thread strategy to have the watchers updated when the registry call returns
+        Registry registry = new SimpleRegistry(newLoadingCacheGuiceWatchableRegistrationContainer(newExecutionStrategy(SAME_THREAD)));
+        Id<String> id = Ids.newId(String.class);
+        registry.put(id, () -> "test");
+        AtomicInteger firstCounter = new AtomicInteger();
+        AtomicInteger secondCounter = new AtomicInteger();
+        List<Registration<?>> registrations = registry.addWatchers(ImmutableMap.<IdMatcher<?>, Watcher<?>>of(
+                newIdMatcher(id), new AddCountingWatcher(firstCounter),
+                newIdMatcher(Ids.newId(String.class, Names.named("other"))), new AddCountingWatcher(secondCounter)));
+        assertThat(registrations, hasSize(2));
+        assertThat(firstCounter.get(), is(1));
+        assertThat(secondCounter.get(), is(0));
+
+        registry.put(id, () -> "test2");
+        assertThat(firstCounter.get(), is(2));
+        assertThat(secondCounter.get(), is(0));
+
+        registry.removeAllWatchers(registrations);
+        registry.put(id, () -> "test3");
+        assertThat(firstCounter.get(), is(2));
+    }
+
+    @Test
+    public void testIndexedWatcherDispatch() {
+        Registry registry = new SimpleRegistry(newLoadingCacheGuiceWatchableRegistrationContainer(newExecutionStrategy(SAME_THREAD)));
+        Id<String> id = Ids.newId(String.class, Names.named("test"));
+        AtomicInteger equalityCounter = new AtomicInteger();
+        AtomicInteger typeCounter = new AtomicInteger();
+        AtomicInteger predicateCounter = new AtomicInteger();
+        Watcher<String> equalityWatcher = new AddCountingWatcher(equalityCounter);
+        Watcher<String> typeWatcher = new AddCountingWatcher(typeCounter);
+        Watcher<String> predicateWatcher = new AddCountingWatcher(predicateCounter);
+        registry.addWatcher(newIdMatcher(id), equalityWatcher);
+        registry.addWatcher(IdMatchers.newTypeMatcher(id), typeWatcher);
+        registry.addWatcher(new IdMatcher<String>() {
+            @Override
+            public boolean matches(Id<String> otherId) {
+                return otherId.annotationType() == null;
+            }
+
+            @Override
+            public Id<String> id() {
+                return Ids.newId(String.class);
+            }
+        }, predicateWatcher);
+
+        registry.put(id, () -> "test");
+        registry.put(Ids.newId(String.class, Names.named("other")), () -> "other");
+        registry.put(Ids.newId(String.class), () -> "unqualified");
+        assertThat(equalityCounter.get(), is(1));
+        assertThat(typeCounter.get(), is(3));
+        assertThat(predicateCounter.get(), is(1));
+    }
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void testRawTypeWatcherReplay() {
+        Registry registry = new SimpleRegistry(newLoadingCacheGuiceWatchableRegistrationContainer(newExecutionStrategy(SAME_THREAD)));
+        Id<List<String>> stringListId = (Id<List<String>>) Ids.newId(new TypeToken<List<String>>() {
+        }.getType());
+        Id<List<Integer>> integerListId = (Id<List<Integer>>) Ids.newId(new TypeToken<List<Integer>>() {
+        }.getType());
+        registry.put(stringListId, () -> Collections.singletonList("test"));
+        Registration<List<Integer>> integerListRegistration = registry.put(integerListId, () -> Collections.singletonList(1));
+        registry.put(Ids.newId(String.class), () -> "test");
+        IdMatcher<List> rawListMatcher = new IdMatcher<List>() {
+            @Override
+            public boolean matches(Id<List> otherId) {
+                return true;
+            }
+
+            @Override
+            public Id<List> id() {
+                return Ids.newId(List.class);
+            }
+        };
+        AtomicInteger counter = new AtomicInteger();
+        registry.addWatcher(rawListMatcher, (Watcher) new AddCountingWatcher(counter));
+        assertThat(counter.get(), is(2));
+
+        registry.remove(integerListRegistration);
+        counter.set(0);
+        registry.addWatcher(rawListMatcher, (Watcher) new AddCountingWatcher(counter));
+        assertThat(counter.get(), is(1));
+    }
+
+    @Test
+    public void testSnapshot() {
+        Id<String> id = Ids.newId(String.class);
+        Id<String> namedId = Ids.newId(String.class, Names.named("test"));
+        Registration<String> registration = registry.put(id, () -> "test");
+        registry.put(namedId, () -> "named");
+
+        RegistrySnapshot snapshot = registry.snapshot();
+        assertThat(snapshot.ids(), containsInAnyOrder(id, namedId));
+        assertThat(snapshot.types(), contains((Type) String.class));
+        assertThat(snapshot.ids(), is(sameInstance(snapshot.ids())));
+        assertThat(registry.snapshot(), is(sameInstance(snapshot)));
+        assertThat(snapshot.get(namedId).get(), is("named"));
+        assertThat(snapshot.getAll(id), hasSize(2));
+        assertThat(snapshot.getAll(namedId), hasSize(1));
+
+        registry.remove(registration);
+        assertThat(snapshot.get(id).get(), is("test"));
+        assertThat(registry.snapshot().get(id), is(nullValue()));
+        assertThat(registry.ids(), contains((Id) namedId));
+    }
+
+    @Test
+    public void testSnapshotOmitsEmptyTypes() {
+        Id<String> id = Ids.newId(String.class);
+        registry.remove(registry.put(id, () -> "test"));
+        registry.getAll(Integer.class);
+        assertThat(registry.types(), is(empty()));
+        assertThat(registry.ids(), is(empty()));
+    }
+
+    @Test
+    public void testSnapshotCopiesMutableRegistrations() {
+        Id<String> id = Ids.newId(String.class);
+        List<SupplierRegistration<?>> registrations = new ArrayList<>();
+        registrations.add((SupplierRegistration<?>) registry.put(id, () -> "test"));
+        RegistrySnapshot snapshot = RegistrySnapshotImpl.EMPTY.with(String.class, registrations);
+
+        registrations.add((SupplierRegistration<?>) registry.put(id, () -> "other"));
+        assertThat(snapshot.getAll(id), hasSize(1));
+        registrations.clear();
+        assertThat(snapshot.get(id).get(), is("test"));
+    }
+
+    private static class AddCountingWatcher implements Watcher<String> {
+        private final AtomicInteger counter;
+
+        AddCountingWatcher(AtomicInteger counter) {
+            this.counter = counter;
+        }
+
+        @Override
+        public Supplier<String> add(Supplier<String> element) {
+            counter.incrementAndGet();
+            return element;
+        }
+
+        @Override
+        public void remove(Supplier<String> element) {
+        }
+    }
 }
@@ -0,0 +1,109 @@
+package org.javabits.yar.guice;
+
+import org.javabits.yar.BlockingSupplier;
+import org.javabits.yar.Id;
+import org.javabits.yar.Ids;
+import org.javabits.yar.Registration;
+import org.javabits.yar.Supplier;
+import org.javabits.yar.Watcher;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.javabits.yar.guice.AbstractExecutionStrategy.newExecutionStrategy;
+import static org.javabits.yar.guice.BlockingSupplierRegistryImpl.newLoadingCacheBlockingSupplierRegistry;
+import static org.javabits.yar.guice.ExecutionStrategy.Type.PARALLEL;
+
+/**
+ * @author Romain Gilles
+ */
+public class SupplierEventSequenceTest {
+
+    private final Id<String> id = Ids.newId(String.class);
+
+    @Test
+    public void testDecoratorDiscardsStaleAdd() {
+        RecordingWatcher watcher = new RecordingWatcher();
+        WatcherRegistration.WatcherDecorator<String> decorator = new WatcherRegistration.WatcherDecorator<>(watcher);
+        Supplier<String> supplier = newSupplier("value");
+
+        decorator.remove(supplier, 2);
+        decorator.add(supplier, 1);
+
+        assertThat(watcher.calls, is(empty()));
+    }
+
+    @Test
+    public void testDecoratorDiscardsStaleElementsOfBatch() {
+        RecordingWatcher watcher = new RecordingWatcher();
+        WatcherRegistration.WatcherDecorator<String> decorator = new WatcherRegistration.WatcherDecorator<>(watcher);
+        Supplier<String> removed = newSupplier("removed");
+        Supplier<String> added = newSupplier("added");
+
+        decorator.remove(removed, 3);
+        List<Supplier<String>> trackedElements = decorator.addAll(asList(removed, added), new long[]{1, 2});
+
+        assertThat(trackedElements, contains(null, added));
+        assertThat(watcher.calls, contains("add:added"));
+    }
+
+    @Test
+    public void testReplacedSupplierUnderParallelDispatch() throws Exception {
+        BlockingSupplierRegistryImpl registry = newLoadingCacheBlockingSupplierRegistry(newExecutionStrategy(PARALLEL), 5, SECONDS);
+        BlockingSupplier<String> blockingSupplier = registry.get(id);
+        Registration<String> registration = registry.put(id, newSupplier("0"));
+        for (int i = 1; i <= 100; i++) {
+            Registration<String> next = registry.put(id, newSupplier(Integer.toString(i)));
+            registry.remove(registration);
+            registration = next;
+        }
+        assertThat(registry.awaitListenerQuiescence(5, SECONDS), is(true));
+        assertThat(blockingSupplier.get(), is("100"));
+    }
+
+    private Supplier<String> newSupplier(final String value) {
+        return new Supplier<String>() {
+            @Override
+            public Id<String> id() {
+                return id;
+            }
+
+            @Override
+            public String get() {
+                return value;
+            }
+
+            @Override
+            public java.util.function.Supplier<? extends String> getNativeSupplier() {
+                return this;
+            }
+
+            @Override
+            public String toString() {
+                return value;
+            }
+        };
+    }
+
+    private static class RecordingWatcher implements Watcher<String> {
+        final List<String> calls = new CopyOnWriteArrayList<>();
+
+        @Override
+        public Supplier<String> add(Supplier<String> element) {
+            calls.add("add:" + element);
+            return element;
+        }
+
+        @Override
+        public void remove(Supplier<String> element) {
+            calls.add("remove:" + element);
+        }
+    }
+}
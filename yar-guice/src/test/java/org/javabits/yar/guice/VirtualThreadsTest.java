@@ -0,0 +1,86 @@
+package org.javabits.yar.guice;
+
+import org.javabits.yar.BlockingSupplier;
+import org.javabits.yar.BlockingSupplierRegistry;
+import org.javabits.yar.Id;
+import org.javabits.yar.Ids;
+import org.javabits.yar.Supplier;
+import org.javabits.yar.Watcher;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.javabits.yar.IdMatchers.newIdMatcher;
+
+/**
+ * @author Romain Gilles
+ */
+public class VirtualThreadsTest {
+
+    @Test
+    public void testThreadFactory() throws Exception {
+        final CountDownLatch executed = new CountDownLatch(1);
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+        VirtualThreads.newThreadPerTaskExecutor(VirtualThreads.newThreadFactory("test-")).execute(() -> {
+            thread.set(Thread.currentThread());
+            executed.countDown();
+        });
+        assertThat(executed.await(10, SECONDS), is(true));
+        assertThat(thread.get().getName(), startsWith("test-"));
+        assertThat(thread.get().isDaemon(), is(true));
+    }
+
+    @Test
+    public void testVirtualThreadsRegistry() throws Exception {
+        BlockingSupplierRegistry registry = YarGuices.builder().virtualThreads().build();
+        Id<String> id = Ids.newId(String.class);
+        BlockingSupplier<String> supplier = registry.get(id);
+        assertThat(supplier.get(), is(nullValue()));
+        registry.put(id, () -> "test");
+        assertThat(supplier.getSync(10, SECONDS), is("test"));
+    }
+
+    @Test
+    public void testBlockedWatchersWaitTogether() throws Exception {
+        BlockingSupplierRegistry registry = YarGuices.builder().virtualThreads().build();
+        Id<String> id = Ids.newId(String.class);
+        // more blocked watchers than carrier threads: none of them may pin its carrier
+        int watcherCount = Runtime.getRuntime().availableProcessors() * 2 + 8;
+        final CountDownLatch waiting = new CountDownLatch(watcherCount);
+        final CountDownLatch dependency = new CountDownLatch(1);
+        List<Watcher<String>> watchers = new ArrayList<>();
+        for (int i = 0; i < watcherCount; i++) {
+            Watcher<String> watcher = new Watcher<String>() {
+                @Override
+                public Supplier<String> add(Supplier<String> element) {
+                    waiting.countDown();
+                    try {
+                        dependency.await();
+                    } catch (java.lang.InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return element;
+                }
+
+                @Override
+                public void remove(Supplier<String> element) {
+                }
+            };
+            registry.addWatcher(newIdMatcher(id), watcher);
+            watchers.add(watcher);
+        }
+        try {
+            registry.put(id, () -> "test");
+            assertThat(waiting.await(10, SECONDS), is(true));
+        } finally {
+            dependency.countDown();
+        }
+        assertThat(watchers, hasSize(watcherCount));
+    }
+}